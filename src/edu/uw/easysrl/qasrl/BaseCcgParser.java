@@ -3,8 +3,8 @@ package edu.uw.easysrl.qasrl;
 import com.google.common.collect.ImmutableList;
 import edu.uw.easysrl.dependencies.*;
 import edu.uw.easysrl.main.InputReader;
-import edu.uw.easysrl.qasrl.corpora.ParseDataLoader;
-import edu.uw.easysrl.qasrl.util.CountDictionary;
+import edu.uw.easysrl.qasrl.reparsing.ReparseCache;
+import edu.uw.easysrl.qasrl.util.FileFingerprint;
 import edu.uw.easysrl.qasrl.util.PropertyUtil;
 import edu.uw.easysrl.syntax.evaluation.CCGBankEvaluation;
 import edu.uw.easysrl.syntax.grammar.Category;
@@ -13,14 +13,12 @@ import edu.uw.easysrl.syntax.model.Constraint;
 import edu.uw.easysrl.syntax.parser.*;
 import edu.uw.easysrl.syntax.parser.ConstrainedParserAStar;
 import edu.uw.easysrl.syntax.tagger.Tagger;
-import edu.uw.easysrl.qasrl.util.GuavaCollectors;
 import edu.uw.easysrl.util.Util;
 import edu.uw.easysrl.util.Util.Scored;
 
 import java.io.*;
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 /**
  * Calls a parser. Input: List<InputWord>, Output: List<Category>, Set<ResolvedDependency>
@@ -28,24 +26,6 @@ import java.util.stream.IntStream;
  */
 public abstract class BaseCcgParser {
     public final static String modelFolder = PropertyUtil.resourcesProperties.getProperty("base_model");
-    private static HashSet<String> frequentDependenciesSet;
-    private static final int minDependencyCount = 10;
-    static {
-        initializeFilter();
-    }
-
-    private static void initializeFilter() {
-        final CountDictionary dependencyDict = new CountDictionary();
-        final ParseData parseData = ParseDataLoader.loadFromTrainingPool().get();
-        parseData.getGoldParses()
-                .forEach(parse -> parse.dependencies
-                        .forEach(dep -> dependencyDict.addString(dep.getCategory() + "." + dep.getArgNumber())));
-        frequentDependenciesSet = IntStream.range(0, dependencyDict.size())
-                .filter(i -> dependencyDict.getCount(i) >= minDependencyCount)
-                .mapToObj(dependencyDict::getString)
-                .collect(Collectors.toCollection(HashSet::new));
-        System.out.println("Initialized frequent dependency set:\t" + frequentDependenciesSet.size());
-    }
 
     protected Parse getParse(final List<InputReader.InputWord> sentence, final Scored<SyntaxTreeNode> scoredParse,
                              DependencyGenerator dependencyGenerator) {
@@ -57,7 +37,7 @@ public abstract class BaseCcgParser {
         Set<ResolvedDependency> dependencies = CCGBankEvaluation.convertDeps(sentence, unlabelledDeps)
                         .stream()
                         .filter(x -> x.getHead() != x.getArgument())
-                        .filter(x -> frequentDependenciesSet.contains(x.getCategory() + "." +  x.getArgNumber()))
+                        .filter(x -> FrequentDependencies.contains(x.getCategory(), x.getArgNumber()))
                         .collect(Collectors.toSet());
         return new Parse(scoredParse.getObject(), categories, dependencies, scoredParse.getScore());
     }
@@ -79,6 +59,8 @@ public abstract class BaseCcgParser {
         private Parser parser;
         private Tagger batchTagger = null;
         private ImmutableList<List<List<Tagger.ScoredCategory>>> taggedSentences = null;
+        private final String modelFolderPath;
+        private final double supertaggerBeam;
 
         public AStarParser(String modelFolderPath, int nBest)  {
             this(modelFolderPath, nBest, 1e-4, 1e-6, 1000000, 70);
@@ -90,6 +72,8 @@ public abstract class BaseCcgParser {
 
         public AStarParser(String modelFolderPath, int nBest, double supertaggerBeam, double nbestBeam,
                            int maxChartSize, int maxSentenceLength)  {
+            this.modelFolderPath = modelFolderPath;
+            this.supertaggerBeam = supertaggerBeam;
             final File modelFolder = Util.getFile(modelFolderPath);
             if (!modelFolder.exists()) {
                 throw new InputMismatchException("Couldn't load model from from: " + modelFolder);
@@ -109,30 +93,33 @@ public abstract class BaseCcgParser {
                 e.printStackTrace();
             }
             try {
-                batchTagger = Tagger.make(modelFolder, supertaggerBeam, 50, null);
+                batchTagger = Tagger.make(modelFolder, supertaggerBeam, SupertagCache.maxTagsPerWord, null);
             } catch (IOException e) {
                 e.printStackTrace();
             }
         }
 
         public void cacheSupertags(ParseData corpus) {
-            if (batchTagger != null) {
-                System.err.println("Batch tagging " + corpus.getSentences().size() + " sentences ...");
-                taggedSentences = batchTagger.tagBatch(corpus.getSentenceInputWords().parallelStream()
-                        .map(s -> s.stream().collect(Collectors.toList())))
-                        .collect(GuavaCollectors.toImmutableList());
-            }
+            cacheSupertags(corpus.getSentenceInputWords());
         }
 
+        /**
+         * Supertags are shared with all parsers using the same model and beam, see SupertagCache.
+         */
         public void cacheSupertags(ImmutableList<ImmutableList<InputReader.InputWord>> inputSentences) {
             if (batchTagger != null) {
-                System.err.println("Batch tagging " + inputSentences.size() + " sentences ...");
-                taggedSentences = batchTagger.tagBatch(inputSentences.parallelStream()
-                        .map(s -> s.stream().collect(Collectors.toList())))
-                        .collect(GuavaCollectors.toImmutableList());
+                taggedSentences = SupertagCache.getSupertags(modelFolderPath, supertaggerBeam, inputSentences,
+                        batchTagger);
             }
         }
 
+        /**
+         * Reuses the supertags cached by another parser, i.e. for worker parsers in a parallel run.
+         */
+        public void cacheSupertags(AStarParser other) {
+            taggedSentences = other.taggedSentences;
+        }
+
         @Override
         public Parse parse(List<InputReader.InputWord> sentence) {
             List<Scored<SyntaxTreeNode>> parses = parser.doParsing(
@@ -181,6 +168,35 @@ public abstract class BaseCcgParser {
             }
             return parses.stream().map(p -> getParse(sentence, p, dependencyGenerator)).collect(Collectors.toList());
         }
+
+        /**
+         * Supertags a batch of sentences without caching them, i.e. for a streaming run (see StreamingParser).
+         * The supertags are null if the tagger could not be loaded.
+         */
+        public List<List<List<Tagger.ScoredCategory>>> tagBatch(
+                List<? extends List<InputReader.InputWord>> sentences) {
+            if (batchTagger == null) {
+                return new ArrayList<>(Collections.nCopies(sentences.size(), null));
+            }
+            return batchTagger.tagBatch(sentences.parallelStream()
+                    .map(s -> s.stream().collect(Collectors.toList())))
+                    .collect(Collectors.toList());
+        }
+
+        public List<Parse> parseNBest(List<InputReader.InputWord> sentence,
+                                      List<List<Tagger.ScoredCategory>> supertags) {
+            if (supertags != null && supertags.size() == 0) {
+                return null;
+            }
+            final InputReader.InputToParser input = supertags == null ?
+                    new InputReader.InputToParser(sentence, null, null, false) :
+                    new InputReader.InputToParser(sentence, null, supertags, true);
+            List<Scored<SyntaxTreeNode>> parses = parser.doParsing(input);
+            if (parses == null || parses.size() == 0) {
+                return null;
+            }
+            return parses.stream().map(p -> getParse(sentence, p, dependencyGenerator)).collect(Collectors.toList());
+        }
     }
 
     public static class ConstrainedCcgParser extends BaseCcgParser {
@@ -191,12 +207,25 @@ public abstract class BaseCcgParser {
         private final double supertaggerBeam = 1e-6; // 0.000001;
         private final int maxChartSize = 1000000;
         private final int maxSentenceLength = 70;
+        private final String modelFolderPath;
+        // Size and modification time of the model files, so retraining a model in place invalidates cached reparses.
+        private final String modelFingerprint;
+        private final int nBest;
+        private ReparseCache reparseCache = null;
+        // The last reparses of recently reparsed sentences, see reparseIncrementally. Can be shared between parsers,
+        // see shareLastReparses.
+        private static final int maxLastReparses = 10000, maxLastReparsesPerSentence = 4;
+        private IncrementalReparses lastReparses = new IncrementalReparses(maxLastReparses,
+                maxLastReparsesPerSentence);
 
         public ConstrainedCcgParser(String modelFolderPath, int nBest) {
+            this.modelFolderPath = modelFolderPath;
+            this.nBest = nBest;
             final File modelFolder = Util.getFile(modelFolderPath);
             if (!modelFolder.exists()) {
                 throw new InputMismatchException("Couldn't load model from from: " + modelFolder);
             }
+            modelFingerprint = FileFingerprint.getFingerprint(ImmutableList.of(modelFolder));
             System.err.println("====Starting loading model====");
             parser = new ConstrainedParserAStar.Builder(modelFolder)
                     .supertaggerBeam(supertaggerBeam)
@@ -211,30 +240,56 @@ public abstract class BaseCcgParser {
                 e.printStackTrace();
             }
             try {
-                batchTagger = Tagger.make(modelFolder, supertaggerBeam, 50, null);
+                batchTagger = Tagger.make(modelFolder, supertaggerBeam, SupertagCache.maxTagsPerWord, null);
             } catch (IOException e) {
                 e.printStackTrace();
             }
         }
 
         public void cacheSupertags(ParseData corpus) {
-            if (batchTagger != null) {
-                System.err.println("Batch tagging " + corpus.getSentences().size() + " sentences ...");
-                taggedSentences = batchTagger.tagBatch(corpus.getSentenceInputWords().parallelStream()
-                        .map(s -> s.stream().collect(Collectors.toList())))
-                        .collect(GuavaCollectors.toImmutableList());
-            }
+            cacheSupertags(corpus.getSentenceInputWords());
         }
 
+        /**
+         * Supertags are shared with all parsers using the same model and beam, see SupertagCache.
+         */
         public void cacheSupertags(ImmutableList<ImmutableList<InputReader.InputWord>> inputSentences) {
             if (batchTagger != null) {
-                System.err.println("Batch tagging " + inputSentences.size() + " sentences ...");
-                taggedSentences = batchTagger.tagBatch(inputSentences.parallelStream()
-                        .map(s -> s.stream().collect(Collectors.toList())))
-                        .collect(GuavaCollectors.toImmutableList());
+                taggedSentences = SupertagCache.getSupertags(modelFolderPath, supertaggerBeam, inputSentences,
+                        batchTagger);
             }
         }
 
+        /**
+         * Reuses the supertags cached by another parser, i.e. for worker parsers in a parallel run.
+         */
+        public void cacheSupertags(ConstrainedCcgParser other) {
+            taggedSentences = other.taggedSentences;
+        }
+
+        /**
+         * Shares the last reparses with another parser, so a pool of parsers can reparse the same sentences
+         * incrementally. Callers must not reparse the same sentence on two parsers at once.
+         */
+        public void shareLastReparses(ConstrainedCcgParser other) {
+            lastReparses = other.lastReparses;
+        }
+
+        /**
+         * Serves repeated calls to parseWithConstraint from the cache. The cache can be shared between parsers.
+         */
+        public void setReparseCache(ReparseCache reparseCache) {
+            this.reparseCache = reparseCache;
+        }
+
+        /**
+         * Identifies the parser settings that affect the output of parseWithConstraint.
+         */
+        public String getConfigKey() {
+            return String.format("%s;model=%s;nbest=%d;beam=%g;chart=%d;maxlen=%d", modelFolderPath, modelFingerprint,
+                    nBest, supertaggerBeam, maxChartSize, maxSentenceLength);
+        }
+
         // TODO: change this.
         @Override
         public Parse parse(List<InputReader.InputWord> sentence) {
@@ -258,13 +313,46 @@ public abstract class BaseCcgParser {
 
         public Parse parseWithConstraint(int sentenceId, List<InputReader.InputWord> sentence,
                                          Set<Constraint> constraintSet) {
+            if (reparseCache != null) {
+                return reparseCache.get(reparseCache.getKey(getConfigKey(), sentenceId, sentence, constraintSet),
+                        () -> parseWithConstraintUncached(sentenceId, sentence, constraintSet));
+            }
+            return parseWithConstraintUncached(sentenceId, sentence, constraintSet);
+        }
+
+        /**
+         * Reparses a sentence whose constraint set grew since an earlier call for it, i.e. after each new annotation in
+         * an interactive session. Constraints only penalize the parses that violate them, so if an earlier parse
+         * respects all the added constraints it is still the best one and is returned without running A*. Otherwise,
+         * or if no earlier constraint set is a subset of this one, the sentence is parsed again. See
+         * IncrementalReparses.
+         *
+         * This assumes the search is exact. When A* gives up at maxChartSize, the earlier parse is only the best one
+         * found, and a parse found under the new constraints could score higher; the reused parse is then not the
+         * one parseWithConstraint would return.
+         */
+        public Parse reparseIncrementally(int sentenceId, List<InputReader.InputWord> sentence,
+                                          Set<Constraint> constraintSet) {
+            return lastReparses.reparse(sentenceId, constraintSet,
+                    constraints -> parseWithConstraint(sentenceId, sentence, constraints));
+        }
+
+        /**
+         * Sentences without cached supertags, i.e. ones added after cacheSupertags, are tagged by the parser.
+         */
+        private InputReader.InputToParser getInput(int sentenceId, List<InputReader.InputWord> sentence) {
+            return taggedSentences == null || sentenceId >= taggedSentences.size() ?
+                    new InputReader.InputToParser(sentence, null, null, false) :
+                    new InputReader.InputToParser(sentence, null, taggedSentences.get(sentenceId), true);
+        }
+
+        private Parse parseWithConstraintUncached(int sentenceId, List<InputReader.InputWord> sentence,
+                                                  Set<Constraint> constraintSet) {
             if (sentence.size() > maxSentenceLength) {
                 System.err.println("Skipping sentence of length " + sentence.size());
                 return null;
             }
-            final InputReader.InputToParser input = taggedSentences == null ?
-                    new InputReader.InputToParser(sentence, null, null, false) :
-                    new InputReader.InputToParser(sentence, null, taggedSentences.get(sentenceId), true);
+            final InputReader.InputToParser input = getInput(sentenceId, sentence);
             List<Scored<SyntaxTreeNode>> parses = parser.parseWithConstraints(input, constraintSet);
             return (parses == null || parses.size() == 0) ? null :
                     getParse(sentence, parses.get(0), dependencyGenerator);
@@ -276,9 +364,7 @@ public abstract class BaseCcgParser {
                 System.err.println("Skipping sentence of length " + sentence.size());
                 return null;
             }
-            final InputReader.InputToParser input = taggedSentences == null ?
-                    new InputReader.InputToParser(sentence, null, null, false) :
-                    new InputReader.InputToParser(sentence, null, taggedSentences.get(sentenceId), true);
+            final InputReader.InputToParser input = getInput(sentenceId, sentence);
             List<Scored<SyntaxTreeNode>> parses = parser.parseWithConstraints(input, constraintSet);
             return (parses == null || parses.size() == 0) ? null :
                     parses.stream().map(p -> getParse(sentence, p, dependencyGenerator)).collect(Collectors.toList());
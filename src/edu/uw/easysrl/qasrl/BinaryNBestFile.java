@@ -0,0 +1,390 @@
+package edu.uw.easysrl.qasrl;
+
+import com.google.common.io.CountingOutputStream;
+import edu.uw.easysrl.dependencies.ResolvedDependency;
+import edu.uw.easysrl.dependencies.SRLFrame;
+import edu.uw.easysrl.qasrl.util.CountDictionary;
+import edu.uw.easysrl.syntax.grammar.Category;
+import edu.uw.easysrl.syntax.grammar.Preposition;
+import edu.uw.easysrl.syntax.grammar.SyntaxTreeNode;
+
+import java.io.*;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Compact binary format for n-best lists, replacing the Java-serialized Map<Integer, List<Parse>>.
+ *
+ * Layout:
+ *   header:    magic, version, flags.
+ *   sentences: sentence id, words, and for each parse: score, supertag ids and packed dependencies.
+ *              If trees are included, the trees of the sentence follow as one length-prefixed serialized block,
+ *              which can be skipped when only supertags and dependencies are needed.
+ *   trailer:   category table, dependency label table, and the index: sentence ids and the offsets of their blocks,
+ *              both in increasing order. The file ends with the offset of the trailer.
+ *
+ * The tables are written last, so Writer can append each n-best list as soon as it is parsed.
+ * Each dependency is packed into a long: head, argument, category id, argument number and label id.
+ * Categories are stored as strings and interned again by Category.valueOf when reading.
+ */
+public class BinaryNBestFile {
+    public static final int kMagic = 0x4E425354; // "NBST"
+    public static final int kVersion = 2;
+    private static final int kIncludeTrees = 1;
+    // Magic, version and flags.
+    private static final int kHeaderSize = 12;
+
+    public static boolean isBinaryNBestFile(final String filePath) {
+        try (DataInputStream inputStream = new DataInputStream(new FileInputStream(filePath))) {
+            return inputStream.readInt() == kMagic;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public static void write(final Map<Integer, List<Parse>> allParses, final String filePath,
+                             final boolean includeTrees) throws IOException {
+        try (Writer writer = new Writer(filePath, includeTrees)) {
+            for (int sentenceId : allParses.keySet().stream().sorted().collect(Collectors.toList())) {
+                writer.write(sentenceId, allParses.get(sentenceId));
+            }
+        }
+    }
+
+    /**
+     * Writes a file one sentence at a time, in increasing order of sentence ids. The tables and the index are written
+     * by close(). Not thread-safe.
+     */
+    public static class Writer implements Closeable {
+        private final CountingOutputStream counter;
+        private final DataOutputStream out;
+        private final boolean includeTrees;
+        private final Tables tables = new Tables();
+        private final TreeMap<Integer, Long> offsets = new TreeMap<>();
+
+        public Writer(final String filePath, final boolean includeTrees) throws IOException {
+            this.includeTrees = includeTrees;
+            counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(filePath)));
+            out = new DataOutputStream(counter);
+            out.writeInt(kMagic);
+            out.writeInt(kVersion);
+            out.writeInt(includeTrees ? kIncludeTrees : 0);
+        }
+
+        public void write(final int sentenceId, final List<Parse> parses) throws IOException {
+            if (!offsets.isEmpty() && sentenceId <= offsets.lastKey()) {
+                throw new IllegalArgumentException(String.format("Sentence %d written after sentence %d.", sentenceId,
+                        offsets.lastKey()));
+            }
+            out.flush();
+            offsets.put(sentenceId, counter.getCount());
+            out.writeInt(sentenceId);
+            writeSentence(out, parses, tables, includeTrees);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+            final long trailerOffset = counter.getCount();
+            tables.write(out);
+            out.writeInt(offsets.size());
+            for (Map.Entry<Integer, Long> entry : offsets.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+            out.writeLong(trailerOffset);
+            out.close();
+        }
+    }
+
+    /**
+     * Categories and dependency labels (semantic role and preposition), interned as they are written.
+     */
+    private static class Tables {
+        private final CountDictionary categoryDict = new CountDictionary();
+        private final Map<List<Object>, Integer> labelIds = new HashMap<>();
+        private final List<Object[]> labels = new ArrayList<>();
+
+        int getCategoryId(final Category category) {
+            return categoryDict.addString(category.toString());
+        }
+
+        int getLabelId(final ResolvedDependency dep) {
+            final List<Object> label = Arrays.asList(dep.getSemanticRole(), dep.getPreposition());
+            if (!labelIds.containsKey(label)) {
+                labelIds.put(label, labels.size());
+                labels.add(new Object[] { dep.getSemanticRole(), dep.getPreposition() });
+            }
+            return labelIds.get(label);
+        }
+
+        void checkSize() throws IOException {
+            if (categoryDict.size() > 0xFFFF || labels.size() > 0xFF) {
+                throw new IOException(String.format("Too many categories (%d) or dependency labels (%d) to pack.",
+                        categoryDict.size(), labels.size()));
+            }
+        }
+
+        void write(final DataOutput out) throws IOException {
+            out.writeInt(categoryDict.size());
+            for (String category : categoryDict.getStrings()) {
+                out.writeUTF(category);
+            }
+            writeBlock(out, labels);
+        }
+    }
+
+    /**
+     * Writes a sentence block, after the sentence id.
+     */
+    private static void writeSentence(final DataOutput out, final List<Parse> parses, final Tables tables,
+                                      final boolean includeTrees) throws IOException {
+        final List<String> words = parses.get(0).getWords();
+        final int[][] categoryIds = new int[parses.size()][];
+        final long[][] dependencies = new long[parses.size()][];
+        for (int k = 0; k < parses.size(); k++) {
+            final Parse parse = parses.get(k);
+            categoryIds[k] = parse.categories.stream().mapToInt(tables::getCategoryId).toArray();
+            dependencies[k] = new long[parse.dependencies.size()];
+            int j = 0;
+            for (ResolvedDependency dep : parse.dependencies) {
+                dependencies[k][j++] = packDependency(dep.getHead(), dep.getArgument(),
+                        tables.getCategoryId(dep.getCategory()), dep.getArgNumber(), tables.getLabelId(dep));
+            }
+        }
+        tables.checkSize();
+        out.writeInt(words.size());
+        for (String word : words) {
+            out.writeUTF(word);
+        }
+        out.writeInt(parses.size());
+        for (int k = 0; k < parses.size(); k++) {
+            out.writeDouble(parses.get(k).score);
+            for (int categoryId : categoryIds[k]) {
+                out.writeShort(categoryId);
+            }
+            out.writeInt(dependencies[k].length);
+            for (long dependency : dependencies[k]) {
+                out.writeLong(dependency);
+            }
+        }
+        if (includeTrees) {
+            writeBlock(out, parses.stream().map(p -> p.syntaxTree).collect(Collectors.toCollection(ArrayList::new)));
+        }
+    }
+
+    public static Map<Integer, List<Parse>> read(final String filePath, final int n, final boolean loadTrees)
+            throws IOException {
+        final Header header;
+        try (RandomAccessFile file = new RandomAccessFile(filePath, "r")) {
+            header = readHeader(file);
+        }
+        final Map<Integer, List<Parse>> allParses = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath)))) {
+            in.readFully(new byte[kHeaderSize]);
+            for (int i = 0; i < header.sentenceIds.length; i++) {
+                final int sentenceId = in.readInt();
+                allParses.put(sentenceId, readSentence(in, header, n, loadTrees));
+            }
+        }
+        return allParses;
+    }
+
+    /**
+     * The part of the file needed to find and decode sentence blocks: the header and the trailer.
+     */
+    static class Header {
+        final boolean hasTrees;
+        final Category[] categories;
+        final Object[][] labels;
+        // Sorted.
+        final int[] sentenceIds;
+        final long[] offsets;
+        // Where the last sentence block ends.
+        final long trailerOffset;
+
+        Header(boolean hasTrees, Category[] categories, Object[][] labels, int[] sentenceIds, long[] offsets,
+               long trailerOffset) {
+            this.hasTrees = hasTrees;
+            this.categories = categories;
+            this.labels = labels;
+            this.sentenceIds = sentenceIds;
+            this.offsets = offsets;
+            this.trailerOffset = trailerOffset;
+        }
+    }
+
+    static Header readHeader(final RandomAccessFile file) throws IOException {
+        file.seek(0);
+        if (file.readInt() != kMagic) {
+            throw new IOException("Not a binary n-best file.");
+        }
+        final int version = file.readInt();
+        if (version != kVersion) {
+            throw new IOException("Unsupported binary n-best file version: " + version);
+        }
+        final boolean hasTrees = (file.readInt() & kIncludeTrees) != 0;
+        file.seek(file.length() - 8);
+        final long trailerOffset = file.readLong();
+        file.seek(trailerOffset);
+        // Not closed, since that would close the file.
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file.getFD())));
+        final Category[] categories = readCategories(in);
+        final List<Object[]> labels = readBlock(in);
+        final int numSentences = in.readInt();
+        final int[] sentenceIds = new int[numSentences];
+        final long[] offsets = new long[numSentences];
+        for (int i = 0; i < numSentences; i++) {
+            sentenceIds[i] = in.readInt();
+            offsets[i] = in.readLong();
+        }
+        return new Header(hasTrees, categories, labels.toArray(new Object[labels.size()][]), sentenceIds, offsets,
+                trailerOffset);
+    }
+
+    private static Category[] readCategories(final DataInput in) throws IOException {
+        final Category[] categories = new Category[in.readInt()];
+        for (int i = 0; i < categories.length; i++) {
+            categories[i] = Category.valueOf(in.readUTF());
+        }
+        return categories;
+    }
+
+    /**
+     * Writes single parses of different sentences, i.e. gold parses, with the same encoding as the n-best lists but
+     * without trees. Parses without dependencies are read back with null dependencies.
+     */
+    public static void writeParses(final DataOutput out, final List<Parse> parses) throws IOException {
+        final Tables tables = new Tables();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream blocks = new DataOutputStream(bytes);
+        for (Parse parse : parses) {
+            blocks.writeBoolean(parse.dependencies != null);
+            final Parse withDependencies = parse.dependencies != null ? parse :
+                    new Parse(parse.getWords(), parse.categories, new HashSet<>(), parse.score);
+            writeSentence(blocks, Collections.singletonList(withDependencies), tables, false /* includeTrees */);
+        }
+        blocks.flush();
+        // The tables are only complete once all parses are encoded.
+        tables.write(out);
+        out.writeInt(parses.size());
+        out.write(bytes.toByteArray());
+    }
+
+    public static List<Parse> readParses(final DataInput in) throws IOException {
+        final Category[] categories = readCategories(in);
+        final List<Object[]> labels = readBlock(in);
+        final Header header = new Header(false, categories, labels.toArray(new Object[labels.size()][]), new int[0],
+                new long[0], -1);
+        final int numParses = in.readInt();
+        final List<Parse> parses = new ArrayList<>(numParses);
+        for (int i = 0; i < numParses; i++) {
+            final boolean hasDependencies = in.readBoolean();
+            final Parse parse = readSentence(in, header, 1, false /* loadTrees */).get(0);
+            parses.add(hasDependencies ? parse : new Parse(parse.getWords(), parse.categories));
+        }
+        return parses;
+    }
+
+    /**
+     * Reads the rest of a sentence block, right after the sentence id. Only the first n parses are kept.
+     */
+    static List<Parse> readSentence(final DataInput in, final Header header, final int n, final boolean loadTrees)
+            throws IOException {
+        final int numWords = in.readInt();
+        final List<String> words = new ArrayList<>(numWords);
+        for (int j = 0; j < numWords; j++) {
+            words.add(in.readUTF());
+        }
+        final int numParses = in.readInt();
+        final List<Double> scores = new ArrayList<>();
+        final List<List<Category>> categories = new ArrayList<>();
+        final List<Set<ResolvedDependency>> dependencies = new ArrayList<>();
+        for (int k = 0; k < numParses; k++) {
+            final double score = in.readDouble();
+            final List<Category> tags = new ArrayList<>(numWords);
+            for (int j = 0; j < numWords; j++) {
+                tags.add(header.categories[in.readUnsignedShort()]);
+            }
+            final int numDependencies = in.readInt();
+            final Set<ResolvedDependency> deps = new HashSet<>();
+            for (int j = 0; j < numDependencies; j++) {
+                deps.add(unpackDependency(in.readLong(), header));
+            }
+            if (k < n) {
+                scores.add(score);
+                categories.add(tags);
+                dependencies.add(deps);
+            }
+        }
+        List<SyntaxTreeNode> trees = null;
+        if (header.hasTrees) {
+            if (loadTrees) {
+                trees = readBlock(in);
+            } else {
+                in.skipBytes(in.readInt());
+            }
+        }
+        final List<Parse> parses = new ArrayList<>();
+        for (int k = 0; k < scores.size(); k++) {
+            parses.add(trees != null ?
+                    new Parse(trees.get(k), categories.get(k), dependencies.get(k), scores.get(k)) :
+                    new Parse(words, categories.get(k), dependencies.get(k), scores.get(k)));
+        }
+        return parses;
+    }
+
+    static long packDependency(int head, int argument, int categoryId, int argNumber, int labelId) {
+        return ((long) head << 48) | ((long) argument << 32) | ((long) categoryId << 16) | (argNumber << 8) | labelId;
+    }
+
+    private static ResolvedDependency unpackDependency(final long packed, final Header header) {
+        final Object[] label = header.labels[(int) (packed & 0xFF)];
+        return new ResolvedDependency(
+                (int) (packed >>> 48),
+                header.categories[(int) ((packed >>> 16) & 0xFFFF)],
+                (int) ((packed >>> 8) & 0xFF),
+                (int) ((packed >>> 32) & 0xFFFF),
+                (SRLFrame.SRLLabel) label[0],
+                (Preposition) label[1]);
+    }
+
+    private static void writeBlock(final DataOutput out, final Object object) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream oos = new ObjectOutputStream(bytes);
+        oos.writeObject(object);
+        oos.close();
+        out.writeInt(bytes.size());
+        out.write(bytes.toByteArray());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> readBlock(final DataInput in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (List<T>) ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Converts a Java-serialized n-best file (i.e. parses.tagged.dev.100best.out) to the binary format.
+     * Usage: BinaryNBestFile [input file] [output file]
+     */
+    @SuppressWarnings("unchecked")
+    public static void main(String[] args) {
+        final String inputFile = args[0], outputFile = args[1];
+        try {
+            ObjectInputStream inputStream = new ObjectInputStream(new BufferedInputStream(new FileInputStream(inputFile)));
+            final Map<Integer, List<Parse>> allParses = (Map<Integer, List<Parse>>) inputStream.readObject();
+            inputStream.close();
+            write(allParses, outputFile, true /* include trees */);
+            System.out.println(String.format("Converted n-best lists for %d sentences from %s to %s.",
+                    allParses.size(), inputFile, outputFile));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
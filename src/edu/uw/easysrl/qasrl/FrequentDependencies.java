@@ -0,0 +1,109 @@
+package edu.uw.easysrl.qasrl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import edu.uw.easysrl.qasrl.corpora.ParseDataLoader;
+import edu.uw.easysrl.qasrl.util.CacheFiles;
+import edu.uw.easysrl.qasrl.util.CountDictionary;
+import edu.uw.easysrl.qasrl.util.FileFingerprint;
+import edu.uw.easysrl.qasrl.util.GuavaCollectors;
+import edu.uw.easysrl.qasrl.util.PropertyUtil;
+import edu.uw.easysrl.syntax.grammar.Category;
+import edu.uw.easysrl.util.Util;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Dependency labels (category.argNumber) that occur at least minDependencyCount times in the CCGBank training set.
+ * Parsers only keep dependencies with these labels.
+ *
+ * Counting them means loading the whole training set, so the set is only built on first use. If "corpus_cache_dir" is
+ * set in resources.properties, it is also saved there as a text file (fingerprint, then one label per line), keyed on
+ * a fingerprint of the CCGBank files, and later runs just read it back.
+ */
+public class FrequentDependencies {
+    private static final int kVersion = 1;
+    private static final int minDependencyCount = 10;
+    private static final String cacheDirectory = PropertyUtil.resourcesProperties.getProperty("corpus_cache_dir");
+
+    private static volatile ImmutableSet<String> labels = null;
+
+    private FrequentDependencies() {
+    }
+
+    public static boolean contains(final Category category, final int argNumber) {
+        return getLabels().contains(category + "." + argNumber);
+    }
+
+    public static ImmutableSet<String> getLabels() {
+        if (labels == null) {
+            synchronized (FrequentDependencies.class) {
+                if (labels == null) {
+                    labels = load();
+                }
+            }
+        }
+        return labels;
+    }
+
+    private static ImmutableSet<String> load() {
+        final String fingerprint = FileFingerprint.getFingerprint(
+                ImmutableList.of(Util.getFile(PropertyUtil.corporaProperties.getProperty("ccgbank"))),
+                kVersion, minDependencyCount);
+        ImmutableSet<String> result = readFromDisk(fingerprint);
+        if (result == null) {
+            result = count();
+            writeToDisk(fingerprint, result);
+        }
+        System.out.println("Initialized frequent dependency set:\t" + result.size());
+        return result;
+    }
+
+    private static ImmutableSet<String> count() {
+        final CountDictionary dependencyDict = new CountDictionary();
+        final ParseData parseData = ParseDataLoader.loadFromTrainingPool().get();
+        parseData.getGoldParses()
+                .forEach(parse -> parse.dependencies
+                        .forEach(dep -> dependencyDict.addString(dep.getCategory() + "." + dep.getArgNumber())));
+        return IntStream.range(0, dependencyDict.size())
+                .filter(i -> dependencyDict.getCount(i) >= minDependencyCount)
+                .mapToObj(dependencyDict::getString)
+                .collect(GuavaCollectors.toImmutableSet());
+    }
+
+    private static File getFile(final String fingerprint) {
+        return new File(cacheDirectory, "frequent_dependencies." + fingerprint.substring(0, 16) + ".txt");
+    }
+
+    private static ImmutableSet<String> readFromDisk(final String fingerprint) {
+        if (cacheDirectory == null) {
+            return null;
+        }
+        return CacheFiles.read(getFile(fingerprint), "frequent dependency set", in -> {
+            final List<String> lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)).lines()
+                    .collect(Collectors.toList());
+            if (lines.isEmpty() || !lines.get(0).equals(fingerprint)) {
+                return null;
+            }
+            return ImmutableSet.copyOf(lines.subList(1, lines.size()));
+        });
+    }
+
+    private static void writeToDisk(final String fingerprint, final ImmutableSet<String> labels) {
+        if (cacheDirectory == null) {
+            return;
+        }
+        CacheFiles.write(getFile(fingerprint), "frequent dependency set", out -> {
+            final Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            writer.write(fingerprint + "\n");
+            for (String label : labels) {
+                writer.write(label + "\n");
+            }
+            writer.flush();
+        });
+    }
+}
@@ -0,0 +1,85 @@
+package edu.uw.easysrl.qasrl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import edu.uw.easysrl.qasrl.reparsing.ConstraintHelper;
+import edu.uw.easysrl.syntax.model.Constraint;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * The last few reparses of recently reparsed sentences, each with the constraints it was parsed with. Reparses of one
+ * sentence often alternate between constraint sets, i.e. the user and the oracle constraints of an experiment, so a
+ * few entries are kept per sentence, most recent first.
+ *
+ * Constraints only penalize the parses that violate them. If a parse was the best one under a subset of the new
+ * constraints, and respects all the others, it is still the best one, and is reused without running A*.
+ */
+public class IncrementalReparses {
+    private final int maxEntriesPerSentence;
+    private final Cache<Integer, ImmutableList<Entry>> entries;
+
+    private static class Entry {
+        final ImmutableSet<String> constraintKeys;
+        final Parse parse;
+
+        Entry(ImmutableSet<String> constraintKeys, Parse parse) {
+            this.constraintKeys = constraintKeys;
+            this.parse = parse;
+        }
+    }
+
+    /**
+     * @param maxSentences bounded, since sentences ingested online add entries for as long as the service runs.
+     */
+    public IncrementalReparses(int maxSentences, int maxEntriesPerSentence) {
+        this.maxEntriesPerSentence = maxEntriesPerSentence;
+        entries = CacheBuilder.newBuilder()
+                .maximumSize(maxSentences)
+                .softValues()
+                .build();
+    }
+
+    /**
+     * Reuses the parse of an entry, or calls parseWithConstraint and adds an entry for it. Calls for the same sentence
+     * must not run at the same time.
+     */
+    public Parse reparse(int sentenceId, Set<Constraint> constraintSet,
+                         Function<Set<Constraint>, Parse> parseWithConstraint) {
+        final Map<String, Constraint> constraints = new HashMap<>();
+        constraintSet.forEach(c -> constraints.put(ConstraintHelper.getCanonicalKey(c), c));
+        final ImmutableList<Entry> last = entries.getIfPresent(sentenceId);
+        Parse parse = null;
+        if (last != null) {
+            parse = last.stream()
+                    .filter(entry -> canReuse(entry, constraints))
+                    .map(entry -> entry.parse)
+                    .findFirst()
+                    .orElse(null);
+        }
+        if (parse == null) {
+            parse = parseWithConstraint.apply(constraintSet);
+        }
+        final ImmutableSet<String> constraintKeys = ImmutableSet.copyOf(constraints.keySet());
+        final List<Entry> updated = new ArrayList<>();
+        updated.add(new Entry(constraintKeys, parse));
+        if (last != null) {
+            last.stream()
+                    .filter(entry -> !entry.constraintKeys.equals(constraintKeys))
+                    .limit(maxEntriesPerSentence - 1)
+                    .forEach(updated::add);
+        }
+        entries.put(sentenceId, ImmutableList.copyOf(updated));
+        return parse;
+    }
+
+    private static boolean canReuse(Entry entry, Map<String, Constraint> constraints) {
+        return entry.parse != null && constraints.keySet().containsAll(entry.constraintKeys)
+                && constraints.entrySet().stream()
+                        .filter(e -> !entry.constraintKeys.contains(e.getKey()))
+                        .allMatch(e -> ConstraintHelper.isRespectedBy(e.getValue(), entry.parse));
+    }
+}
@@ -5,10 +5,12 @@ import com.google.common.collect.ImmutableMap;
 
 import edu.uw.easysrl.qasrl.evaluation.Accuracy;
 import edu.uw.easysrl.qasrl.evaluation.CcgEvaluation;
+import edu.uw.easysrl.qasrl.query.ParseCoverageIndex;
 import edu.uw.easysrl.syntax.evaluation.Results;
 import edu.uw.easysrl.main.InputReader;
 import edu.uw.easysrl.qasrl.util.GuavaCollectors;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
@@ -32,7 +34,9 @@ public final class NBestList {
     private final ImmutableList<Parse> parses;
     private final ImmutableList<Double> scores;
     private ImmutableList<Results> results;
+    private ImmutableList<Results> unlabeledResults;
     private int oracleId;
+    private ParseCoverageIndex coverageIndex;
 
     public int getN() {
         return parses.size();
@@ -62,10 +66,30 @@ public final class NBestList {
         return results.get(parseId);
     }
 
+    /**
+     * Only available if the gold parse has dependencies.
+     */
+    public Results getUnlabeledResults(int parseId) {
+        return unlabeledResults.get(parseId);
+    }
+
+
+    /**
+     * Parse ids covering each supertag and dependency structure, built on first use.
+     */
+    public synchronized ParseCoverageIndex getCoverageIndex() {
+        if (coverageIndex == null) {
+            coverageIndex = new ParseCoverageIndex(this);
+        }
+        return coverageIndex;
+    }
 
     public void cacheResults(final Parse goldParse) {
         if (goldParse.dependencies != null) {
-            results = ImmutableList.copyOf(CcgEvaluation.evaluateNBest(parses, goldParse.dependencies));
+            final List<Results> labeled = new ArrayList<>(parses.size()), unlabeled = new ArrayList<>(parses.size());
+            CcgEvaluation.evaluateNBest(parses, goldParse, labeled, unlabeled);
+            results = ImmutableList.copyOf(labeled);
+            unlabeledResults = ImmutableList.copyOf(unlabeled);
         } else {
             results = parses.stream()
                     .map(parse -> {
@@ -118,12 +142,42 @@ public final class NBestList {
         return ImmutableMap.copyOf(allParses);
     }
 
+    /**
+     * Maps a binary n-best file as a lazily decoded NBestStore, or loads all n-best lists if the file is
+     * Java-serialized.
+     */
+    public static Optional<Map<Integer, NBestList>> openNBestLists(String filepath, int n) {
+        if (!BinaryNBestFile.isBinaryNBestFile(filepath)) {
+            return loadNBestListsFromFile(filepath, n).map(m -> m);
+        }
+        try {
+            return Optional.of(NBestStore.open(filepath, n, true /* load trees */));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Optional.empty();
+        }
+    }
+
     public static Optional<ImmutableMap<Integer, NBestList>> loadNBestListsFromFile(String filepath, int n) {
+        return loadNBestListsFromFile(filepath, n, true /* load trees */);
+    }
+
+    /**
+     * Reads either a binary n-best file (see BinaryNBestFile) or a Java-serialized Map<Integer, List<Parse>>.
+     * @param loadTrees: if false, parses from a binary file come without syntax trees, which is enough for evaluation
+     *                 and reranking but not for question generation.
+     */
+    public static Optional<ImmutableMap<Integer, NBestList>> loadNBestListsFromFile(String filepath, int n,
+                                                                                 boolean loadTrees) {
         Map<Integer, NBestList> allNBestLists = new HashMap<>();
         Map<Integer, List<Parse>> readParses;
         try {
-            ObjectInputStream inputStream = new ObjectInputStream(new BufferedInputStream(new FileInputStream(filepath)));
-            readParses = (Map<Integer, List<Parse>>) inputStream.readObject();
+            if (BinaryNBestFile.isBinaryNBestFile(filepath)) {
+                readParses = BinaryNBestFile.read(filepath, n, loadTrees);
+            } else {
+                ObjectInputStream inputStream = new ObjectInputStream(new BufferedInputStream(new FileInputStream(filepath)));
+                readParses = (Map<Integer, List<Parse>>) inputStream.readObject();
+            }
         }  catch(Exception e){
             e.printStackTrace();
             return Optional.empty();
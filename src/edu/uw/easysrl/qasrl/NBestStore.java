@@ -0,0 +1,169 @@
+package edu.uw.easysrl.qasrl;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * N-best lists backed by a memory-mapped binary n-best file (see BinaryNBestFile).
+ * Only the header and the sentence offset index are read up front. The parses of a sentence are decoded on first
+ * access and kept in a soft-referenced cache. Since the file is mapped read-only, concurrent experiment JVMs share
+ * its pages through the OS page cache.
+ * Implements Map so it can be used in place of the eagerly loaded map. Iterating over the values decodes every
+ * sentence, so prefer get() with the sentence ids that are actually needed.
+ */
+public class NBestStore extends AbstractMap<Integer, NBestList> {
+    private final int n;
+    private final boolean loadTrees;
+    private final BinaryNBestFile.Header header;
+    private final int[] sentenceIds;
+    private final long[] offsets;
+    private final int[] sentenceToSegment;
+    private final MappedByteBuffer[] segments;
+    private final long[] segmentStarts;
+    private final ImmutableSet<Integer> sentenceIdSet;
+    private final LoadingCache<Integer, NBestList> cache;
+    private ImmutableList<Parse> goldParses = ImmutableList.of();
+
+    public static NBestStore open(final String filePath, final int n, final boolean loadTrees) throws IOException {
+        return new NBestStore(filePath, n, loadTrees);
+    }
+
+    private NBestStore(final String filePath, final int n, final boolean loadTrees) throws IOException {
+        this.n = n;
+        this.loadTrees = loadTrees;
+        try (RandomAccessFile file = new RandomAccessFile(filePath, "r")) {
+            header = BinaryNBestFile.readHeader(file);
+            sentenceIds = header.sentenceIds;
+            offsets = header.offsets;
+            final int numSentences = sentenceIds.length;
+
+            // A single mapping is limited to 2GB, so split the file into segments at sentence boundaries.
+            sentenceToSegment = new int[numSentences];
+            final List<Long> starts = new ArrayList<>(), ends = new ArrayList<>();
+            for (int i = 0; i < numSentences; i++) {
+                final long end = i + 1 < numSentences ? offsets[i + 1] : header.trailerOffset;
+                if (starts.isEmpty() || end - starts.get(starts.size() - 1) > Integer.MAX_VALUE) {
+                    starts.add(offsets[i]);
+                    ends.add(end);
+                } else {
+                    ends.set(ends.size() - 1, end);
+                }
+                sentenceToSegment[i] = starts.size() - 1;
+            }
+            final FileChannel channel = file.getChannel();
+            segments = new MappedByteBuffer[starts.size()];
+            segmentStarts = new long[starts.size()];
+            for (int s = 0; s < segments.length; s++) {
+                segmentStarts[s] = starts.get(s);
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, starts.get(s), ends.get(s) - starts.get(s));
+            }
+        }
+        final Integer[] boxedIds = new Integer[sentenceIds.length];
+        Arrays.setAll(boxedIds, i -> sentenceIds[i]);
+        sentenceIdSet = ImmutableSet.copyOf(boxedIds);
+        cache = CacheBuilder.newBuilder()
+                .softValues()
+                .build(new CacheLoader<Integer, NBestList>() {
+                    @Override
+                    public NBestList load(Integer sentenceId) throws IOException {
+                        return decode(sentenceId);
+                    }
+                });
+        System.out.println(String.format("Mapped n-best lists for %d sentences from %s.", sentenceIds.length,
+                filePath));
+    }
+
+    /**
+     * Evaluate each n-best list against its gold parse when it is decoded, as NBestList.cacheResults does.
+     */
+    public void cacheResults(final ImmutableList<Parse> goldParses) {
+        this.goldParses = goldParses;
+        cache.invalidateAll();
+    }
+
+    public NBestList getNBestList(int sentenceId) {
+        return get(sentenceId);
+    }
+
+    @Override
+    public NBestList get(Object key) {
+        return containsKey(key) ? cache.getUnchecked((Integer) key) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return sentenceIdSet.contains(key);
+    }
+
+    @Override
+    public ImmutableSet<Integer> keySet() {
+        return sentenceIdSet;
+    }
+
+    @Override
+    public int size() {
+        return sentenceIds.length;
+    }
+
+    @Override
+    public Set<Entry<Integer, NBestList>> entrySet() {
+        return Maps.asMap(sentenceIdSet, this::get).entrySet();
+    }
+
+    private NBestList decode(final int sentenceId) throws IOException {
+        final int i = Arrays.binarySearch(sentenceIds, sentenceId);
+        final int s = sentenceToSegment[i];
+        final ByteBuffer buffer = segments[s].duplicate();
+        buffer.position((int) (offsets[i] - segmentStarts[s]));
+        final DataInputStream in = new DataInputStream(new ByteBufferInputStream(buffer));
+        if (in.readInt() != sentenceId) {
+            throw new IOException("Corrupted n-best index at sentence " + sentenceId);
+        }
+        final NBestList nBestList = new NBestList(ImmutableList.copyOf(
+                BinaryNBestFile.readSentence(in, header, n, loadTrees)));
+        if (!goldParses.isEmpty()) {
+            nBestList.cacheResults(goldParses.get(sentenceId));
+        }
+        return nBestList;
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final int numRead = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, numRead);
+            return numRead;
+        }
+
+        @Override
+        public long skip(long numBytes) {
+            final int numSkipped = (int) Math.min(numBytes, buffer.remaining());
+            buffer.position(buffer.position() + numSkipped);
+            return numSkipped;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package edu.uw.easysrl.qasrl;
+
+import edu.uw.easysrl.dependencies.ResolvedDependency;
+import edu.uw.easysrl.syntax.grammar.Category;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dependencies of a parse packed into sorted longs: head, argument, category id and argument number, from the highest
+ * bits to the lowest. Sorting by key groups dependencies by head and then by (head, argument), so lookups are binary
+ * searches over a primitive array instead of streams over a HashSet.
+ * The original ResolvedDependency objects are kept in the same order, so range lookups can return them without
+ * allocating.
+ * Category ids are interned per JVM (see getCategoryId), so packed keys must not be persisted.
+ */
+public final class PackedDependencies {
+    // Field value reserved for wildcards in lookup keys. Never used by a real word index, category id or argument.
+    public static final int kAny = 0xFFFF;
+
+    private static final Map<Category, Integer> categoryIds = new ConcurrentHashMap<>();
+    private static final List<Category> categories = new ArrayList<>();
+
+    private final long[] keys;
+    private final ResolvedDependency[] dependencies;
+
+    public PackedDependencies(final Collection<ResolvedDependency> dependencySet) {
+        final int size = dependencySet == null ? 0 : dependencySet.size();
+        final long[] unsortedKeys = new long[size];
+        final ResolvedDependency[] unsortedDeps = new ResolvedDependency[size];
+        final Integer[] order = new Integer[size];
+        int i = 0;
+        if (dependencySet != null) {
+            for (ResolvedDependency dep : dependencySet) {
+                unsortedKeys[i] = pack(dep);
+                unsortedDeps[i] = dep;
+                order[i] = i;
+                i++;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(unsortedKeys[a], unsortedKeys[b]));
+        keys = new long[size];
+        dependencies = new ResolvedDependency[size];
+        for (int k = 0; k < size; k++) {
+            keys[k] = unsortedKeys[order[k]];
+            dependencies[k] = unsortedDeps[order[k]];
+        }
+    }
+
+    /**
+     * Ids are assigned in order of first use and shared by all parses in the JVM.
+     */
+    public static int getCategoryId(final Category category) {
+        final Integer id = categoryIds.get(category);
+        if (id != null) {
+            return id;
+        }
+        synchronized (categories) {
+            return categoryIds.computeIfAbsent(category, c -> {
+                if (categories.size() >= kAny) {
+                    throw new IllegalStateException("Too many categories to pack.");
+                }
+                categories.add(c);
+                return categories.size() - 1;
+            });
+        }
+    }
+
+    public static Category getCategory(final int categoryId) {
+        synchronized (categories) {
+            return categories.get(categoryId);
+        }
+    }
+
+    public static long pack(final ResolvedDependency dep) {
+        return pack(dep.getHead(), dep.getArgument(), getCategoryId(dep.getCategory()), dep.getArgNumber());
+    }
+
+    public static long pack(int head, int argument, int categoryId, int argNumber) {
+        return ((long) head << 48) | ((long) argument << 32) | ((long) categoryId << 16) | argNumber;
+    }
+
+    public static int getHead(final long key) {
+        return (int) (key >>> 48);
+    }
+
+    public static int getArgument(final long key) {
+        return (int) ((key >>> 32) & 0xFFFF);
+    }
+
+    public static int getCategoryId(final long key) {
+        return (int) ((key >>> 16) & 0xFFFF);
+    }
+
+    public static int getArgNumber(final long key) {
+        return (int) (key & 0xFFFF);
+    }
+
+    /**
+     * Drops the category and argument number, i.e. for unlabeled comparison.
+     */
+    public static long unlabeled(final long key) {
+        return key & 0xFFFFFFFF00000000L;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public long getKey(int i) {
+        return keys[i];
+    }
+
+    public ResolvedDependency get(int i) {
+        return dependencies[i];
+    }
+
+    /**
+     * Index of the first key that is not smaller than the given key, or size() if there is none.
+     */
+    public int lowerBound(final long key) {
+        int low = 0, high = keys.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (keys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Dependencies with this head are in [headStart(head), headEnd(head)).
+     */
+    public int headStart(int head) {
+        return lowerBound((long) head << 48);
+    }
+
+    public int headEnd(int head) {
+        return lowerBound((long) (head + 1) << 48);
+    }
+
+    /**
+     * Dependencies with this head and argument are in [headArgumentStart(head, argument), headArgumentEnd(...)).
+     */
+    public int headArgumentStart(int head, int argument) {
+        return lowerBound(pack(head, argument, 0, 0));
+    }
+
+    public int headArgumentEnd(int head, int argument) {
+        return argument < 0xFFFF ? lowerBound(pack(head, argument + 1, 0, 0)) : headEnd(head);
+    }
+
+    public boolean containsHead(int head) {
+        final int i = headStart(head);
+        return i < keys.length && getHead(keys[i]) == head;
+    }
+
+    public boolean contains(int head, int argument) {
+        final int i = headArgumentStart(head, argument);
+        return i < keys.length && unlabeled(keys[i]) == pack(head, argument, 0, 0);
+    }
+
+    public boolean containsUndirected(int index1, int index2) {
+        return contains(index1, index2) || contains(index2, index1);
+    }
+
+    public boolean contains(int head, int argument, final Category category, int argNumber) {
+        final long key = pack(head, argument, getCategoryId(category), argNumber);
+        final int i = lowerBound(key);
+        return i < keys.length && keys[i] == key;
+    }
+}
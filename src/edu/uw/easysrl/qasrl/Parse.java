@@ -26,6 +26,8 @@ public class Parse implements Serializable {
 
     private final ImmutableList<String> words;
     private final ImmutableList<Category> categoriesImmutable;
+    // Built on first use; category ids are only valid within one JVM.
+    private transient PackedDependencies packedDependencies;
 
     public ImmutableList<String> getWords() {
         return words;
@@ -35,6 +37,17 @@ public class Parse implements Serializable {
         return categoriesImmutable;
     }
 
+    /**
+     * Sorted, primitive-packed view of dependencies for indexed lookups by head and by (head, argument).
+     * Empty if the parse has no dependencies.
+     */
+    public PackedDependencies getPackedDependencies() {
+        if (packedDependencies == null) {
+            packedDependencies = new PackedDependencies(dependencies);
+        }
+        return packedDependencies;
+    }
+
     public Parse(SyntaxTreeNode syntaxTree, List<Category> categories, Set<ResolvedDependency> dependencies,
                  double score) {
         this.syntaxTree = syntaxTree;
@@ -57,6 +70,18 @@ public class Parse implements Serializable {
         categoriesImmutable = ImmutableList.copyOf(categories);
     }
 
+    /**
+     * For parses read without a syntax tree, i.e. from a binary n-best file.
+     */
+    public Parse(List<String> words, List<Category> categories, Set<ResolvedDependency> dependencies, double score) {
+        this.syntaxTree = null;
+        this.categories = categories;
+        this.dependencies = dependencies;
+        this.score = score;
+        this.words = ImmutableList.copyOf(words);
+        categoriesImmutable = ImmutableList.copyOf(categories);
+    }
+
     public Parse(SyntaxTreeNode syntaxTree, List<Category> categories, Set<ResolvedDependency> dependencies) {
         this(syntaxTree, categories, dependencies, 1.0);
     }
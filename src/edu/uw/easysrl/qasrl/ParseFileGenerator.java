@@ -6,15 +6,18 @@ import edu.uw.easysrl.main.InputReader;
 
 import edu.uw.easysrl.qasrl.corpora.ParseDataLoader;
 import edu.uw.easysrl.qasrl.evaluation.CcgEvaluation;
+import edu.uw.easysrl.qasrl.util.SentenceScheduler;
 import edu.uw.easysrl.syntax.evaluation.CCGBankEvaluation;
 import edu.uw.easysrl.syntax.evaluation.Results;
 import edu.uw.easysrl.syntax.parser.SRLParser;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
 
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.ObjectOutputStream;
+import java.io.*;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Generates and serializes n-best parses.
@@ -25,41 +28,78 @@ public class ParseFileGenerator {
     static final boolean includeGoldInTest = false;
     static final int nBest = 100;
 
-    public static void main(String[] args) {
-        System.err.println(generateDev ? "Generating for CCG Dev set." : "Generating for CCG Test set.");
-        if (!generateDev && includeGoldInTest) {
-            System.err.println("Warning: reading gold parses for test!!!");
-        }
-        Map<Integer, List<Parse>> allParses = new HashMap<>();
-        ParseData dev, test;
-        if (generateDev) {
-            dev = ParseDataLoader.loadFromDevPool().get();
-        } else {
-            test = ParseDataLoader.loadFromTestPool(includeGoldInTest).get();
-        }
+    private static class GeneratorConfig {
+        @Option(name="-threads",usage="Number of parser workers. Each worker loads its own model.")
+        int numThreads = 1;
 
-        ImmutableList<ImmutableList<InputReader.InputWord>> sentences =
-                generateDev ? dev.getSentenceInputWords() : test.getSentenceInputWords();
-        ImmutableList<Parse> goldParses =
-                generateDev ?  dev.getGoldParses() : test.getGoldParses();
+        @Option(name="-java-serialized",usage="Write a Java-serialized map instead of the binary n-best format.")
+        boolean javaSerialized = false;
+
+        @Option(name="-no-trees",usage="Leave syntax trees out of the binary n-best file.")
+        boolean noTrees = false;
+
+        @Option(name="-streaming",usage="Supertag in batches while parsing, instead of tagging the whole corpus.")
+        boolean streaming = false;
 
+        @Option(name="-batch-size",usage="Number of sentences supertagged at once in streaming mode.")
+        int batchSize = 256;
+
+        GeneratorConfig(final String[] args) {
+            CmdLineParser parser = new CmdLineParser(this);
+            try {
+                parser.parseArgument(args);
+            } catch (CmdLineException e) {
+                // Simply skip invalid options.
+            }
+        }
+    }
+
+    /**
+     * Backs off to the 1-best parser where n-best parsing failed, evaluates against gold if requested and writes each
+     * n-best list out. Unless the output is Java-serialized, n-best lists are written as soon as they are added, so
+     * they are not kept in memory.
+     */
+    private static class NBestOutput implements Closeable {
+        final ImmutableList<ImmutableList<InputReader.InputWord>> sentences;
+        final ImmutableList<Parse> goldParses;
+        final BaseCcgParser.AStarParser backoffParser;
+        final String outputFileName;
+        final BinaryNBestFile.Writer writer;
+        // Only used for Java-serialized output.
+        final Map<Integer, List<Parse>> allParses = new HashMap<>();
+        final Results oracleF1 = new Results(), baselineF1 = new Results(), backoffBaseline = new Results();
         int numParsed = 0;
         double averageN = .0;
-        Results oracleF1 = new Results(), baselineF1 = new Results(), backoffBaseline = new Results();
-        BaseCcgParser.AStarParser parser = new BaseCcgParser.AStarParser(BaseCcgParser.modelFolder, nBest,
-                              1e-6, 1e-6, 250000, 70);
-        BaseCcgParser.AStarParser backoffParser = new BaseCcgParser.AStarParser(BaseCcgParser.modelFolder, 1,
-                              1e-6, 1e-6, 250000, 70);
-        parser.cacheSupertags(generateDev ? dev : test);
 
-        for (int sentIdx = 0; sentIdx < sentences.size(); sentIdx ++) {
-            System.out.println(sentIdx + ", " + sentences.get(sentIdx).size());
-            List<Parse> parses = parser.parseNBest(sentIdx, sentences.get(sentIdx));
+        NBestOutput(final ImmutableList<ImmutableList<InputReader.InputWord>> sentences,
+                    final ImmutableList<Parse> goldParses, final BaseCcgParser.AStarParser backoffParser,
+                    final String outputFileName, final GeneratorConfig config) throws IOException {
+            this.sentences = sentences;
+            this.goldParses = goldParses;
+            this.backoffParser = backoffParser;
+            this.outputFileName = outputFileName;
+            writer = config.javaSerialized ? null : new BinaryNBestFile.Writer(outputFileName, !config.noTrees);
+        }
+
+        /**
+         * Sentences must be added in order.
+         */
+        void add(final int sentIdx, List<Parse> parses) {
             if (parses == null) {
                 System.err.println("Backing-off:\t" + sentIdx + "\t" + sentences.get(sentIdx).stream()
                         .map(w -> w.word).collect(Collectors.joining(" ")));
                 parses = ImmutableList.of(backoffParser.parse(sentIdx, sentences.get(sentIdx)));
             }
+            try {
+                if (writer != null) {
+                    writer.write(sentIdx, parses);
+                } else {
+                    allParses.put(sentIdx, parses);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            numParsed ++;
             averageN += parses.size();
             // Get results for every parse in the n-best list.
             if (includeGoldInTest) {
@@ -70,20 +110,66 @@ public class ParseFileGenerator {
                         oracleK = k;
                     }
                 }
-                allParses.put(sentIdx, parses);
-                if (allParses.size() % 100 == 0) {
-                    System.out.println("Parsed:\t" + allParses.size() + " sentences ...");
+                if (numParsed % 100 == 0) {
+                    System.out.println("Parsed:\t" + numParsed + " sentences ...");
                     System.out.println("Baseline:\n" + baselineF1);
                     System.out.println("BackoffBaseline:\n" + backoffBaseline);
                     System.out.println("Oracle:\n" + oracleF1);
-                    System.out.println("Average-N:\n" + averageN / allParses.size());
+                    System.out.println("Average-N:\n" + averageN / numParsed);
                 }
                 oracleF1.add(results.get(oracleK));
                 baselineF1.add(results.get(0));
                 final Parse onebest = backoffParser.parse(sentIdx, sentences.get(sentIdx));
-                backoffBaseline.add(CcgEvaluation.evaluate(onebest.dependencies, goldParses.get(sentIdx).dependencies));
+                backoffBaseline.add(CcgEvaluation.evaluate(onebest, goldParses.get(sentIdx)));
             }
-            numParsed ++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+            } else {
+                ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(outputFileName));
+                oos.writeObject(allParses);
+                oos.close();
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        final GeneratorConfig config = new GeneratorConfig(args);
+        System.err.println(generateDev ? "Generating for CCG Dev set." : "Generating for CCG Test set.");
+        if (!generateDev && includeGoldInTest) {
+            System.err.println("Warning: reading gold parses for test!!!");
+        }
+        ParseData dev, test;
+        if (generateDev) {
+            dev = ParseDataLoader.loadFromDevPool().get();
+        } else {
+            test = ParseDataLoader.loadFromTestPool(includeGoldInTest).get();
+        }
+
+        ImmutableList<ImmutableList<InputReader.InputWord>> sentences =
+                generateDev ? dev.getSentenceInputWords() : test.getSentenceInputWords();
+        ImmutableList<Parse> goldParses =
+                generateDev ?  dev.getGoldParses() : test.getGoldParses();
+
+        BaseCcgParser.AStarParser parser = new BaseCcgParser.AStarParser(BaseCcgParser.modelFolder, nBest,
+                              1e-6, 1e-6, 250000, 70);
+        BaseCcgParser.AStarParser backoffParser = new BaseCcgParser.AStarParser(BaseCcgParser.modelFolder, 1,
+                              1e-6, 1e-6, 250000, 70);
+        if (!config.streaming) {
+            parser.cacheSupertags(generateDev ? dev : test);
+        }
+
+        // Parsers are not shared across threads, so each worker gets its own copy of the model.
+        final List<BaseCcgParser.AStarParser> workers = new ArrayList<>();
+        workers.add(parser);
+        for (int i = 1; i < config.numThreads; i++) {
+            BaseCcgParser.AStarParser worker = new BaseCcgParser.AStarParser(BaseCcgParser.modelFolder, nBest,
+                    1e-6, 1e-6, 250000, 70);
+            worker.cacheSupertags(parser);
+            workers.add(worker);
         }
 
         String outputFileName = generateDev ?
@@ -91,19 +177,46 @@ public class ParseFileGenerator {
                     includeGoldInTest ?
                             String.format("parses.tagged.test.gold.%dbest.new.out", nBest) :
                             String.format("parses.tagged.test.nogold.%dbest.new.out", nBest);
+        final NBestOutput output;
+        try {
+            output = new NBestOutput(sentences, goldParses, backoffParser, outputFileName, config);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        System.err.println("Parsing with " + workers.size() + " worker(s).");
+        if (config.streaming) {
+            // Only two batches of supertags are held at a time: the one being parsed and the next one. Each n-best
+            // list is written out as soon as it is parsed.
+            StreamingParser.parseNBest(sentences.iterator(), config.batchSize, 1 /* batches ahead */, workers,
+                    (sentIdx, parses) -> {
+                        System.out.println(sentIdx + ", " + sentences.get(sentIdx).size());
+                        output.add(sentIdx, parses);
+                    });
+        } else {
+            final List<List<Parse>> nbestParses = SentenceScheduler.run(
+                    IntStream.range(0, sentences.size()).boxed().collect(Collectors.toList()),
+                    sentIdx -> sentences.get(sentIdx).size(),
+                    workers,
+                    (worker, sentIdx) -> {
+                        System.out.println(sentIdx + ", " + sentences.get(sentIdx).size());
+                        return worker.parseNBest(sentIdx, sentences.get(sentIdx));
+                    });
+            for (int sentIdx = 0; sentIdx < sentences.size(); sentIdx ++) {
+                output.add(sentIdx, nbestParses.get(sentIdx));
+            }
+        }
         try {
-            ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(outputFileName));
-            oos.writeObject(allParses);
-            oos.close();
+            output.close();
         } catch (Exception e) {
             e.printStackTrace();
         }
 
-        System.out.println("Parsed:\t" + numParsed + " sentences.");
-        System.out.println("baseline accuracy:\n" + baselineF1);
-        System.out.println("BackoffBaseline:\n" + backoffBaseline);
-        System.out.println("oracle accuracy:\n" + oracleF1);
-        System.out.println("Average-N:\n" + averageN / allParses.size());
+        System.out.println("Parsed:\t" + output.numParsed + " sentences.");
+        System.out.println("baseline accuracy:\n" + output.baselineF1);
+        System.out.println("BackoffBaseline:\n" + output.backoffBaseline);
+        System.out.println("oracle accuracy:\n" + output.oracleF1);
+        System.out.println("Average-N:\n" + output.averageN / output.numParsed);
         System.out.println("saved to:\t" + outputFileName);
         
         try {
@@ -0,0 +1,141 @@
+package edu.uw.easysrl.qasrl;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import edu.uw.easysrl.main.InputReader;
+import edu.uw.easysrl.qasrl.util.SentenceScheduler;
+import edu.uw.easysrl.syntax.tagger.Tagger;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * N-best parsing of a stream of sentences, without supertagging the whole corpus up front (see cacheSupertags).
+ * Sentences are read and supertagged in batches on a separate thread, which runs at most a fixed number of batches
+ * ahead of the parsers, so batch N+1 is tagged while batch N is parsed and memory is bounded by the in-flight window.
+ *
+ * If parsing or the consumer fails, the tagging thread is stopped and the exception is rethrown. The tagging thread
+ * is a daemon, so a tagger that ignores the interrupt can not keep the JVM alive.
+ */
+public class StreamingParser {
+    // How often a tagging thread blocked on a full queue checks whether the parsing side has stopped.
+    private static final long kOfferTimeoutMillis = 100;
+
+    /**
+     * Parses one sentence with the given worker and the supertags of the sentence.
+     */
+    interface ParseTask<W, S, T, R> {
+        R parse(W worker, S sentence, T supertags);
+    }
+
+    private static class TaggedBatch<S, T> {
+        final int firstSentenceId;
+        final List<S> sentences;
+        final List<T> supertags;
+
+        TaggedBatch(int firstSentenceId, List<S> sentences, List<T> supertags) {
+            this.firstSentenceId = firstSentenceId;
+            this.sentences = sentences;
+            this.supertags = supertags;
+        }
+    }
+
+    /**
+     * @param sentences: input, consumed on the tagging thread. Sentence ids are assigned in input order from 0.
+     * @param batchSize: number of sentences tagged at once.
+     * @param maxBatchesAhead: number of tagged batches waiting to be parsed.
+     * @param workers: parsers, each confined to one thread. The first one also does the tagging.
+     * @param consumer: called with the sentence id and its n-best parses (null if parsing failed), in input order.
+     */
+    public static void parseNBest(final Iterator<? extends List<InputReader.InputWord>> sentences,
+                                  final int batchSize,
+                                  final int maxBatchesAhead,
+                                  final List<BaseCcgParser.AStarParser> workers,
+                                  final BiConsumer<Integer, List<Parse>> consumer) {
+        final Function<List<List<InputReader.InputWord>>, List<List<List<Tagger.ScoredCategory>>>> tagger =
+                workers.get(0)::tagBatch;
+        run(sentences, batchSize, maxBatchesAhead, tagger, List::size, workers, BaseCcgParser.AStarParser::parseNBest,
+                consumer);
+    }
+
+    /**
+     * Same as parseNBest, for any tagger and parser.
+     * @param tagger: tags a batch of sentences, called on the tagging thread.
+     * @param cost: estimated cost of parsing a sentence, see SentenceScheduler.
+     */
+    static <S, T, W, R> void run(final Iterator<? extends S> sentences,
+                                 final int batchSize,
+                                 final int maxBatchesAhead,
+                                 final Function<List<S>, List<T>> tagger,
+                                 final ToIntFunction<S> cost,
+                                 final List<W> workers,
+                                 final ParseTask<W, S, T, R> task,
+                                 final BiConsumer<Integer, R> consumer) {
+        final TaggedBatch<S, T> endOfInput = new TaggedBatch<>(-1, null, null);
+        final BlockingQueue<TaggedBatch<S, T>> taggedBatches = new ArrayBlockingQueue<>(Math.max(1, maxBatchesAhead));
+        // Set once the parsing side stops taking batches, so the tagging thread never blocks on a full queue forever.
+        final AtomicBoolean stopped = new AtomicBoolean(false);
+        final ExecutorService taggingExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("streaming-tagger-%d")
+                .build());
+        final Future<?> tagging = taggingExecutor.submit(() -> {
+            try {
+                int nextSentenceId = 0;
+                while (sentences.hasNext() && !stopped.get()) {
+                    final List<S> batch = new ArrayList<>(batchSize);
+                    while (sentences.hasNext() && batch.size() < batchSize) {
+                        batch.add(sentences.next());
+                    }
+                    if (!offer(taggedBatches, new TaggedBatch<>(nextSentenceId, batch, tagger.apply(batch)), stopped)) {
+                        break;
+                    }
+                    nextSentenceId += batch.size();
+                }
+            } finally {
+                // Also unblocks the parsing side if tagging failed.
+                offer(taggedBatches, endOfInput, stopped);
+            }
+            return null;
+        });
+        try {
+            for (TaggedBatch<S, T> batch = taggedBatches.take(); batch != endOfInput; batch = taggedBatches.take()) {
+                final TaggedBatch<S, T> current = batch;
+                final List<R> parses = SentenceScheduler.run(
+                        IntStream.range(0, current.sentences.size()).boxed().collect(Collectors.toList()),
+                        i -> cost.applyAsInt(current.sentences.get(i)),
+                        workers,
+                        (worker, i) -> task.parse(worker, current.sentences.get(i), current.supertags.get(i)));
+                for (int i = 0; i < parses.size(); i++) {
+                    consumer.accept(current.firstSentenceId + i, parses.get(i));
+                }
+            }
+            tagging.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            stopped.set(true);
+            taggedBatches.clear();
+            taggingExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for space in the queue until the parsing side stops.
+     * @return false if the batch was dropped because parsing stopped.
+     */
+    private static <E> boolean offer(final BlockingQueue<E> queue, final E element, final AtomicBoolean stopped)
+            throws InterruptedException {
+        while (!stopped.get()) {
+            if (queue.offer(element, kOfferTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
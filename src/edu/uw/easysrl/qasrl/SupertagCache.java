@@ -0,0 +1,167 @@
+package edu.uw.easysrl.qasrl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import edu.uw.easysrl.main.InputReader;
+import edu.uw.easysrl.qasrl.util.CacheFiles;
+import edu.uw.easysrl.qasrl.util.FileFingerprint;
+import edu.uw.easysrl.qasrl.util.GuavaCollectors;
+import edu.uw.easysrl.qasrl.util.PropertyUtil;
+import edu.uw.easysrl.syntax.grammar.Category;
+import edu.uw.easysrl.syntax.tagger.Tagger;
+import edu.uw.easysrl.util.Util;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Supertags of a whole corpus, computed once per (model, corpus, beam) fingerprint and shared by all parser instances
+ * in the JVM. If "supertag_cache_dir" is set in resources.properties, the supertags are also kept in a binary file
+ * there and reused by later runs.
+ *
+ * File format (DataOutputStream): magic, version, fingerprint, category table, then for each sentence the number of
+ * words and for each word the number of tags, followed by (category index, score) pairs. Counts and category indices
+ * are 16 bit; scores are kept as doubles, so parsing from the cache gives exactly the same results.
+ */
+public class SupertagCache {
+    private static final int kMagic = 0x53544147; // "STAG"
+    private static final int kVersion = 1;
+    // Passed to Tagger.make by all parsers.
+    public static final int maxTagsPerWord = 50;
+
+    private static final String cacheDirectory = PropertyUtil.resourcesProperties.getProperty("supertag_cache_dir");
+    private static final Map<String, ImmutableList<List<List<Tagger.ScoredCategory>>>> cache =
+            new ConcurrentHashMap<>();
+    private static final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    private SupertagCache() {
+    }
+
+    /**
+     * Returns the supertags of the sentences, running the tagger only if they were not computed before.
+     */
+    public static ImmutableList<List<List<Tagger.ScoredCategory>>> getSupertags(
+            final String modelFolderPath, final double supertaggerBeam,
+            final List<? extends List<InputReader.InputWord>> sentences, final Tagger tagger) {
+        final String fingerprint = getFingerprint(modelFolderPath, supertaggerBeam, sentences);
+        // Parsers created at the same time wait for a single tagging run.
+        synchronized (locks.computeIfAbsent(fingerprint, f -> new Object())) {
+            ImmutableList<List<List<Tagger.ScoredCategory>>> supertags = cache.get(fingerprint);
+            if (supertags == null) {
+                supertags = readFromDisk(fingerprint, sentences.size());
+            }
+            if (supertags == null) {
+                System.err.println("Batch tagging " + sentences.size() + " sentences ...");
+                supertags = tagger.tagBatch(sentences.parallelStream()
+                        .map(s -> s.stream().collect(Collectors.toList())))
+                        .collect(GuavaCollectors.toImmutableList());
+                writeToDisk(fingerprint, supertags);
+            }
+            cache.put(fingerprint, supertags);
+            return supertags;
+        }
+    }
+
+    /**
+     * Fingerprint of the model files, the beam, the number of tags per word and a hash of all words of the corpus.
+     */
+    static String getFingerprint(final String modelFolderPath, final double supertaggerBeam,
+                                 final List<? extends List<InputReader.InputWord>> sentences) {
+        final Hasher wordsHasher = Hashing.sha256().newHasher().putInt(sentences.size());
+        for (List<InputReader.InputWord> sentence : sentences) {
+            wordsHasher.putInt(sentence.size());
+            for (InputReader.InputWord word : sentence) {
+                wordsHasher.putString(word.word, StandardCharsets.UTF_8).putByte((byte) 0);
+            }
+        }
+        return FileFingerprint.getFingerprint(ImmutableList.of(Util.getFile(modelFolderPath)), supertaggerBeam,
+                maxTagsPerWord, wordsHasher.hash());
+    }
+
+    private static File getFile(final String fingerprint) {
+        return new File(cacheDirectory, "supertags." + fingerprint.substring(0, 16) + ".bin");
+    }
+
+    private static ImmutableList<List<List<Tagger.ScoredCategory>>> readFromDisk(final String fingerprint,
+                                                                                 final int numSentences) {
+        return cacheDirectory == null ? null : read(getFile(fingerprint), fingerprint, numSentences);
+    }
+
+    private static void writeToDisk(final String fingerprint,
+                                    final ImmutableList<List<List<Tagger.ScoredCategory>>> supertags) {
+        if (cacheDirectory != null) {
+            write(getFile(fingerprint), fingerprint, supertags);
+        }
+    }
+
+    /**
+     * @return null if the file is missing, unreadable or was written for another fingerprint or corpus size.
+     */
+    static ImmutableList<List<List<Tagger.ScoredCategory>>> read(final File file, final String fingerprint,
+                                                                 final int numSentences) {
+        return CacheFiles.read(file, "supertag cache", inputStream -> {
+            final DataInputStream in = new DataInputStream(inputStream);
+            if (!CacheFiles.readHeader(in, kMagic, kVersion, fingerprint)) {
+                return null;
+            }
+            final Category[] categories = new Category[in.readChar()];
+            for (int i = 0; i < categories.length; i++) {
+                categories[i] = Category.valueOf(in.readUTF());
+            }
+            final int size = in.readInt();
+            if (size != numSentences) {
+                return null;
+            }
+            final ImmutableList.Builder<List<List<Tagger.ScoredCategory>>> supertags = ImmutableList.builder();
+            for (int i = 0; i < size; i++) {
+                final int numWords = in.readChar();
+                final List<List<Tagger.ScoredCategory>> sentence = new ArrayList<>(numWords);
+                for (int j = 0; j < numWords; j++) {
+                    final int numTags = in.readChar();
+                    final List<Tagger.ScoredCategory> tags = new ArrayList<>(numTags);
+                    for (int k = 0; k < numTags; k++) {
+                        final Category category = categories[in.readChar()];
+                        tags.add(new Tagger.ScoredCategory(category, in.readDouble()));
+                    }
+                    sentence.add(tags);
+                }
+                supertags.add(sentence);
+            }
+            System.err.println("Loaded supertags of " + size + " sentences from " + file);
+            return supertags.build();
+        });
+    }
+
+    static void write(final File file, final String fingerprint,
+                      final ImmutableList<List<List<Tagger.ScoredCategory>>> supertags) {
+        CacheFiles.write(file, "supertag cache", outputStream -> {
+            final Map<Category, Integer> categoryIds = new LinkedHashMap<>();
+            supertags.forEach(sentence -> sentence.forEach(tags -> tags.forEach(
+                    tag -> categoryIds.putIfAbsent(tag.getCategory(), categoryIds.size()))));
+            if (categoryIds.size() > Character.MAX_VALUE) {
+                throw new IOException("Too many categories: " + categoryIds.size());
+            }
+            final DataOutputStream out = new DataOutputStream(outputStream);
+            CacheFiles.writeHeader(out, kMagic, kVersion, fingerprint);
+            out.writeChar(categoryIds.size());
+            for (Category category : categoryIds.keySet()) {
+                out.writeUTF(category.toString());
+            }
+            out.writeInt(supertags.size());
+            for (List<List<Tagger.ScoredCategory>> sentence : supertags) {
+                out.writeChar(sentence.size());
+                for (List<Tagger.ScoredCategory> tags : sentence) {
+                    out.writeChar(tags.size());
+                    for (Tagger.ScoredCategory tag : tags) {
+                        out.writeChar(categoryIds.get(tag.getCategory()));
+                        out.writeDouble(tag.getScore());
+                    }
+                }
+            }
+        });
+    }
+}
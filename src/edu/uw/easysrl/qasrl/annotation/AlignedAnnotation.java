@@ -1,6 +1,7 @@
 package edu.uw.easysrl.qasrl.annotation;
 
 import com.google.common.collect.ImmutableList;
+import edu.uw.easysrl.qasrl.reparsing.ReparsingParameters;
 
 import java.io.IOException;
 import java.util.*;
@@ -65,20 +66,13 @@ public class AlignedAnnotation extends RecordedAnnotation {
         return annotatorToAnswerIds.size();
     }
 
+    /**
+     * Groups records by query. To aggregate records as they arrive, use AnnotationAggregator directly.
+     */
     public static List<AlignedAnnotation> getAlignedAnnotations(List<RecordedAnnotation> annotations) {
-        Map<String, AlignedAnnotation> alignedAnnotations = new HashMap<>();
-        annotations.forEach(annotation -> {
-            String queryKey = "SID=" + annotation.sentenceId
-                    + "_PRED=" + annotation.predicateId
-                    + "_Q=" + annotation.queryPrompt
-                    + "_QID=" + annotation.queryId;
-            if (!alignedAnnotations.containsKey(queryKey)) {
-                alignedAnnotations.put(queryKey, new AlignedAnnotation(annotation));
-            }
-            AlignedAnnotation alignedAnnotation = alignedAnnotations.get(queryKey);
-            alignedAnnotation.addAnnotation(annotation.annotatorId, annotation);
-        });
-        return new ArrayList<>(alignedAnnotations.values());
+        final AnnotationAggregator aggregator = new AnnotationAggregator(new ReparsingParameters());
+        annotations.forEach(aggregator::add);
+        return aggregator.getAlignedAnnotations();
     }
 
     @Override
@@ -24,6 +24,7 @@ public class AnnotatedQuery {
     public String sentenceString, questionString;
     public ImmutableList<String> optionStrings;
     public ImmutableList<ImmutableList<Integer>> responses;
+    private ImmutableList<String> normalizedOptionStrings = null;
 
     public AnnotatedQuery() {
     }
@@ -45,17 +46,31 @@ public class AnnotatedQuery {
         return ret;
     }
 
+    /**
+     * Lower-cased option strings, computed on first use.
+     */
+    public ImmutableList<String> getNormalizedOptionStrings() {
+        if (normalizedOptionStrings == null) {
+            normalizedOptionStrings = optionStrings.stream()
+                    .map(String::toLowerCase)
+                    .collect(GuavaCollectors.toImmutableList());
+        }
+        return normalizedOptionStrings;
+    }
+
     public ImmutableList<ImmutableList<Integer>> getResponses(final ScoredQuery<QAStructureSurfaceForm> query) {
-        final int numOptions = query.getOptions().size();
+        final ImmutableList<String> normalizedQueryOptions = query.getOptions().stream()
+                .map(String::toLowerCase)
+                .collect(GuavaCollectors.toImmutableList());
+        final ImmutableList<String> normalizedOptions = getNormalizedOptionStrings();
         return responses.stream()
                 .map(response -> {
                     final ImmutableSet<String> choseOptions = response.stream()
-                            .map(optionStrings::get)
-                            .map(String::toLowerCase)
+                            .map(normalizedOptions::get)
                             .collect(GuavaCollectors.toImmutableSet());
-                    return IntStream.range(0, numOptions)
+                    return IntStream.range(0, normalizedQueryOptions.size())
                             .boxed()
-                            .filter(op -> choseOptions.contains(query.getOptions().get(op).toLowerCase()))
+                            .filter(op -> choseOptions.contains(normalizedQueryOptions.get(op)))
                             .collect(GuavaCollectors.toImmutableList());
                 })
                 .filter(response -> !response.isEmpty())
@@ -0,0 +1,245 @@
+package edu.uw.easysrl.qasrl.annotation;
+
+import com.google.common.collect.ImmutableList;
+import edu.uw.easysrl.qasrl.query.ScoredQuery;
+import edu.uw.easysrl.qasrl.reparsing.ReparsingParameters;
+import edu.uw.easysrl.qasrl.util.GuavaCollectors;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import java.util.*;
+
+/**
+ * Aggregates single-annotator records into AlignedAnnotation as they arrive, i.e. from a live crowdsourcing job.
+ * Each record updates the answer distribution, trust and agreement of its query in O(number of options).
+ *
+ * Each option of a query is positive once at least positiveConstraintMinAgreement annotators chose it, and negative
+ * while at most negativeConstraintMaxAgreement did, the same thresholds ReparsingHelper uses to extract constraints.
+ * Listeners are notified on the adding thread, with the aggregator locked, after each record and whenever an option
+ * changes state.
+ */
+public class AnnotationAggregator {
+    public enum Agreement {
+        POSITIVE, NEGATIVE, UNDECIDED
+    }
+
+    /**
+     * Identifies the query a record answers.
+     */
+    public static class QueryKey {
+        public final int sentenceId, predicateId, queryId;
+        public final String queryPrompt;
+
+        public QueryKey(final RecordedAnnotation annotation) {
+            sentenceId = annotation.sentenceId;
+            predicateId = annotation.predicateId;
+            queryId = annotation.queryId;
+            queryPrompt = annotation.queryPrompt;
+        }
+
+        public QueryKey(final ScoredQuery<?> query) {
+            sentenceId = query.getSentenceId();
+            predicateId = query.getPredicateId().orElse(-1);
+            queryId = query.getQueryId();
+            queryPrompt = query.getPrompt();
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof QueryKey)) {
+                return false;
+            }
+            final QueryKey key = (QueryKey) other;
+            return sentenceId == key.sentenceId && predicateId == key.predicateId && queryId == key.queryId
+                    && Objects.equals(queryPrompt, key.queryPrompt);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sentenceId, predicateId, queryId, queryPrompt);
+        }
+
+        @Override
+        public String toString() {
+            return "SID=" + sentenceId + "_PRED=" + predicateId + "_Q=" + queryPrompt + "_QID=" + queryId;
+        }
+    }
+
+    public interface AgreementListener {
+        default void onAgreementChanged(QueryKey key, AlignedAnnotation annotation, int optionId, Agreement previous,
+                                        Agreement current) {
+        }
+
+        /**
+         * Called after the agreement changes of the record.
+         */
+        default void onAnnotationAdded(QueryKey key, AlignedAnnotation annotation) {
+        }
+    }
+
+    private static class QueryState {
+        final AlignedAnnotation annotation;
+        final Agreement[] agreements;
+        // Number of annotators giving each distinct answer, for strict agreement.
+        final Map<ImmutableList<Integer>, Integer> answerCounts = new HashMap<>();
+        int maxAgreement = 0, maxStrictAgreement = 0;
+
+        QueryState(final AlignedAnnotation annotation, final Agreement initialAgreement) {
+            this.annotation = annotation;
+            agreements = new Agreement[annotation.answerDist.length];
+            Arrays.fill(agreements, initialAgreement);
+        }
+    }
+
+    private final int positiveMinAgreement, negativeMaxAgreement;
+    // In the order the queries were first seen.
+    private final Map<QueryKey, QueryState> queries = new LinkedHashMap<>();
+    // Number of queries by the maximum number of annotators agreeing on an option, or on the whole answer.
+    private final TIntIntHashMap agreementCounts = new TIntIntHashMap();
+    private final TIntIntHashMap strictAgreementCounts = new TIntIntHashMap();
+    private final List<AgreementListener> listeners = new ArrayList<>();
+
+    public AnnotationAggregator(final ReparsingParameters reparsingParameters) {
+        positiveMinAgreement = reparsingParameters.getPositiveConstraintMinAgreement();
+        negativeMaxAgreement = reparsingParameters.getNegativeConstraintMaxAgreement();
+    }
+
+    public synchronized void addListener(final AgreementListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return false if the annotator already answered this query, in which case the record is ignored.
+     */
+    public synchronized boolean add(final RecordedAnnotation record) {
+        final QueryKey key = new QueryKey(record);
+        QueryState state = queries.get(key);
+        if (state == null) {
+            state = new QueryState(new AlignedAnnotation(record), getAgreement(0));
+            queries.put(key, state);
+            agreementCounts.adjustOrPutValue(0, 1, 1);
+            strictAgreementCounts.adjustOrPutValue(0, 1, 1);
+        }
+        final AlignedAnnotation annotation = state.annotation;
+        if (!annotation.addAnnotation(record.annotatorId, record)) {
+            return false;
+        }
+        int maxAgreement = 0;
+        for (int votes : annotation.answerDist) {
+            maxAgreement = Math.max(maxAgreement, votes);
+        }
+        updateCount(agreementCounts, state.maxAgreement, maxAgreement);
+        state.maxAgreement = maxAgreement;
+
+        final int answerCount = state.answerCounts.merge(record.userOptionIds, 1, Integer::sum);
+        if (answerCount > state.maxStrictAgreement) {
+            updateCount(strictAgreementCounts, state.maxStrictAgreement, answerCount);
+            state.maxStrictAgreement = answerCount;
+        }
+
+        // Only the chosen options got new votes.
+        for (int optionId : record.userOptionIds) {
+            final Agreement previous = state.agreements[optionId];
+            final Agreement current = getAgreement(annotation.answerDist[optionId]);
+            if (current != previous) {
+                state.agreements[optionId] = current;
+                for (AgreementListener listener : listeners) {
+                    listener.onAgreementChanged(key, annotation, optionId, previous, current);
+                }
+            }
+        }
+        for (AgreementListener listener : listeners) {
+            listener.onAnnotationAdded(key, annotation);
+        }
+        return true;
+    }
+
+    /**
+     * Adds the response of an annotator to a generated query, i.e. in an interactive session.
+     * @return false if the annotator already answered this query, in which case the response is ignored.
+     */
+    public boolean add(final ScoredQuery<?> query, final String annotatorId, final ImmutableList<Integer> optionIds) {
+        final RecordedAnnotation record = new RecordedAnnotation();
+        record.iterationId = -1; // unknown
+        record.sentenceId = query.getSentenceId();
+        record.predicateId = query.getPredicateId().orElse(-1);
+        record.argumentNumber = query.getArgumentNumber().orElse(-1);
+        record.predicateCategory = query.getPredicateCategory().orElse(null);
+        record.queryId = query.getQueryId();
+        record.queryPrompt = query.getPrompt();
+        record.optionStrings = query.getOptions();
+        record.userOptionIds = optionIds;
+        record.userOptions = optionIds.stream()
+                .map(query.getOptions()::get)
+                .collect(GuavaCollectors.toImmutableList());
+        record.trust = 1.0;
+        record.annotatorId = annotatorId;
+        return add(record);
+    }
+
+    private Agreement getAgreement(final int votes) {
+        return votes >= positiveMinAgreement ? Agreement.POSITIVE :
+                (votes <= negativeMaxAgreement ? Agreement.NEGATIVE : Agreement.UNDECIDED);
+    }
+
+    private static void updateCount(final TIntIntHashMap counts, final int previous, final int current) {
+        if (previous != current) {
+            counts.adjustValue(previous, -1);
+            counts.adjustOrPutValue(current, 1, 1);
+        }
+    }
+
+    public synchronized Optional<AlignedAnnotation> getAnnotation(final QueryKey key) {
+        final QueryState state = queries.get(key);
+        return state == null ? Optional.empty() : Optional.of(state.annotation);
+    }
+
+    public synchronized Agreement getAgreement(final QueryKey key, final int optionId) {
+        final QueryState state = queries.get(key);
+        return state == null ? getAgreement(0) : state.agreements[optionId];
+    }
+
+    /**
+     * The agreement on the option if it got numMoreVotes more votes. Agreement only moves from negative through
+     * undecided to positive as votes are added, so if this equals the current agreement, no numMoreVotes more records
+     * can change it.
+     */
+    public synchronized Agreement getAgreement(final QueryKey key, final int optionId, final int numMoreVotes) {
+        final QueryState state = queries.get(key);
+        return getAgreement((state == null ? 0 : state.annotation.answerDist[optionId]) + numMoreVotes);
+    }
+
+    /**
+     * @return number of annotators who answered the query.
+     */
+    public synchronized int getNumAnnotators(final QueryKey key) {
+        final QueryState state = queries.get(key);
+        return state == null ? 0 : state.annotation.getNumAnnotated();
+    }
+
+    /**
+     * @return all aggregated annotations, in the order their queries were first seen.
+     */
+    public synchronized List<AlignedAnnotation> getAlignedAnnotations() {
+        final List<AlignedAnnotation> annotations = new ArrayList<>(queries.size());
+        queries.values().forEach(state -> annotations.add(state.annotation));
+        return annotations;
+    }
+
+    /**
+     * @return number of queries where the largest number of annotators choosing the same option is numAnnotators.
+     */
+    public synchronized int getNumQueriesWithAgreement(final int numAnnotators) {
+        return agreementCounts.get(numAnnotators);
+    }
+
+    /**
+     * @return number of queries where the largest number of annotators giving the same answer is numAnnotators.
+     */
+    public synchronized int getNumQueriesWithStrictAgreement(final int numAnnotators) {
+        return strictAgreementCounts.get(numAnnotators);
+    }
+
+    public synchronized int getNumQueries() {
+        return queries.size();
+    }
+}
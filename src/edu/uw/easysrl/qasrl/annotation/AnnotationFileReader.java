@@ -0,0 +1,244 @@
+package edu.uw.easysrl.qasrl.annotation;
+
+import com.google.common.collect.ImmutableList;
+import edu.uw.easysrl.qasrl.util.GuavaCollectors;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Streaming reader of the .tsv annotation files from ccg.qa. Records are tokenized directly from the memory-mapped
+ * file: only the fields that are kept are decoded into Strings, so nothing is allocated per line.
+ *
+ * A record is a block of lines:
+ *   SID=[sentence id]  [sentence]
+ *   ...  ...  ...  [question]  [predicate id]:...
+ *   ...  [response letters]  ...  [option]    (one line per option)
+ *   [empty line]
+ * Each letter stands for one annotator, and the option ids each annotator chose become one response.
+ *
+ * The spliterator can be split at any line: each half reads the records whose SID line starts in its own range, so
+ * stream(path).parallel() parses the file in parallel while keeping the file order.
+ */
+public class AnnotationFileReader {
+    private static final byte[] kRecordStart = "SID=".getBytes(StandardCharsets.US_ASCII);
+    // Ranges smaller than this are not split further.
+    private static final int kMinSplitSize = 1 << 16;
+    // Rough size of a record in bytes, for estimating the number of records.
+    private static final int kAverageRecordSize = 400;
+
+    private AnnotationFileReader() {
+    }
+
+    public static Stream<AnnotatedQuery> stream(final String annotationFilePath) throws IOException {
+        return StreamSupport.stream(spliterator(annotationFilePath, kMinSplitSize), false);
+    }
+
+    /**
+     * @param minSplitSize: ranges smaller than twice this many bytes are not split further.
+     */
+    static Spliterator<AnnotatedQuery> spliterator(final String annotationFilePath, final int minSplitSize)
+            throws IOException {
+        final ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Paths.get(annotationFilePath), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return new RecordSpliterator(buffer, 0, buffer.limit(), minSplitSize);
+    }
+
+    public static Iterator<AnnotatedQuery> iterator(final String annotationFilePath) throws IOException {
+        return stream(annotationFilePath).iterator();
+    }
+
+    private static class RecordSpliterator implements Spliterator<AnnotatedQuery> {
+        private final ByteBuffer buffer;
+        // Next line to read. Only records whose SID line starts before end belong to this spliterator.
+        private int position;
+        private final int end;
+        private final int minSplitSize;
+
+        RecordSpliterator(final ByteBuffer buffer, final int position, final int end, final int minSplitSize) {
+            this.buffer = buffer;
+            this.position = position;
+            this.end = end;
+            this.minSplitSize = minSplitSize;
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super AnnotatedQuery> action) {
+            while (position < end) {
+                final int lineStart = position;
+                final int lineEnd = findLineEnd(lineStart);
+                position = Math.min(lineEnd + 1, buffer.limit());
+                final int start = trimStart(lineStart, lineEnd), stop = trimEnd(start, lineEnd);
+                if (startsWith(start, stop, kRecordStart)) {
+                    action.accept(readRecord(start, stop));
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Reads the rest of the record after its SID line, and moves position past it.
+         */
+        private AnnotatedQuery readRecord(final int sidStart, final int sidEnd) {
+            final AnnotatedQuery query = new AnnotatedQuery();
+            query.sentenceId = parseInt(sidStart + kRecordStart.length, findField(sidStart, sidEnd, 0)[1]);
+
+            final int[] questionLine = nextTrimmedLine();
+            final int[] questionField = findField(questionLine[0], questionLine[1], 3);
+            query.questionString = decode(questionField[0], questionField[1]);
+            query.predicateId = parseInt(findField(questionLine[0], questionLine[1], 4)[0], questionLine[1]);
+
+            final Map<Character, Set<Integer>> responses = new HashMap<>();
+            final List<String> optionStrings = new ArrayList<>();
+            while (position < buffer.limit()) {
+                final int[] line = nextTrimmedLine();
+                if (line[0] == line[1]) {
+                    break;
+                }
+                final int[] responseField = findField(line[0], line[1], 1);
+                final int responseStart = trimStart(responseField[0], responseField[1]);
+                final String responseLetters = decode(responseStart, trimEnd(responseStart, responseField[1]));
+                for (char c : responseLetters.toCharArray()) {
+                    responses.computeIfAbsent(c, k -> new HashSet<>()).add(optionStrings.size());
+                }
+                final int[] optionField = findField(line[0], line[1], 3);
+                optionStrings.add(decode(optionField[0], optionField[1]));
+            }
+            query.optionStrings = ImmutableList.copyOf(optionStrings);
+            query.responses = responses.values().stream()
+                    .map(r -> r.stream().sorted().collect(GuavaCollectors.toImmutableList()))
+                    .collect(GuavaCollectors.toImmutableList());
+            return query;
+        }
+
+        /**
+         * @return start and end of the next line with surrounding whitespace removed.
+         */
+        private int[] nextTrimmedLine() {
+            final int lineStart = position;
+            final int lineEnd = findLineEnd(lineStart);
+            position = Math.min(lineEnd + 1, buffer.limit());
+            final int start = trimStart(lineStart, lineEnd);
+            return new int[] { start, trimEnd(start, lineEnd) };
+        }
+
+        private int findLineEnd(int i) {
+            while (i < buffer.limit() && buffer.get(i) != '\n') {
+                i ++;
+            }
+            return i;
+        }
+
+        // Same as String.trim(): bytes of multi-byte UTF-8 characters are never below ' '.
+        private int trimStart(int start, final int end) {
+            while (start < end && (buffer.get(start) & 0xFF) <= ' ') {
+                start ++;
+            }
+            return start;
+        }
+
+        private int trimEnd(final int start, int end) {
+            while (end > start && (buffer.get(end - 1) & 0xFF) <= ' ') {
+                end --;
+            }
+            return end;
+        }
+
+        private boolean startsWith(final int start, final int end, final byte[] prefix) {
+            if (end - start < prefix.length) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length; i++) {
+                if (buffer.get(start + i) != prefix[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return start and end of the tab-separated field with the given index.
+         * @throws IllegalArgumentException if the line has fewer fields.
+         */
+        private int[] findField(final int lineStart, final int lineEnd, final int fieldIndex) {
+            int start = lineStart;
+            for (int k = 0; k < fieldIndex; k++) {
+                while (start < lineEnd && buffer.get(start) != '\t') {
+                    start ++;
+                }
+                if (start >= lineEnd) {
+                    throw new IllegalArgumentException(String.format("Missing field %d in line: %s", fieldIndex,
+                            decode(lineStart, lineEnd)));
+                }
+                start ++;
+            }
+            int end = start;
+            while (end < lineEnd && buffer.get(end) != '\t') {
+                end ++;
+            }
+            return new int[] { start, end };
+        }
+
+        /**
+         * Parses the integer starting at start, up to the first non-digit.
+         */
+        private int parseInt(int start, final int end) {
+            final boolean negative = start < end && buffer.get(start) == '-';
+            if (negative) {
+                start ++;
+            }
+            int value = 0, numDigits = 0;
+            for (; start < end && buffer.get(start) >= '0' && buffer.get(start) <= '9'; start++, numDigits++) {
+                value = value * 10 + (buffer.get(start) - '0');
+            }
+            if (numDigits == 0) {
+                throw new NumberFormatException("Expected an integer: " + decode(start, end));
+            }
+            return negative ? -value : value;
+        }
+
+        private String decode(final int start, final int end) {
+            final byte[] bytes = new byte[end - start];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(start + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Spliterator<AnnotatedQuery> trySplit() {
+            if (end - position < 2 * minSplitSize) {
+                return null;
+            }
+            // Split at a line boundary; the SID line that starts a record is always at one.
+            final int middle = Math.min(findLineEnd(position + (end - position) / 2) + 1, end);
+            if (middle >= end) {
+                return null;
+            }
+            final RecordSpliterator prefix = new RecordSpliterator(buffer, position, middle, minSplitSize);
+            position = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Math.max(0, end - position) / kAverageRecordSize + 1;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE;
+        }
+    }
+}
@@ -44,6 +44,7 @@ public class AnnotationFileWriter {
         final String outputFilePath = "ccgdev_temp.qa.tsv";
         myHTILParser = new HITLParser(nBest);
         myHTILParser.setQueryPruningParameters(queryPruningParameters);
+        myHTILParser.setNumThreads(Runtime.getRuntime().availableProcessors());
         annotations = CrowdFlowerDataUtils.loadCrowdflowerAnnotation(annotationFiles);
         assert annotations != null;
         try {
@@ -63,6 +64,17 @@ public class AnnotationFileWriter {
         BufferedWriter writer = new BufferedWriter(new FileWriter(new File(outputFilePath)));
         int counter = 0, numWrittenAnnotations = 0;
 
+        // Generate queries for all annotated sentences up front, in parallel.
+        final List<Integer> annotatedSentenceIds = sentenceIds.stream()
+                .filter(sid -> annotations.containsKey(sid) && !annotations.get(sid).isEmpty())
+                .collect(Collectors.toList());
+        final ImmutableList<ImmutableList<ScoredQuery<QAStructureSurfaceForm>>> annotatedQueries =
+                myHTILParser.getNewCoreArgQueriesForSentences(annotatedSentenceIds);
+        final Map<Integer, ImmutableList<ScoredQuery<QAStructureSurfaceForm>>> allQueries = new HashMap<>();
+        for (int i = 0; i < annotatedSentenceIds.size(); i++) {
+            allQueries.put(annotatedSentenceIds.get(i), annotatedQueries.get(i));
+        }
+
         for (int sentenceId : sentenceIds) {
             if (++counter % 100 == 0) {
                 System.out.println(String.format("Processed %d sentences ... ", counter));
@@ -72,16 +84,14 @@ public class AnnotationFileWriter {
             if (annotated == null || annotated.isEmpty()) {
                 continue;
             }
-            List<ScoredQuery<QAStructureSurfaceForm>> queryList = new ArrayList<>();
-            queryList.addAll(myHTILParser.getNewCoreArgQueriesForSentence(sentenceId));
-
-            for (AlignedAnnotation annotation : annotations.get(sentenceId)) {
-                Optional<ScoredQuery<QAStructureSurfaceForm>> queryOpt =
-                        AnnotationUtils.getQueryForAlignedAnnotation(annotation, queryList);
-                if (!queryOpt.isPresent()) {
+            final ImmutableList<Optional<ScoredQuery<QAStructureSurfaceForm>>> alignedQueries =
+                    new QueryAlignmentIndex(allQueries.get(sentenceId)).alignAnnotations(annotated);
+            for (int i = 0; i < annotated.size(); i++) {
+                if (!alignedQueries.get(i).isPresent()) {
                     continue;
                 }
-                final ScoredQuery<QAStructureSurfaceForm> query = queryOpt.get();
+                final AlignedAnnotation annotation = annotated.get(i);
+                final ScoredQuery<QAStructureSurfaceForm> query = alignedQueries.get(i).get();
                 ImmutableList<ImmutableList<Integer>> responses = AnnotationUtils.getAllUserResponses(query, annotation);
                 if (responses.size() != 5) {
                     continue;
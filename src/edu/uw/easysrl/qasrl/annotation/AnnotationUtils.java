@@ -138,24 +138,13 @@ public class AnnotationUtils {
         return optionIds.stream().distinct().sorted().collect(GuavaCollectors.toImmutableList());
     }
 
+    /**
+     * To align many annotations of the same sentence, build one QueryAlignmentIndex instead.
+     */
     public static Optional<ScoredQuery<QAStructureSurfaceForm>> getQueryForAlignedAnnotation(
             final AlignedAnnotation annotation,
             final List<ScoredQuery<QAStructureSurfaceForm>> queries) {
-        ScoredQuery<QAStructureSurfaceForm> bestAligned = null;
-        int maxNumOverlappingOptions = 2;
-        for (ScoredQuery<QAStructureSurfaceForm> query : queries) {
-            if (query.getPredicateId().getAsInt() == annotation.predicateId
-                    && query.getPrompt().equals(annotation.queryPrompt)) {
-                int numOverlappingOptions = (int) annotation.answerOptions.stream()
-                        .filter(op -> query.getOptions().contains(op))
-                        .count();
-                if (numOverlappingOptions > maxNumOverlappingOptions) {
-                    bestAligned = query;
-                    maxNumOverlappingOptions = numOverlappingOptions;
-                }
-            }
-        }
-        return bestAligned != null ? Optional.of(bestAligned) : Optional.empty();
+        return new QueryAlignmentIndex(queries).align(annotation);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,268 @@
+package edu.uw.easysrl.qasrl.annotation;
+
+import com.google.common.collect.ImmutableList;
+import edu.uw.easysrl.qasrl.util.CacheFiles;
+import edu.uw.easysrl.qasrl.util.FileFingerprint;
+import edu.uw.easysrl.qasrl.util.GuavaCollectors;
+import edu.uw.easysrl.syntax.grammar.Category;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Columnar binary store of the annotation records in a CrowdFlower CSV export, so they can be loaded without parsing
+ * the CSV, splitting query keys or calling Category.valueOf for every record.
+ *
+ * Layout (DataOutputStream): magic, version, fingerprint of the CSV file, number of records, string table (worker ids,
+ * sentences, prompts, options, ...), category table, then one column per field: sentence ids, predicate ids, argument
+ * numbers, query ids, category ids, string ids of sentence, predicate, prompt, worker and comment, option list offsets
+ * and option string ids, chosen options as one bitmask per record, and trust as floats.
+ *
+ * The store is written next to the CSV file. Chosen options that are not among the options of the query are dropped.
+ *
+ * Usage (import only): CrowdFlowerAnnotationStore [csv file] ...
+ */
+public class CrowdFlowerAnnotationStore {
+    private static final int kMagic = 0x4346414E; // "CFAN"
+    private static final int kVersion = 1;
+    private static final int kMaxNumOptions = Long.SIZE;
+
+    private CrowdFlowerAnnotationStore() {
+    }
+
+    public static String getStorePath(final String csvFilePath) {
+        return csvFilePath + ".bin";
+    }
+
+    /**
+     * Reads the store of the CSV export if it is up to date, otherwise reads the CSV file and imports it first.
+     */
+    public static ImmutableList<AlignedAnnotation> readAggregatedAnnotation(final String csvFilePath)
+            throws IOException {
+        final String fingerprint = getFingerprint(csvFilePath);
+        List<RecordedAnnotation> annotations = CacheFiles.read(new File(getStorePath(csvFilePath)),
+                "annotation store", in -> readRecords(new DataInputStream(in), fingerprint));
+        if (annotations == null) {
+            annotations = importCsv(csvFilePath);
+        }
+        System.out.println(String.format("Read %d annotation records from %s.", annotations.size(), csvFilePath));
+        return CrowdFlowerDataReader.aggregateAnnotations(annotations);
+    }
+
+    /**
+     * Converts the CSV export into a store. If the store can't be written, i.e. in a read-only directory, the error is
+     * logged and the records are still returned.
+     * @return the annotation records.
+     * @throws IOException if the CSV file can't be read.
+     */
+    public static List<RecordedAnnotation> importCsv(final String csvFilePath) throws IOException {
+        final List<RecordedAnnotation> annotations = CrowdFlowerDataReader.readAnnotationRecordsFromFile(csvFilePath);
+        final File storeFile = new File(getStorePath(csvFilePath));
+        try {
+            writeRecords(annotations, storeFile, getFingerprint(csvFilePath));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Unable to write annotation store: " + storeFile + " (" + e + ")");
+        }
+        return annotations;
+    }
+
+    static String getFingerprint(final String csvFilePath) {
+        return FileFingerprint.getFingerprint(ImmutableList.of(new File(csvFilePath)), kVersion);
+    }
+
+    private static void writeRecords(final List<RecordedAnnotation> annotations, final File file,
+                                     final String fingerprint) throws IOException {
+        final int numRecords = annotations.size();
+        final StringTable strings = new StringTable();
+        final StringTable categories = new StringTable();
+        final int[] sentenceIds = new int[numRecords], predicateIds = new int[numRecords],
+                argumentNumbers = new int[numRecords], queryIds = new int[numRecords],
+                categoryIds = new int[numRecords], sentenceStringIds = new int[numRecords],
+                predicateStringIds = new int[numRecords], promptIds = new int[numRecords],
+                workerIds = new int[numRecords], commentIds = new int[numRecords],
+                optionOffsets = new int[numRecords + 1];
+        final long[] choices = new long[numRecords];
+        final float[] trust = new float[numRecords];
+        final List<Integer> optionIds = new ArrayList<>();
+        for (int i = 0; i < numRecords; i++) {
+            final RecordedAnnotation annotation = annotations.get(i);
+            if (annotation.optionStrings.size() > kMaxNumOptions) {
+                throw new IOException(String.format("Query %d has more than %d options.", annotation.queryId,
+                        kMaxNumOptions));
+            }
+            sentenceIds[i] = annotation.sentenceId;
+            predicateIds[i] = annotation.predicateId;
+            argumentNumbers[i] = annotation.argumentNumber;
+            queryIds[i] = annotation.queryId;
+            categoryIds[i] = categories.getId(annotation.predicateCategory == null ? null :
+                    annotation.predicateCategory.toString());
+            sentenceStringIds[i] = strings.getId(annotation.sentenceString);
+            predicateStringIds[i] = strings.getId(annotation.predicateString);
+            promptIds[i] = strings.getId(annotation.queryPrompt);
+            workerIds[i] = strings.getId(annotation.annotatorId);
+            commentIds[i] = strings.getId(annotation.comment);
+            annotation.optionStrings.forEach(option -> optionIds.add(strings.getId(option)));
+            optionOffsets[i + 1] = optionIds.size();
+            for (int optionId : annotation.userOptionIds) {
+                choices[i] |= 1L << optionId;
+            }
+            trust[i] = (float) annotation.trust;
+        }
+
+        CacheFiles.writeAtomically(file, stream -> {
+            final DataOutputStream out = new DataOutputStream(stream);
+            CacheFiles.writeHeader(out, kMagic, kVersion, fingerprint);
+            out.writeInt(numRecords);
+            strings.write(out);
+            categories.write(out);
+            for (int[] column : new int[][] { sentenceIds, predicateIds, argumentNumbers, queryIds, categoryIds,
+                    sentenceStringIds, predicateStringIds, promptIds, workerIds, commentIds, optionOffsets }) {
+                for (int value : column) {
+                    out.writeInt(value);
+                }
+            }
+            for (int optionId : optionIds) {
+                out.writeInt(optionId);
+            }
+            for (long choice : choices) {
+                out.writeLong(choice);
+            }
+            for (float value : trust) {
+                out.writeFloat(value);
+            }
+            out.flush();
+        });
+        System.out.println(String.format("Wrote %d annotation records to %s.", numRecords, file));
+    }
+
+    /**
+     * @return null if the store was not made from the current CSV file.
+     */
+    static List<RecordedAnnotation> readRecords(final File file, final String fingerprint)
+            throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            return readRecords(in, fingerprint);
+        }
+    }
+
+    private static List<RecordedAnnotation> readRecords(final DataInputStream in, final String fingerprint)
+            throws IOException {
+        if (!CacheFiles.readHeader(in, kMagic, kVersion, fingerprint)) {
+            return null;
+        }
+        final int numRecords = in.readInt();
+        final String[] strings = StringTable.read(in);
+        final Category[] categories = Arrays.stream(StringTable.read(in))
+                .map(category -> category == null ? null : Category.valueOf(category))
+                .toArray(Category[]::new);
+        final int[] sentenceIds = readInts(in, numRecords), predicateIds = readInts(in, numRecords),
+                argumentNumbers = readInts(in, numRecords), queryIds = readInts(in, numRecords),
+                categoryIds = readInts(in, numRecords), sentenceStringIds = readInts(in, numRecords),
+                predicateStringIds = readInts(in, numRecords), promptIds = readInts(in, numRecords),
+                workerIds = readInts(in, numRecords), commentIds = readInts(in, numRecords),
+                optionOffsets = readInts(in, numRecords + 1),
+                optionIds = readInts(in, optionOffsets[numRecords]);
+        final long[] choices = new long[numRecords];
+        for (int i = 0; i < numRecords; i++) {
+            choices[i] = in.readLong();
+        }
+        final List<RecordedAnnotation> annotations = new ArrayList<>(numRecords);
+        for (int i = 0; i < numRecords; i++) {
+            final RecordedAnnotation annotation = new RecordedAnnotation();
+            annotation.iterationId = -1; // unknown
+            annotation.sentenceId = sentenceIds[i];
+            annotation.predicateId = predicateIds[i];
+            annotation.argumentNumber = argumentNumbers[i];
+            annotation.queryId = queryIds[i];
+            annotation.predicateCategory = categories[categoryIds[i]];
+            annotation.sentenceString = strings[sentenceStringIds[i]];
+            annotation.predicateString = strings[predicateStringIds[i]];
+            annotation.queryPrompt = strings[promptIds[i]];
+            annotation.annotatorId = strings[workerIds[i]];
+            annotation.comment = strings[commentIds[i]];
+            final List<String> options = new ArrayList<>(optionOffsets[i + 1] - optionOffsets[i]);
+            for (int k = optionOffsets[i]; k < optionOffsets[i + 1]; k++) {
+                options.add(strings[optionIds[k]]);
+            }
+            annotation.optionStrings = options;
+            final long choice = choices[i];
+            annotation.userOptionIds = IntStream.range(0, options.size())
+                    .filter(k -> (choice & (1L << k)) != 0)
+                    .boxed()
+                    .collect(GuavaCollectors.toImmutableList());
+            annotation.userOptions = annotation.userOptionIds.stream()
+                    .map(options::get)
+                    .collect(GuavaCollectors.toImmutableList());
+            annotation.goldOptionIds = null; /* no gold */
+            annotations.add(annotation);
+        }
+        for (RecordedAnnotation annotation : annotations) {
+            annotation.trust = in.readFloat();
+        }
+        return annotations;
+    }
+
+    private static int[] readInts(final DataInputStream in, final int size) throws IOException {
+        final int[] values = new int[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    /**
+     * Interned strings. Id 0 is reserved for null.
+     */
+    private static class StringTable {
+        private final TObjectIntHashMap<String> ids = new TObjectIntHashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        StringTable() {
+            strings.add(null);
+        }
+
+        int getId(final String string) {
+            if (string == null) {
+                return 0;
+            }
+            if (!ids.containsKey(string)) {
+                ids.put(string, strings.size());
+                strings.add(string);
+            }
+            return ids.get(string);
+        }
+
+        // Length-prefixed UTF-8, since sentences and comments may exceed the 64K limit of writeUTF.
+        void write(final DataOutputStream out) throws IOException {
+            out.writeInt(strings.size());
+            for (int i = 1; i < strings.size(); i++) {
+                final byte[] bytes = strings.get(i).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        static String[] read(final DataInputStream in) throws IOException {
+            final String[] strings = new String[in.readInt()];
+            for (int i = 1; i < strings.length; i++) {
+                final byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return strings;
+        }
+    }
+
+    public static void main(String[] args) {
+        for (String csvFilePath : args) {
+            try {
+                importCsv(csvFilePath);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -20,6 +20,15 @@ import java.util.stream.IntStream;
  */
 public class CrowdFlowerDataReader {
     public static ImmutableList<AlignedAnnotation> readAggregatedAnnotationFromFile(String filePath) throws IOException {
+        List<RecordedAnnotation> annotations = readAnnotationRecordsFromFile(filePath);
+        System.out.println(String.format("Read %d annotation records from %s.", annotations.size(), filePath));
+        return aggregateAnnotations(annotations);
+    }
+
+    /**
+     * Reads the single-annotator records of a CrowdFlower CSV export, skipping test questions and PP questions.
+     */
+    static List<RecordedAnnotation> readAnnotationRecordsFromFile(String filePath) throws IOException {
         final Iterable<CSVRecord> records = CSVFormat.DEFAULT.withHeader().parse(new FileReader(filePath));
         List<RecordedAnnotation> annotations = new ArrayList<>();
         for (CSVRecord record : records) {
@@ -82,8 +91,13 @@ public class CrowdFlowerDataReader {
             annotation.trust = Double.parseDouble(record.get("_trust"));
             annotations.add(annotation);
         }
-        System.out.println(String.format("Read %d annotation records from %s.", annotations.size(), filePath));
+        return annotations;
+    }
 
+    /**
+     * Groups the records by query into AlignedAnnotation, and prints the annotator agreement.
+     */
+    static ImmutableList<AlignedAnnotation> aggregateAnnotations(List<RecordedAnnotation> annotations) {
         // Align and aggregated annotations.
         List<AlignedAnnotation> alignedAnnotations = AlignedAnnotation.getAlignedAnnotations(annotations);
         System.out.println("Getting " + alignedAnnotations.size() + " aligned annotations.");
@@ -72,7 +72,7 @@ public class CrowdFlowerDataUtils {
         List<AlignedAnnotation> annotationList = new ArrayList<>();
         try {
             for (String fileName : fileNames) {
-                annotationList.addAll(CrowdFlowerDataReader.readAggregatedAnnotationFromFile(fileName));
+                annotationList.addAll(CrowdFlowerAnnotationStore.readAggregatedAnnotation(fileName));
             }
         } catch (IOException e) {
             e.printStackTrace();
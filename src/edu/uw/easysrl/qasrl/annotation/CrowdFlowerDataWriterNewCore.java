@@ -73,13 +73,17 @@ public class CrowdFlowerDataWriterNewCore {
         }
         writer.close();
         hitlParser.setQueryPruningParameters(queryPruningParameters);
+        hitlParser.setNumThreads(Runtime.getRuntime().availableProcessors());
         //hitlParser.setReparsingParameters(reparsingParameters);
+        final ImmutableList<ImmutableList<ScoredQuery<QAStructureSurfaceForm>>> allQueries =
+                hitlParser.getNewCoreArgQueriesForSentences(sentenceIds);
         CSVPrinter csvPrinter = new CSVPrinter(new BufferedWriter(new FileWriter(
                 String.format("%s_%03d.csv", csvOutputFilePrefix, fileCounter.getAndAdd(1)))),
                 CSVFormat.EXCEL.withRecordSeparator("\n"));
         csvPrinter.printRecord((Object[]) CrowdFlowerDataUtils.csvHeaderNew);
-        for (int sid : sentenceIds) {
-            ImmutableList<ScoredQuery<QAStructureSurfaceForm>> queries = hitlParser.getNewCoreArgQueriesForSentence(sid);
+        for (int i = 0; i < sentenceIds.size(); i++) {
+            final int sid = sentenceIds.get(i);
+            ImmutableList<ScoredQuery<QAStructureSurfaceForm>> queries = allQueries.get(i);
             history.addSentence(sid);
             for (ScoredQuery<QAStructureSurfaceForm> query : queries) {
                 final ImmutableList<String> sentence = hitlParser.getSentence(sid);
@@ -0,0 +1,126 @@
+package edu.uw.easysrl.qasrl.annotation;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import edu.uw.easysrl.qasrl.qg.surfaceform.QAStructureSurfaceForm;
+import edu.uw.easysrl.qasrl.query.ScoredQuery;
+import edu.uw.easysrl.qasrl.util.GuavaCollectors;
+
+import java.util.*;
+
+/**
+ * Aligns annotation records to the queries generated for one sentence. Built once per sentence: queries are indexed by
+ * (predicate id, prompt), and the options of each query by their string, so aligning an annotation costs one lookup
+ * per annotated option instead of a scan over all queries and options.
+ *
+ * An annotation is aligned to the query with the same predicate and prompt that shares the most options with it, and
+ * more than two; ties go to the earlier query.
+ */
+public class QueryAlignmentIndex {
+    private static final int minNumOverlappingOptions = 3;
+
+    private static class IndexedQuery {
+        final ScoredQuery<QAStructureSurfaceForm> query;
+        final Set<String> options;
+        // Lower-cased option string to option ids, for matching responses.
+        final ImmutableListMultimap<String, Integer> normalizedOptionIds;
+
+        IndexedQuery(final ScoredQuery<QAStructureSurfaceForm> query) {
+            this.query = query;
+            final List<String> optionStrings = query.getOptions();
+            options = new HashSet<>(optionStrings);
+            final ImmutableListMultimap.Builder<String, Integer> builder = ImmutableListMultimap.builder();
+            for (int i = 0; i < optionStrings.size(); i++) {
+                builder.put(optionStrings.get(i).toLowerCase(), i);
+            }
+            normalizedOptionIds = builder.build();
+        }
+    }
+
+    private final Map<String, List<IndexedQuery>> queriesByPrompt = new HashMap<>();
+    private final Map<ScoredQuery<QAStructureSurfaceForm>, IndexedQuery> indexedQueries = new IdentityHashMap<>();
+
+    public QueryAlignmentIndex(final List<ScoredQuery<QAStructureSurfaceForm>> queries) {
+        for (ScoredQuery<QAStructureSurfaceForm> query : queries) {
+            if (!query.getPredicateId().isPresent()) {
+                continue;
+            }
+            final IndexedQuery indexed = new IndexedQuery(query);
+            queriesByPrompt.computeIfAbsent(getKey(query.getPredicateId().getAsInt(), query.getPrompt()),
+                    k -> new ArrayList<>()).add(indexed);
+            indexedQueries.put(query, indexed);
+        }
+    }
+
+    private static String getKey(final int predicateId, final String prompt) {
+        return predicateId + "\t" + prompt;
+    }
+
+    public Optional<ScoredQuery<QAStructureSurfaceForm>> align(final int predicateId, final String prompt,
+                                                               final Collection<String> options) {
+        final List<IndexedQuery> candidates = queriesByPrompt.get(getKey(predicateId, prompt));
+        if (candidates == null) {
+            return Optional.empty();
+        }
+        ScoredQuery<QAStructureSurfaceForm> bestAligned = null;
+        int maxNumOverlappingOptions = minNumOverlappingOptions - 1;
+        for (IndexedQuery candidate : candidates) {
+            int numOverlappingOptions = 0;
+            for (String option : options) {
+                if (candidate.options.contains(option)) {
+                    numOverlappingOptions ++;
+                }
+            }
+            if (numOverlappingOptions > maxNumOverlappingOptions) {
+                bestAligned = candidate.query;
+                maxNumOverlappingOptions = numOverlappingOptions;
+            }
+        }
+        return Optional.ofNullable(bestAligned);
+    }
+
+    public Optional<ScoredQuery<QAStructureSurfaceForm>> align(final AnnotatedQuery annotation) {
+        return align(annotation.predicateId, annotation.questionString, annotation.optionStrings);
+    }
+
+    public Optional<ScoredQuery<QAStructureSurfaceForm>> align(final AlignedAnnotation annotation) {
+        return align(annotation.predicateId, annotation.queryPrompt, annotation.answerOptions);
+    }
+
+    /**
+     * Batch version of align(AnnotatedQuery): the result has one entry per annotation, in the same order.
+     */
+    public ImmutableList<Optional<ScoredQuery<QAStructureSurfaceForm>>> alignAnnotatedQueries(
+            final List<AnnotatedQuery> annotations) {
+        return annotations.stream().map(this::align).collect(GuavaCollectors.toImmutableList());
+    }
+
+    /**
+     * Batch version of align(AlignedAnnotation): the result has one entry per annotation, in the same order.
+     */
+    public ImmutableList<Optional<ScoredQuery<QAStructureSurfaceForm>>> alignAnnotations(
+            final List<AlignedAnnotation> annotations) {
+        return annotations.stream().map(this::align).collect(GuavaCollectors.toImmutableList());
+    }
+
+    /**
+     * Same as AnnotatedQuery.getResponses, using the option index of the query.
+     * @param query: one of the indexed queries.
+     */
+    public ImmutableList<ImmutableList<Integer>> getResponses(final AnnotatedQuery annotation,
+                                                              final ScoredQuery<QAStructureSurfaceForm> query) {
+        final IndexedQuery indexed = indexedQueries.get(query);
+        if (indexed == null) {
+            return annotation.getResponses(query);
+        }
+        final ImmutableList<String> normalizedOptions = annotation.getNormalizedOptionStrings();
+        return annotation.responses.stream()
+                .map(response -> response.stream()
+                        .flatMap(option -> indexed.normalizedOptionIds.get(normalizedOptions.get(option)).stream())
+                        .distinct()
+                        .sorted()
+                        .collect(GuavaCollectors.toImmutableList()))
+                .filter(response -> !response.isEmpty())
+                .collect(GuavaCollectors.toImmutableList());
+    }
+}
@@ -7,6 +7,7 @@ import edu.uw.easysrl.main.InputReader;
 import edu.uw.easysrl.qasrl.BaseCcgParser;
 import edu.uw.easysrl.qasrl.Parse;
 import edu.uw.easysrl.qasrl.ParseData;
+import edu.uw.easysrl.qasrl.util.PropertyUtil;
 import edu.uw.easysrl.syntax.evaluation.CCGBankEvaluation;
 import edu.uw.easysrl.syntax.grammar.Category;
 import edu.uw.easysrl.syntax.tagger.POSTagger;
@@ -24,6 +25,15 @@ import static edu.uw.easysrl.qasrl.util.GuavaCollectors.toImmutableList;
  * Created by luheng on 5/24/16.
  */
 public class ParseDataLoader {
+    private static final String ccgBankPath = PropertyUtil.corporaProperties.getProperty("ccgbank");
+    private static final String posTaggerPath = BaseCcgParser.modelFolder + "/posTagger";
+
+    /**
+     * Files the tagged data of a corpus depends on, for validating its snapshot.
+     */
+    private static List<File> getSourceFiles(final String corpusPath) {
+        return ImmutableList.of(Util.getFile(corpusPath), Util.getFile(posTaggerPath));
+    }
 
     private static ParseData makeParseData(List<List<InputReader.InputWord>> sentenceInputWords,
                                            List<Parse> goldParses) {
@@ -45,7 +55,12 @@ public class ParseDataLoader {
         if (includeGold) {
             System.err.println("### Waring ### Reading test data with gold parses.");
         }
-        POSTagger postagger = POSTagger.getStanfordTagger(Util.getFile(BaseCcgParser.modelFolder + "/posTagger"));
+        return ParseDataSnapshot.load(includeGold ? "test.gold" : "test", getSourceFiles(ccgBankPath),
+                () -> readTestPool(includeGold));
+    }
+
+    private static Optional<ParseData> readTestPool(boolean includeGold) {
+        POSTagger postagger = POSTagger.getStanfordTagger(Util.getFile(posTaggerPath));
         List<List<InputReader.InputWord>> sentenceInputWords = new ArrayList<>();
         List<Parse> goldParses = new ArrayList<>();
         Iterator<ParallelCorpusReader.Sentence> sentenceIterator;
@@ -80,7 +95,16 @@ public class ParseDataLoader {
         if(readDev && devData != null) {
             return devData;
         }
-        POSTagger postagger = POSTagger.getStanfordTagger(Util.getFile(BaseCcgParser.modelFolder + "/posTagger"));
+        Optional<ParseData> data = ParseDataSnapshot.load(readDev ? "dev" : "train", getSourceFiles(ccgBankPath),
+                () -> readFromPropBank(readDev));
+        if(readDev) {
+            devData = data;
+        }
+        return data;
+    }
+
+    private static Optional<ParseData> readFromPropBank(final boolean readDev) {
+        POSTagger postagger = POSTagger.getStanfordTagger(Util.getFile(posTaggerPath));
         List<List<InputReader.InputWord>> sentenceInputWords = new ArrayList<>();
         List<Parse> goldParses = new ArrayList<>();
         Iterator<ParallelCorpusReader.Sentence> sentenceIterator;
@@ -88,8 +112,7 @@ public class ParseDataLoader {
             sentenceIterator = ParallelCorpusReader.READER.readCcgCorpus(readDev);
         } catch (IOException e) {
             System.out.println(String.format("Failed to read %d sentences.", sentenceInputWords.size()));
-            devData = Optional.empty();
-            return devData;
+            return Optional.empty();
         }
         while (sentenceIterator.hasNext()) {
             ParallelCorpusReader.Sentence sentence = sentenceIterator.next();
@@ -100,15 +123,16 @@ public class ParseDataLoader {
             goldParses.add(new Parse(sentence.getCcgbankParse(), sentence.getLexicalCategories(), goldDependencies));
         }
         System.out.println(String.format("Read %d sentences.", sentenceInputWords.size()));
-        Optional<ParseData> data = Optional.of(makeParseData(sentenceInputWords, goldParses));
-        if(readDev) {
-            devData = data;
-        }
-        return data;
+        return Optional.of(makeParseData(sentenceInputWords, goldParses));
     }
 
     public static Optional<ParseData> loadFromBioinferDev() {
-        POSTagger postagger = POSTagger.getStanfordTagger(Util.getFile(BaseCcgParser.modelFolder + "/posTagger"));
+        return ParseDataSnapshot.load("bioinfer.dev", getSourceFiles(BioinferCCGCorpus.BioinferDevFile),
+                ParseDataLoader::readBioinferDev);
+    }
+
+    private static Optional<ParseData> readBioinferDev() {
+        POSTagger postagger = POSTagger.getStanfordTagger(Util.getFile(posTaggerPath));
         List<List<InputReader.InputWord>> sentenceInputWords = new ArrayList<>();
         List<Parse> goldParses = new ArrayList<>();
         try {
@@ -0,0 +1,113 @@
+package edu.uw.easysrl.qasrl.corpora;
+
+import com.google.common.collect.ImmutableList;
+import edu.uw.easysrl.main.InputReader;
+import edu.uw.easysrl.qasrl.BinaryNBestFile;
+import edu.uw.easysrl.qasrl.Parse;
+import edu.uw.easysrl.qasrl.ParseData;
+import edu.uw.easysrl.qasrl.util.CacheFiles;
+import edu.uw.easysrl.qasrl.util.FileFingerprint;
+import edu.uw.easysrl.qasrl.util.PropertyUtil;
+
+import java.io.*;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Binary snapshots of POS-tagged corpus partitions, so ParseDataLoader only runs the POS tagger once per partition.
+ * Snapshots are kept in "corpus_cache_dir" from resources.properties, keyed on a fingerprint of the source files
+ * (including the POS tagger model); if the property is not set, nothing is cached.
+ *
+ * File format (DataOutputStream): magic, version, fingerprint, number of sentences, then for each sentence the number
+ * of words and the word, POS tag and NER tag of each word, and finally the gold parses, encoded by
+ * BinaryNBestFile.writeParses. Syntax trees of the gold parses are not kept.
+ */
+class ParseDataSnapshot {
+    private static final int kMagic = 0x50445441; // "PDTA"
+    private static final int kVersion = 2;
+
+    private static final String cacheDirectory = PropertyUtil.resourcesProperties.getProperty("corpus_cache_dir");
+
+    private ParseDataSnapshot() {
+    }
+
+    /**
+     * Reads the snapshot of the partition if it is up to date, otherwise calls the loader and saves what it returns.
+     * @param partition: name of the partition, i.e. "dev" or "bioinfer.dev".
+     * @param sourceFiles: everything the loaded data is derived from.
+     */
+    static Optional<ParseData> load(final String partition, final Collection<File> sourceFiles,
+                                    final Supplier<Optional<ParseData>> loader) {
+        final String fingerprint = FileFingerprint.getFingerprint(sourceFiles, kVersion, partition);
+        final File file = cacheDirectory == null ? null : getFile(partition, fingerprint);
+        final ParseData snapshot = file == null ? null : read(file, fingerprint);
+        if (snapshot != null) {
+            return Optional.of(snapshot);
+        }
+        final Optional<ParseData> data = loader.get();
+        if (file != null) {
+            data.ifPresent(d -> write(file, fingerprint, d));
+        }
+        return data;
+    }
+
+    private static File getFile(final String partition, final String fingerprint) {
+        return new File(cacheDirectory, "parsedata." + partition + "." + fingerprint.substring(0, 16) + ".bin");
+    }
+
+    /**
+     * @return null if the file is missing, unreadable or was written for another fingerprint.
+     */
+    static ParseData read(final File file, final String fingerprint) {
+        return CacheFiles.read(file, "corpus snapshot", stream -> {
+            final DataInputStream in = new DataInputStream(stream);
+            if (!CacheFiles.readHeader(in, kMagic, kVersion, fingerprint)) {
+                return null;
+            }
+            final int numSentences = in.readInt();
+            final ImmutableList.Builder<ImmutableList<InputReader.InputWord>> sentences = ImmutableList.builder();
+            for (int i = 0; i < numSentences; i++) {
+                final int numWords = in.readInt();
+                final ImmutableList.Builder<InputReader.InputWord> words = ImmutableList.builder();
+                for (int j = 0; j < numWords; j++) {
+                    words.add(new InputReader.InputWord(readString(in), readString(in), readString(in)));
+                }
+                sentences.add(words.build());
+            }
+            final List<Parse> goldParses = BinaryNBestFile.readParses(in);
+            System.out.println(String.format("Read %d sentences from %s.", numSentences, file));
+            return new ParseData(sentences.build(), ImmutableList.copyOf(goldParses));
+        });
+    }
+
+    static void write(final File file, final String fingerprint, final ParseData data) {
+        CacheFiles.write(file, "corpus snapshot", stream -> {
+            final DataOutputStream out = new DataOutputStream(stream);
+            CacheFiles.writeHeader(out, kMagic, kVersion, fingerprint);
+            out.writeInt(data.getSentenceInputWords().size());
+            for (List<InputReader.InputWord> sentence : data.getSentenceInputWords()) {
+                out.writeInt(sentence.size());
+                for (InputReader.InputWord word : sentence) {
+                    writeString(out, word.word);
+                    writeString(out, word.pos);
+                    writeString(out, word.ner);
+                }
+            }
+            BinaryNBestFile.writeParses(out, data.getGoldParses());
+            out.flush();
+        });
+    }
+
+    private static void writeString(final DataOutput out, final String string) throws IOException {
+        out.writeBoolean(string != null);
+        if (string != null) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static String readString(final DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -1,6 +1,7 @@
 package edu.uw.easysrl.qasrl.evaluation;
 
 import edu.uw.easysrl.dependencies.ResolvedDependency;
+import edu.uw.easysrl.qasrl.PackedDependencies;
 import edu.uw.easysrl.qasrl.Parse;
 import edu.uw.easysrl.syntax.evaluation.Results;
 import edu.uw.easysrl.syntax.grammar.Category;
@@ -17,16 +18,27 @@ import java.util.stream.IntStream;
 public class CcgEvaluation {
 
     public static Results evaluate(final Set<ResolvedDependency> predicted, final Set<ResolvedDependency> gold) {
-        Set<String> goldSet = gold.stream().map(CcgEvaluation::dependencyToString).collect(Collectors.toSet());
-        int numMatches = (int) predicted.stream().filter(dep -> goldSet.contains(dependencyToString(dep))).count();
-        return new Results(predicted.size(), numMatches, gold.size());
+        return evaluate(new PackedDependencies(predicted), new PackedDependencies(gold));
+    }
+
+    public static Results evaluate(final Parse predicted, final Parse gold) {
+        return evaluate(predicted.getPackedDependencies(), gold.getPackedDependencies());
+    }
+
+    public static Results evaluate(final PackedDependencies predicted, final PackedDependencies gold) {
+        return new Results(predicted.size(), countLabeledMatches(predicted, gold), gold.size());
     }
 
     public static Results evaluateUnlabeled(final Set<ResolvedDependency> predicted, final Set<ResolvedDependency> gold) {
-        int numMatches = (int) gold.stream()
-                .filter(goldDep -> predicted.stream().anyMatch(predDep -> unlabeledMatch(goldDep, predDep)))
-                .count();
-        return new Results(predicted.size(), numMatches, gold.size());
+        return evaluateUnlabeled(new PackedDependencies(predicted), new PackedDependencies(gold));
+    }
+
+    public static Results evaluateUnlabeled(final Parse predicted, final Parse gold) {
+        return evaluateUnlabeled(predicted.getPackedDependencies(), gold.getPackedDependencies());
+    }
+
+    public static Results evaluateUnlabeled(final PackedDependencies predicted, final PackedDependencies gold) {
+        return new Results(predicted.size(), countUnlabeledMatches(predicted, gold), gold.size());
     }
 
     public static boolean unlabeledMatch(final ResolvedDependency dep1, final ResolvedDependency dep2) {
@@ -34,12 +46,62 @@ public class CcgEvaluation {
     }
 
     public static List<Results> evaluateNBest(final List<Parse> parses, final Set<ResolvedDependency> gold) {
-        Set<String> goldSet = gold.stream().map(CcgEvaluation::dependencyToString).collect(Collectors.toSet());
-        return parses.stream().map(parse -> {
-            int numMatches = (int) parse.dependencies.stream()
-                    .filter(dep -> goldSet.contains(dependencyToString(dep))).count();
-            return new Results(parse.dependencies.size(), numMatches, gold.size());
-        }).collect(Collectors.toList());
+        final PackedDependencies goldDependencies = new PackedDependencies(gold);
+        return parses.stream()
+                .map(parse -> evaluate(parse.getPackedDependencies(), goldDependencies))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Labeled and unlabeled results for every parse in the n-best list, in one pass over the list.
+     * @param labeledResults: labeled results are appended here.
+     * @param unlabeledResults: unlabeled results are appended here.
+     */
+    public static void evaluateNBest(final List<Parse> parses, final Parse gold, final List<Results> labeledResults,
+                                     final List<Results> unlabeledResults) {
+        final PackedDependencies goldDependencies = gold.getPackedDependencies();
+        for (Parse parse : parses) {
+            final PackedDependencies predicted = parse.getPackedDependencies();
+            labeledResults.add(new Results(predicted.size(), countLabeledMatches(predicted, goldDependencies),
+                    goldDependencies.size()));
+            unlabeledResults.add(new Results(predicted.size(), countUnlabeledMatches(predicted, goldDependencies),
+                    goldDependencies.size()));
+        }
+    }
+
+    /**
+     * Number of predicted dependencies that are also in gold, with the same category and argument number.
+     * Both key arrays are sorted, so this is a single merge.
+     */
+    private static int countLabeledMatches(final PackedDependencies predicted, final PackedDependencies gold) {
+        int numMatches = 0;
+        for (int i = 0, j = 0; i < predicted.size(); i++) {
+            final long key = predicted.getKey(i);
+            while (j < gold.size() && gold.getKey(j) < key) {
+                j++;
+            }
+            if (j < gold.size() && gold.getKey(j) == key) {
+                numMatches++;
+            }
+        }
+        return numMatches;
+    }
+
+    /**
+     * Number of gold dependencies whose (head, argument) is predicted, with any label.
+     */
+    private static int countUnlabeledMatches(final PackedDependencies predicted, final PackedDependencies gold) {
+        int numMatches = 0;
+        for (int i = 0, j = 0; i < gold.size(); i++) {
+            final long key = PackedDependencies.unlabeled(gold.getKey(i));
+            while (j < predicted.size() && PackedDependencies.unlabeled(predicted.getKey(j)) < key) {
+                j++;
+            }
+            if (j < predicted.size() && PackedDependencies.unlabeled(predicted.getKey(j)) == key) {
+                numMatches++;
+            }
+        }
+        return numMatches;
     }
 
     public static Accuracy evaluateTags(final List<Category> predicted, final List<Category> gold) {
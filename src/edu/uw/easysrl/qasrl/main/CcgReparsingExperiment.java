@@ -5,11 +5,13 @@ import com.google.common.collect.*;
 import edu.uw.easysrl.qasrl.*;
 import edu.uw.easysrl.qasrl.annotation.AnnotatedQuery;
 import edu.uw.easysrl.qasrl.annotation.AnnotationFileLoader;
+import edu.uw.easysrl.qasrl.annotation.QueryAlignmentIndex;
 import edu.uw.easysrl.qasrl.corpora.ParseDataLoader;
 import edu.uw.easysrl.qasrl.evaluation.CcgEvaluation;
 import edu.uw.easysrl.qasrl.reparsing.ReparsingParameters;
 import edu.uw.easysrl.qasrl.reparsing.*;
 import edu.uw.easysrl.qasrl.util.PropertyUtil;
+import edu.uw.easysrl.qasrl.util.SentenceScheduler;
 import edu.uw.easysrl.syntax.model.Constraint;
 import edu.uw.easysrl.qasrl.qg.surfaceform.QAStructureSurfaceForm;
 import edu.uw.easysrl.qasrl.query.QueryPruningParameters;
@@ -17,7 +19,10 @@ import edu.uw.easysrl.qasrl.query.ScoredQuery;
 import edu.uw.easysrl.syntax.evaluation.Results;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 public class CcgReparsingExperiment {
 
@@ -41,125 +46,173 @@ public class CcgReparsingExperiment {
     private static final String ccgDevNBestFile = PropertyUtil.resourcesProperties.getProperty("ccg_dev_nbest");
     private static final String ccgTestNBestFile = PropertyUtil.resourcesProperties.getProperty("ccg_test_nbest");
 
-    public static void main(String[] args) {
-        experimentConfig = new ExperimentConfig(args);
-        reparsingParameters = new ReparsingParameters(args);
+    public static void main(String[] args) throws IOException {
+        reparsingParameters = new ReparsingParameters();
+        experimentConfig = new ExperimentConfig(args, reparsingParameters);
         System.out.println(reparsingParameters.toString());
+        // Everything below is loaded once and shared by all settings of a sweep.
+        final ReparsingSweep sweep = new ReparsingSweep(reparsingParameters, experimentConfig.sweepGrid,
+                experimentConfig.sweepFile);
+        final List<ReparsingParameters> settings = sweep.getSettings();
 
         if (experimentConfig.runBioinfer) {
             throw new NotImplementedException();
         } else if (!experimentConfig.runCcgTest) {
             corpus = ParseDataLoader.loadFromDevPool().get();
-            nbestLists = NBestList.loadNBestListsFromFile(ccgDevNBestFile, 100).get();
+            nbestLists = NBestList.openNBestLists(ccgDevNBestFile, 100).get();
             annotations = AnnotationFileLoader.loadCCGDev();
         } else {
             corpus = ParseDataLoader.loadFromTestPool(true).get();
-            nbestLists = NBestList.loadNBestListsFromFile(ccgTestNBestFile, 100).get();
+            nbestLists = NBestList.openNBestLists(ccgTestNBestFile, 100).get();
             annotations = AnnotationFileLoader.loadCCGTest();
         }
         final HITLParser parser = new HITLParser(corpus, nbestLists);
         parser.setQueryPruningParameters(queryPruningParameters);
         parser.setReparsingParameters(reparsingParameters);
-        // TODO: Supertagger got called multiple times.
-        int numChangedSentence = 0;
-        Results avgChange = new Results();
-        BaseCcgParser.AStarParser baseParser = new BaseCcgParser.AStarParser(BaseCcgParser.modelFolder, 1, /* onebest*/
-               1e-6, 1e-6, 1000000, 70);
-        baseParser.cacheSupertags(parser.getParseData());
-        BaseCcgParser.ConstrainedCcgParser reParser = new BaseCcgParser.ConstrainedCcgParser(BaseCcgParser.modelFolder,
-                1 /* one best */);
-        reParser.cacheSupertags(parser.getParseData());
+        parser.setNumThreads(experimentConfig.numThreads);
+        final boolean runDev = !experimentConfig.runCcgTest && !experimentConfig.runBioinfer;
+        final ReparseCache reparseCache = new ReparseCache(runDev ? "ccg-dev" : "ccg-test",
+                experimentConfig.reparseCacheSize, experimentConfig.reparseCacheDir);
+        parser.setReparseCache(reparseCache);
+        // Parsers are not thread-safe, so each thread gets its own pair. All of them share the supertags (tagged once,
+        // see SupertagCache) and the reparse cache.
+        final List<ReparsingWorker> workers = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, experimentConfig.numThreads); i++) {
+            workers.add(i == 0 ? new ReparsingWorker(parser.getParseData()) : new ReparsingWorker(workers.get(0)));
+            workers.get(i).reParser.setReparseCache(reparseCache);
+        }
 
-        Results avgBaseline = new Results(),
-                avgReparsed = new Results(),
-                avgUnlabeledBaseline = new Results(),
-                avgUnlabeledReparsed = new Results(),
-                avgBaselineOnChanged = new Results(),
-                avgReparsedOnChanged = new Results();
+        // Generate queries for all annotated sentences up front, in parallel.
+        final List<Integer> annotatedSentenceIds = parser.getAllSentenceIds().stream()
+                .filter(annotations::containsKey)
+                .collect(Collectors.toList());
+        final List<ImmutableList<ScoredQuery<QAStructureSurfaceForm>>> annotatedQueries = runDev ?
+                parser.getPronounCoreArgQueriesForSentences(annotatedSentenceIds) :
+                parser.getNewCoreArgQueriesForSentences(annotatedSentenceIds);
+        final Map<Integer, ImmutableList<ScoredQuery<QAStructureSurfaceForm>>> allQueries = new HashMap<>();
+        for (int i = 0; i < annotatedSentenceIds.size(); i++) {
+            allQueries.put(annotatedSentenceIds.get(i), annotatedQueries.get(i));
+        }
 
-        int numMatchedAnnotations = 0;
-        int sentenceCounter = 0;
-        final boolean runDev = !experimentConfig.runCcgTest && !experimentConfig.runBioinfer;
+        final List<Integer> sentenceIds = parser.getAllSentenceIds().stream()
+                .filter(sentenceId -> !runDev || nbestLists.containsKey(sentenceId))
+                .collect(Collectors.toList());
+        final List<ReparsingResults> results = settings.stream()
+                .map(setting -> new ReparsingResults())
+                .collect(Collectors.toList());
+        final AtomicInteger sentenceCounter = new AtomicInteger(0);
+        SentenceScheduler.run(sentenceIds, sentenceId -> corpus.getSentences().get(sentenceId).size(), workers,
+                (worker, sentenceId) -> {
+                    if (sentenceCounter.incrementAndGet() % 100 == 0) {
+                        System.out.println("Parsed " + sentenceCounter.get() + " sentences ...");
+                    }
+                    reparseSentence(sentenceId, allQueries.get(sentenceId), parser, worker, settings, results);
+                    return null;
+                });
+        if (settings.size() == 1) {
+            results.get(0).printSummary(settings.get(0));
+        } else {
+            sweep.printTable(results);
+        }
+        System.err.println(reparseCache);
+    }
+
+    /**
+     * Baseline parser and reparser used by one thread.
+     */
+    private static class ReparsingWorker {
+        final BaseCcgParser.AStarParser baseParser;
+        final BaseCcgParser.ConstrainedCcgParser reParser;
+
+        ReparsingWorker(final ParseData parseData) {
+            baseParser = new BaseCcgParser.AStarParser(BaseCcgParser.modelFolder, 1, /* onebest*/
+                    1e-6, 1e-6, 1000000, 70);
+            baseParser.cacheSupertags(parseData);
+            reParser = new BaseCcgParser.ConstrainedCcgParser(BaseCcgParser.modelFolder, 1 /* one best */);
+            reParser.cacheSupertags(parseData);
+        }
+
+        ReparsingWorker(final ReparsingWorker other) {
+            baseParser = new BaseCcgParser.AStarParser(BaseCcgParser.modelFolder, 1, /* onebest*/
+                    1e-6, 1e-6, 1000000, 70);
+            baseParser.cacheSupertags(other.baseParser);
+            reParser = new BaseCcgParser.ConstrainedCcgParser(BaseCcgParser.modelFolder, 1 /* one best */);
+            reParser.cacheSupertags(other.reParser);
+        }
+    }
 
-        for  (int sentenceId : parser.getAllSentenceIds()) {
-            if (runDev && !nbestLists.containsKey(sentenceId)) {
+    /**
+     * Parses the sentence once with the baseline parser, then reparses it under each setting and adds the results for
+     * that setting. Settings that yield the same constraints share one reparse.
+     */
+    private static void reparseSentence(final int sentenceId,
+                                        final ImmutableList<ScoredQuery<QAStructureSurfaceForm>> queries,
+                                        final HITLParser parser,
+                                        final ReparsingWorker worker,
+                                        final List<ReparsingParameters> settings,
+                                        final List<ReparsingResults> results) {
+        final Parse goldParse = parser.getGoldParse(sentenceId);
+        final Parse baselineParse = worker.baseParser.parse(sentenceId, parser.getInputSentence(sentenceId));
+        Preconditions.checkArgument(baselineParse != null);
+
+        final Results baselineF1 = CcgEvaluation.evaluate(baselineParse, goldParse);
+        final Results unlabeledBaselineF1 = CcgEvaluation.evaluateUnlabeled(baselineParse, goldParse);
+        if (queries == null || queries.isEmpty() || !annotations.containsKey(sentenceId)) {
+            results.forEach(r -> r.addBaseline(baselineF1, unlabeledBaselineF1, 0 /* matched annotations */));
+            return;
+        }
+        // Matching annotations to queries does not depend on the setting.
+        final List<ScoredQuery<QAStructureSurfaceForm>> matchedQueries = new ArrayList<>();
+        final List<ImmutableList<ImmutableList<Integer>>> matchedResponses = new ArrayList<>();
+        final List<AnnotatedQuery> sentenceAnnotations = annotations.get(sentenceId);
+        final QueryAlignmentIndex alignmentIndex = new QueryAlignmentIndex(queries);
+        final ImmutableList<Optional<ScoredQuery<QAStructureSurfaceForm>>> alignedQueries =
+                alignmentIndex.alignAnnotatedQueries(sentenceAnnotations);
+        for (int i = 0; i < sentenceAnnotations.size(); i++) {
+            if (!alignedQueries.get(i).isPresent()) {
                 continue;
             }
-            if (++sentenceCounter % 100 == 0) {
-                System.out.println("Parsed " + sentenceCounter + " sentences ...");
-            }
-            ImmutableList<ScoredQuery<QAStructureSurfaceForm>> queries = null;
-            if (annotations.containsKey(sentenceId)) {
-                queries = runDev ? parser.getPronounCoreArgQueriesForSentence(sentenceId) :
-                                    parser.getNewCoreArgQueriesForSentence(sentenceId);
-            }
-            final Parse goldParse = parser.getGoldParse(sentenceId);
-            final Parse baselineParse = baseParser.parse(sentenceId, parser.getInputSentence(sentenceId));
-            Preconditions.checkArgument(baselineParse != null);
-
-            final Results baselineF1 = CcgEvaluation.evaluate(baselineParse.dependencies, goldParse.dependencies);
-            final Results unlabeledBaselineF1 = CcgEvaluation.evaluateUnlabeled(baselineParse.dependencies, goldParse.dependencies);
-            avgBaseline.add(baselineF1);
-            avgUnlabeledBaseline.add(unlabeledBaselineF1);
-            if (queries == null || queries.isEmpty() || !annotations.containsKey(sentenceId)) {
-                avgReparsed.add(baselineF1);
-                avgUnlabeledReparsed.add(unlabeledBaselineF1);
-                avgChange.add(CcgEvaluation.evaluate(baselineParse.dependencies, baselineParse.dependencies));
+            final ScoredQuery<QAStructureSurfaceForm> query = alignedQueries.get(i).get();
+            final ImmutableList<ImmutableList<Integer>> responses =
+                    alignmentIndex.getResponses(sentenceAnnotations.get(i), query);
+            // Skip queries with more or less than 5 responses.
+            if (responses.stream().filter(r -> r.size() > 0).count() != 5) {
                 continue;
             }
+            matchedQueries.add(query);
+            matchedResponses.add(responses);
+        }
+        final int numMatchedAnnotations = matchedQueries.size();
+        final Map<String, Parse> reparsedByConstraints = new HashMap<>();
+        for (int k = 0; k < settings.size(); k++) {
+            // Get constraints.
             final Set<Constraint> allConstraintsForSentence = new HashSet<>();
-            for (AnnotatedQuery annotation : annotations.get(sentenceId)) {
-                final Optional<ScoredQuery<QAStructureSurfaceForm>> matchQueryOpt =
-                        HITLParser.getBestAlignedQuery(annotation, queries);
-                if (!matchQueryOpt.isPresent()) {
-                    continue;
-                }
-                final ScoredQuery<QAStructureSurfaceForm> query = matchQueryOpt.get();
-                final ImmutableList<ImmutableList<Integer>> matchedResponses = annotation.getResponses(query);
-                // Skip queries with more or less than 5 responses.
-                if (matchedResponses.stream().filter(r -> r.size() > 0).count() != 5) {
-                    continue;
-                }
-                numMatchedAnnotations ++;
-                // Get constraints.
-                final ImmutableSet<Constraint> constraints = parser.getConstraints(query, matchedResponses);
-                allConstraintsForSentence.addAll(constraints);
+            for (int i = 0; i < numMatchedAnnotations; i++) {
+                allConstraintsForSentence.addAll(ReparsingHelper.getConstraints(matchedQueries.get(i),
+                        matchedResponses.get(i), settings.get(k)));
             }
             // Skip re-parsing if no constraint is extracted.
             if (allConstraintsForSentence.isEmpty()) {
-                avgReparsed.add(baselineF1);
-                avgUnlabeledReparsed.add(unlabeledBaselineF1);
-            } else {
-                Parse reparsed = reParser.parseWithConstraint(sentenceId,
+                results.get(k).addBaseline(baselineF1, unlabeledBaselineF1, numMatchedAnnotations);
+                continue;
+            }
+            final String constraintsKey = ConstraintHelper.getCanonicalKey(allConstraintsForSentence);
+            Parse reparsed = reparsedByConstraints.get(constraintsKey);
+            if (reparsed == null) {
+                reparsed = worker.reParser.parseWithConstraint(sentenceId,
                         corpus.getSentenceInputWords().get(sentenceId),
                         allConstraintsForSentence);
                 if (reparsed == null) {
                     System.err.println("Reparsing failed, using baseline.");
                     reparsed = baselineParse;
                 }
-                Results reparsedF1 = CcgEvaluation.evaluate(reparsed.dependencies, goldParse.dependencies);
-                Results unlabeledReparsedF1 = CcgEvaluation.evaluateUnlabeled(reparsed.dependencies,
-                        goldParse.dependencies);
-                boolean parseChanged = CcgEvaluation.evaluate(reparsed.dependencies, baselineParse.dependencies)
-                        .getF1() < 0.999;
-                avgReparsed.add(reparsedF1);
-                avgUnlabeledReparsed.add(unlabeledReparsedF1);
-                if (parseChanged) {
-                    numChangedSentence++;
-                    avgBaselineOnChanged.add(baselineF1);
-                    avgReparsedOnChanged.add(reparsedF1);
-                }
+                reparsedByConstraints.put(constraintsKey, reparsed);
             }
+            final Results reparsedF1 = CcgEvaluation.evaluate(reparsed, goldParse);
+            final Results unlabeledReparsedF1 = CcgEvaluation.evaluateUnlabeled(reparsed, goldParse);
+            final boolean parseChanged = CcgEvaluation.evaluate(reparsed, baselineParse).getF1() < 0.999;
+            results.get(k).add(baselineF1, unlabeledBaselineF1, reparsedF1, unlabeledReparsedF1,
+                    numMatchedAnnotations, parseChanged);
         }
-        System.out.println("Sentence count:\t" + sentenceCounter);
-        System.out.println("Num. matched annotations:\t" + numMatchedAnnotations);
-        System.out.println(reparsingParameters.toString());
-        System.out.println("Num. changed sentences:\t" + numChangedSentence);
-        System.out.println("On changed baseline:\n" + avgBaselineOnChanged);
-        System.out.println("On changed reparsed:\n" + avgReparsedOnChanged);
-        System.out.println("\nLabeled baseline:\n" + avgBaseline);
-        System.out.println("Labeled reparsed:\n" + avgReparsed);
-        System.out.println("\nUnlabeled baseline:\n" + avgUnlabeledBaseline);
-        System.out.println("Unlabeled reparsed:\n" + avgUnlabeledReparsed);
     }
 }
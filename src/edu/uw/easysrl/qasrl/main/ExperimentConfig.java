@@ -1,5 +1,7 @@
 package edu.uw.easysrl.qasrl.main;
 
+import edu.uw.easysrl.qasrl.reparsing.ReparsingParameters;
+import org.kohsuke.args4j.ClassParser;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
@@ -15,16 +17,36 @@ class ExperimentConfig {
     @Option(name="-bioinfer",usage="Run with Bioinfer setup.")
     boolean runBioinfer = false;
 
+    @Option(name="-threads",usage="Number of threads for query generation and reparsing.")
+    int numThreads = 1;
+
+    @Option(name="-sweep",usage="Grid of reparsing parameters to evaluate, i.e. \"pos_threshold=2,3;neg_penalty=1,1.5\".")
+    String sweepGrid = "";
+
+    @Option(name="-sweep-file",usage="File with the reparsing options of one setting to evaluate per line.")
+    String sweepFile = "";
+
+    @Option(name="-reparse-cache-size",usage="Number of reparsed sentences kept in memory.")
+    int reparseCacheSize = 100000;
+
+    @Option(name="-reparse-cache-dir",usage="Directory for keeping reparsed sentences across runs.")
+    String reparseCacheDir = "";
+
     @SuppressWarnings("unused")
     public ExperimentConfig() {
     }
 
-    ExperimentConfig(final String[] args) {
-        CmdLineParser parser = new CmdLineParser(this);
+    /**
+     * Also sets the reparsing options in args, so both can be given in any order. Fails on unknown options.
+     */
+    ExperimentConfig(final String[] args, final ReparsingParameters reparsingParameters) {
+        final CmdLineParser parser = new CmdLineParser(this);
+        new ClassParser().parse(reparsingParameters, parser);
         try {
             parser.parseArgument(args);
         } catch (CmdLineException e) {
-            // Simply skip invalid options.
+            parser.printUsage(System.err);
+            throw new IllegalArgumentException("Invalid options: " + e.getMessage(), e);
         }
     }
 }
@@ -0,0 +1,85 @@
+package edu.uw.easysrl.qasrl.main;
+
+import edu.uw.easysrl.qasrl.reparsing.ReparsingParameters;
+import edu.uw.easysrl.syntax.evaluation.Results;
+
+/**
+ * Baseline and reparsed accuracy summed over sentences. Sentences can be added from multiple threads. Everything here
+ * is a count, so the summary does not depend on the order in which sentences were added.
+ */
+class ReparsingResults {
+    private int numSentences = 0;
+    private int numMatchedAnnotations = 0;
+    private int numChangedSentences = 0;
+    private final Results avgBaseline = new Results(),
+                          avgReparsed = new Results(),
+                          avgUnlabeledBaseline = new Results(),
+                          avgUnlabeledReparsed = new Results(),
+                          avgBaselineOnChanged = new Results(),
+                          avgReparsedOnChanged = new Results();
+
+    /**
+     * Adds a sentence that was not reparsed, i.e. no constraints were extracted for it.
+     */
+    synchronized void addBaseline(final Results baseline, final Results unlabeledBaseline,
+                                  final int numMatchedAnnotations) {
+        add(baseline, unlabeledBaseline, baseline, unlabeledBaseline, numMatchedAnnotations, false /* changed */);
+    }
+
+    synchronized void add(final Results baseline, final Results unlabeledBaseline, final Results reparsed,
+                          final Results unlabeledReparsed, final int numMatchedAnnotations,
+                          final boolean parseChanged) {
+        numSentences ++;
+        this.numMatchedAnnotations += numMatchedAnnotations;
+        avgBaseline.add(baseline);
+        avgUnlabeledBaseline.add(unlabeledBaseline);
+        avgReparsed.add(reparsed);
+        avgUnlabeledReparsed.add(unlabeledReparsed);
+        if (parseChanged) {
+            numChangedSentences ++;
+            avgBaselineOnChanged.add(baseline);
+            avgReparsedOnChanged.add(reparsed);
+        }
+    }
+
+    synchronized int getNumSentences() {
+        return numSentences;
+    }
+
+    synchronized int getNumMatchedAnnotations() {
+        return numMatchedAnnotations;
+    }
+
+    synchronized int getNumChangedSentences() {
+        return numChangedSentences;
+    }
+
+    synchronized Results getBaseline() {
+        return avgBaseline;
+    }
+
+    synchronized Results getReparsed() {
+        return avgReparsed;
+    }
+
+    synchronized Results getUnlabeledBaseline() {
+        return avgUnlabeledBaseline;
+    }
+
+    synchronized Results getUnlabeledReparsed() {
+        return avgUnlabeledReparsed;
+    }
+
+    synchronized void printSummary(final ReparsingParameters reparsingParameters) {
+        System.out.println("Sentence count:\t" + numSentences);
+        System.out.println("Num. matched annotations:\t" + numMatchedAnnotations);
+        System.out.println(reparsingParameters.toString());
+        System.out.println("Num. changed sentences:\t" + numChangedSentences);
+        System.out.println("On changed baseline:\n" + avgBaselineOnChanged);
+        System.out.println("On changed reparsed:\n" + avgReparsedOnChanged);
+        System.out.println("\nLabeled baseline:\n" + avgBaseline);
+        System.out.println("Labeled reparsed:\n" + avgReparsed);
+        System.out.println("\nUnlabeled baseline:\n" + avgUnlabeledBaseline);
+        System.out.println("Unlabeled reparsed:\n" + avgUnlabeledReparsed);
+    }
+}
@@ -0,0 +1,79 @@
+package edu.uw.easysrl.qasrl.main;
+
+import edu.uw.easysrl.qasrl.reparsing.ReparsingParameters;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Settings for a parameter sweep in CcgReparsingExperiment, and the results table.
+ * A setting is a list of ReparsingParameters options applied on top of the command line parameters. Settings come from
+ * a grid, i.e. "pos_threshold=2,3,4;neg_penalty=1.0,1.5" (all combinations), and/or a file with the options of one
+ * setting per line, i.e. "-pos_threshold 3 -neg_penalty 1.5". A malformed grid fails with IllegalArgumentException.
+ */
+class ReparsingSweep {
+    private final List<String> labels = new ArrayList<>();
+    private final List<ReparsingParameters> settings = new ArrayList<>();
+
+    ReparsingSweep(final ReparsingParameters baseParameters, final String grid, final String settingsFile)
+            throws IOException {
+        if (!grid.trim().isEmpty()) {
+            List<List<String>> combinations = new ArrayList<>();
+            combinations.add(new ArrayList<>());
+            for (String axis : grid.split(";", -1 /* keep empty axes */)) {
+                final String[] nameAndValues = axis.trim().split("=", -1);
+                if (nameAndValues.length != 2 || nameAndValues[0].trim().isEmpty()) {
+                    throw new IllegalArgumentException(String.format(
+                            "Invalid grid axis \"%s\" in \"%s\", expected name=value,value,...", axis, grid));
+                }
+                final String[] values = nameAndValues[1].split(",", -1);
+                if (Arrays.stream(values).anyMatch(value -> value.trim().isEmpty())) {
+                    throw new IllegalArgumentException(String.format("Empty value in grid axis \"%s\"", axis));
+                }
+                final List<List<String>> expanded = new ArrayList<>();
+                for (List<String> combination : combinations) {
+                    for (String value : values) {
+                        final List<String> options = new ArrayList<>(combination);
+                        options.add("-" + nameAndValues[0].trim());
+                        options.add(value.trim());
+                        expanded.add(options);
+                    }
+                }
+                combinations = expanded;
+            }
+            combinations.forEach(options -> addSetting(baseParameters, options));
+        }
+        if (!settingsFile.isEmpty()) {
+            Files.readAllLines(Paths.get(settingsFile)).stream()
+                    .map(String::trim)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .forEach(line -> addSetting(baseParameters, Arrays.asList(line.split("\\s+"))));
+        }
+        if (settings.isEmpty()) {
+            addSetting(baseParameters, new ArrayList<>());
+        }
+    }
+
+    private void addSetting(final ReparsingParameters baseParameters, final List<String> options) {
+        labels.add(options.isEmpty() ? "default" : String.join(" ", options));
+        settings.add(baseParameters.withOptions(options.toArray(new String[options.size()])));
+    }
+
+    List<ReparsingParameters> getSettings() {
+        return settings;
+    }
+
+    void printTable(final List<ReparsingResults> results) {
+        System.out.println(String.join("\t", "Setting", "Sentences", "Matched", "Changed", "Baseline F1",
+                "Reparsed F1", "Unlabeled baseline F1", "Unlabeled reparsed F1"));
+        for (int i = 0; i < settings.size(); i++) {
+            final ReparsingResults r = results.get(i);
+            System.out.println(String.format("%s\t%d\t%d\t%d\t%.3f\t%.3f\t%.3f\t%.3f", labels.get(i),
+                    r.getNumSentences(), r.getNumMatchedAnnotations(), r.getNumChangedSentences(),
+                    100.0 * r.getBaseline().getF1(), 100.0 * r.getReparsed().getF1(),
+                    100.0 * r.getUnlabeledBaseline().getF1(), 100.0 * r.getUnlabeledReparsed().getF1()));
+        }
+    }
+}
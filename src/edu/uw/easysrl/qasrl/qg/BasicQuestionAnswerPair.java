@@ -129,6 +129,29 @@ public class BasicQuestionAnswerPair implements QuestionAnswerPair {
         this.parse = parse;
     }
 
+    private BasicQuestionAnswerPair(BasicQuestionAnswerPair other, int parseId, Parse parse) {
+        this.predicateIndex = other.predicateIndex;
+        this.predicateCategory = other.predicateCategory;
+        this.argumentNumber = other.argumentNumber;
+        this.questionMainIndex = other.questionMainIndex;
+        this.questionType = other.questionType;
+        this.questionDeps = other.questionDeps;
+        this.question = other.question;
+        this.targetDep = other.targetDep;
+        this.answer = other.answer;
+        this.answerDeps = other.answerDeps;
+        this.parseId = parseId;
+        this.sentenceId = other.sentenceId;
+        this.parse = parse;
+    }
+
+    /**
+     * The same QA pair, as generated from another parse (see QAPairCache).
+     */
+    public BasicQuestionAnswerPair withParse(int parseId, Parse parse) {
+        return parseId == this.parseId && parse == this.parse ? this : new BasicQuestionAnswerPair(this, parseId, parse);
+    }
+
     public String renderQuestion() {
         if(questionString == null) {
             String str = TextGenerationHelper.renderString(question);
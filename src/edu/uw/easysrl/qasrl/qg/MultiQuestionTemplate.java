@@ -238,10 +238,19 @@ public class MultiQuestionTemplate {
 
     public QuestionType type;
 
+    // Settings for getAllQAPairs and getAllQAPairsForArgument(targetArgNum).
+    public final QuestionGenerationOptions options;
+
     private final int sentenceId;
     private final int parseId;
 
     public MultiQuestionTemplate(int sentenceId, int parseId, int predicateIndex, List<String> words, Parse parse) {
+        this(sentenceId, parseId, predicateIndex, words, parse, QuestionGenerationOptions.defaults);
+    }
+
+    public MultiQuestionTemplate(int sentenceId, int parseId, int predicateIndex, List<String> words, Parse parse,
+                                 QuestionGenerationOptions options) {
+        this.options = options;
         this.categories = parse.categories;
         this.predicateIndex = predicateIndex;
         this.predicateCategory = categories.get(predicateIndex);
@@ -318,6 +327,18 @@ public class MultiQuestionTemplate {
         // return !(type == QuestionType.NOUN_ADJUNCT);
     }
 
+    /**
+     * All QA pairs for the predicate, as configured by the options of this template.
+     */
+    public ImmutableList<BasicQuestionAnswerPair> getAllQAPairs() {
+        return options.askPPAttachmentQuestions ?
+                getAllPPAttachmentQAPairs(options.indefinitesOnly) :
+                IntStream.range(1, predicateCategory.getNumberOfArguments() + 1)
+                        .boxed()
+                        .flatMap(argNum -> getAllQAPairsForArgument(argNum).stream())
+                        .collect(toImmutableList());
+    }
+
     public ImmutableList<BasicQuestionAnswerPair> getAllPPAttachmentQAPairs(boolean subjectPronoun) {
         return TextGenerationHelper.getAllArgumentChoicePaths(allArgDeps).stream()
             .flatMap(chosenArgDeps -> getPPAttachmentQAPairs(chosenArgDeps, subjectPronoun).stream())
@@ -330,6 +351,11 @@ public class MultiQuestionTemplate {
      * because we will be trying all of the different preposition supersenses
      * that could possibly be appropriate for a preposition in queryPrompt.
      */
+    public List<BasicQuestionAnswerPair> getAllQAPairsForArgument(int targetArgNum) {
+        return getAllQAPairsForArgument(targetArgNum, options.indefinitesOnly, options.askAllStandardQuestions,
+                options.includeSupersenseQuestions);
+    }
+
     public List<BasicQuestionAnswerPair> getAllQAPairsForArgument(int targetArgNum,
                                                                   boolean indefinitesOnly,
                                                                   boolean askAllStandardQuestions,
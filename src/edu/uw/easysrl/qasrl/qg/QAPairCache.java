@@ -0,0 +1,150 @@
+package edu.uw.easysrl.qasrl.qg;
+
+import com.google.common.collect.ImmutableList;
+import edu.uw.easysrl.qasrl.PackedDependencies;
+import edu.uw.easysrl.qasrl.Parse;
+import edu.uw.easysrl.syntax.grammar.SyntaxTreeNode;
+import gnu.trove.list.array.TLongArrayList;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+import static edu.uw.easysrl.qasrl.util.GuavaCollectors.*;
+
+/**
+ * Memoizes per-predicate QA pair generation across the parses of one n-best list.
+ * Most parses in an n-best list agree on the neighborhood of a given predicate, so the pairs are generated once per
+ * distinct predicate signature and copied to the other parses with the parse id and parse replaced.
+ *
+ * The signature of a predicate consists of its index and supertag, the region of the sentence it reaches through its
+ * incoming dependencies and (transitively) its arguments, the subtree spanning that region together with the path
+ * from the root to it, and all dependencies headed inside the subtree. Surface realization only reads from this part
+ * of the parse.
+ *
+ * Not thread-safe: use one cache per sentence. Generators with different settings can share a cache as long as the
+ * settings are part of the generator key.
+ */
+public class QAPairCache {
+    private static final long kSeparator = -1L;
+
+    private final Map<Signature, ImmutableList<BasicQuestionAnswerPair>> cache = new HashMap<>();
+
+    /**
+     * @param generatorKey: distinguishes generators (and their settings) applied to the same predicate. Compared with
+     *                    equals().
+     * @param generator: generates the QA pairs of the predicate for the given parse and parse id.
+     */
+    public ImmutableList<BasicQuestionAnswerPair> get(Object generatorKey, int parseId, Parse parse,
+                                                      int predicateIndex,
+                                                      Supplier<ImmutableList<BasicQuestionAnswerPair>> generator) {
+        if (parse.syntaxTree == null) {
+            return generator.get();
+        }
+        final Signature signature = new Signature(generatorKey, getSignature(predicateIndex, parse));
+        final ImmutableList<BasicQuestionAnswerPair> cached = cache.get(signature);
+        if (cached == null) {
+            final ImmutableList<BasicQuestionAnswerPair> qaPairs = generator.get();
+            cache.put(signature, qaPairs);
+            return qaPairs;
+        }
+        return cached.stream()
+                .map(qa -> qa.withParse(parseId, parse))
+                .collect(toImmutableList());
+    }
+
+    static long[] getSignature(int predicateIndex, Parse parse) {
+        final PackedDependencies dependencies = parse.getPackedDependencies();
+
+        // Words reachable from the predicate through arguments, and heads of dependencies into the predicate.
+        final BitSet region = new BitSet();
+        final Deque<Integer> agenda = new ArrayDeque<>();
+        region.set(predicateIndex);
+        agenda.push(predicateIndex);
+        while (!agenda.isEmpty()) {
+            final int head = agenda.pop();
+            for (int i = dependencies.headStart(head); i < dependencies.headEnd(head); i++) {
+                final int argument = PackedDependencies.getArgument(dependencies.getKey(i));
+                if (!region.get(argument)) {
+                    region.set(argument);
+                    agenda.push(argument);
+                }
+            }
+        }
+        for (int i = 0; i < dependencies.size(); i++) {
+            if (PackedDependencies.getArgument(dependencies.getKey(i)) == predicateIndex) {
+                region.set(PackedDependencies.getHead(dependencies.getKey(i)));
+            }
+        }
+        final int regionStart = region.nextSetBit(0), regionEnd = region.length();
+
+        final TLongArrayList signature = new TLongArrayList();
+        signature.add(predicateIndex);
+        signature.add(PackedDependencies.getCategoryId(parse.categories.get(predicateIndex)));
+        signature.add(kSeparator);
+
+        // Path from the root to the lowest node spanning the region.
+        SyntaxTreeNode node = parse.syntaxTree;
+        while (true) {
+            signature.add(packNode(node));
+            final Optional<SyntaxTreeNode> child = node.getChildren().stream()
+                    .filter(c -> c.getStartIndex() <= regionStart && c.getEndIndex() >= regionEnd)
+                    .findFirst();
+            if (!child.isPresent()) {
+                break;
+            }
+            node = child.get();
+        }
+        signature.add(kSeparator);
+
+        // The subtree in pre-order, which includes the supertags at its leaves.
+        final Deque<SyntaxTreeNode> nodes = new ArrayDeque<>();
+        nodes.push(node);
+        while (!nodes.isEmpty()) {
+            final SyntaxTreeNode current = nodes.pop();
+            signature.add(packNode(current));
+            final List<SyntaxTreeNode> children = current.getChildren();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                nodes.push(children.get(i));
+            }
+        }
+        signature.add(kSeparator);
+
+        final int end = dependencies.headStart(node.getEndIndex());
+        for (int i = dependencies.headStart(node.getStartIndex()); i < end; i++) {
+            signature.add(dependencies.getKey(i));
+        }
+        return signature.toArray();
+    }
+
+    private static long packNode(final SyntaxTreeNode node) {
+        return PackedDependencies.pack(node.getStartIndex(), node.getEndIndex(),
+                PackedDependencies.getCategoryId(node.getCategory()), 0);
+    }
+
+    private static final class Signature {
+        private final Object generatorKey;
+        private final long[] key;
+        private final int hashCode;
+
+        Signature(Object generatorKey, long[] key) {
+            this.generatorKey = generatorKey;
+            this.key = key;
+            this.hashCode = 31 * generatorKey.hashCode() + Arrays.hashCode(key);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Signature)) {
+                return false;
+            }
+            final Signature signature = (Signature) other;
+            return hashCode == signature.hashCode && generatorKey.equals(signature.generatorKey)
+                    && Arrays.equals(key, signature.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package edu.uw.easysrl.qasrl.qg;
+
+/**
+ * Settings for QuestionGenerator, passed with each call instead of being set globally. Immutable, so generation with
+ * different settings can run concurrently.
+ */
+public final class QuestionGenerationOptions {
+    public static final QuestionGenerationOptions defaults = new QuestionGenerationOptions(true, false, false, false);
+
+    // if true: only ask questions with indefinite noun args
+    public final boolean indefinitesOnly;
+    // all (false: just one) standard questions
+    public final boolean askAllStandardQuestions;
+    // if true: include supersense questions
+    public final boolean includeSupersenseQuestions;
+    // if true: include PP attachment questions. If this is true, the previous three don't matter
+    public final boolean askPPAttachmentQuestions;
+
+    public QuestionGenerationOptions(boolean indefinitesOnly, boolean askAllStandardQuestions,
+                                     boolean includeSupersenseQuestions, boolean askPPAttachmentQuestions) {
+        this.indefinitesOnly = indefinitesOnly;
+        this.askAllStandardQuestions = askAllStandardQuestions;
+        this.includeSupersenseQuestions = includeSupersenseQuestions;
+        this.askPPAttachmentQuestions = askPPAttachmentQuestions;
+    }
+
+    public QuestionGenerationOptions withIndefinitesOnly(boolean flag) {
+        return new QuestionGenerationOptions(flag, askAllStandardQuestions, includeSupersenseQuestions,
+                askPPAttachmentQuestions);
+    }
+
+    public QuestionGenerationOptions withAskAllStandardQuestions(boolean flag) {
+        return new QuestionGenerationOptions(indefinitesOnly, flag, includeSupersenseQuestions,
+                askPPAttachmentQuestions);
+    }
+
+    public QuestionGenerationOptions withIncludeSupersenseQuestions(boolean flag) {
+        return new QuestionGenerationOptions(indefinitesOnly, askAllStandardQuestions, flag, askPPAttachmentQuestions);
+    }
+
+    public QuestionGenerationOptions withAskPPAttachmentQuestions(boolean flag) {
+        return new QuestionGenerationOptions(indefinitesOnly, askAllStandardQuestions, includeSupersenseQuestions,
+                flag);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof QuestionGenerationOptions)) {
+            return false;
+        }
+        final QuestionGenerationOptions options = (QuestionGenerationOptions) other;
+        return indefinitesOnly == options.indefinitesOnly
+                && askAllStandardQuestions == options.askAllStandardQuestions
+                && includeSupersenseQuestions == options.includeSupersenseQuestions
+                && askPPAttachmentQuestions == options.askPPAttachmentQuestions;
+    }
+
+    @Override
+    public int hashCode() {
+        return (indefinitesOnly ? 1 : 0) | (askAllStandardQuestions ? 2 : 0) | (includeSupersenseQuestions ? 4 : 0)
+                | (askPPAttachmentQuestions ? 8 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("indefinitesOnly=%b askAllStandardQuestions=%b includeSupersenseQuestions=%b "
+                + "askPPAttachmentQuestions=%b", indefinitesOnly, askAllStandardQuestions, includeSupersenseQuestions,
+                askPPAttachmentQuestions);
+    }
+}
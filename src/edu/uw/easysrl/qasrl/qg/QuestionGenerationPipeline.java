@@ -19,9 +19,15 @@ public abstract class QuestionGenerationPipeline {
     public static QuestionGenerationPipeline coreArgQGPipeline = new QuestionGenerationPipeline() {
         @Override
         public ImmutableList<QuestionAnswerPair> generateQAPairs(int sentenceId, int parseId, Parse parse) {
+            return generateQAPairs(sentenceId, parseId, parse, new QAPairCache());
+        }
+
+        @Override
+        public ImmutableList<QuestionAnswerPair> generateQAPairs(int sentenceId, int parseId, Parse parse,
+                                                                 QAPairCache cache) {
             return new ImmutableList.Builder<QuestionAnswerPair>()
-                    .addAll(QuestionGenerator.newCoreNPArgQuestions(sentenceId, parseId, parse))
-                    .addAll(QuestionGenerator.newCopulaQuestions(sentenceId, parseId, parse))
+                    .addAll(QuestionGenerator.newCoreNPArgQuestions(sentenceId, parseId, parse, cache))
+                    .addAll(QuestionGenerator.newCopulaQuestions(sentenceId, parseId, parse, cache))
                     .build();
         }
 
@@ -59,6 +65,15 @@ public abstract class QuestionGenerationPipeline {
 
     public abstract ImmutableList<QuestionAnswerPair> generateQAPairs(int sentenceId, int parseId, Parse parse);
 
+    /**
+     * Same as generateQAPairs, sharing work with other parses of the same sentence through the cache. Pipelines that
+     * don't support caching ignore it.
+     */
+    public ImmutableList<QuestionAnswerPair> generateQAPairs(int sentenceId, int parseId, Parse parse,
+                                                             QAPairCache cache) {
+        return generateQAPairs(sentenceId, parseId, parse);
+    }
+
     public abstract QAPairAggregator<QAStructureSurfaceForm> getQAPairAggregator();
     public abstract QueryGenerator<QAStructureSurfaceForm, ScoredQuery<QAStructureSurfaceForm>> getQueryGenerator();
     public Optional<QueryFilter<QAStructureSurfaceForm, ScoredQuery<QAStructureSurfaceForm>>> getQueryFilter() {
@@ -72,8 +87,18 @@ public abstract class QuestionGenerationPipeline {
     public abstract QuestionGenerationPipeline setQueryPruningParameters(final QueryPruningParameters pruningParameters);
 
     public ImmutableList<ScoredQuery<QAStructureSurfaceForm>> generateAllQueries(int sentenceId, NBestList nBestList) {
+        return generateAllQueries(sentenceId, nBestList, getQueryPruningParameters());
+    }
+
+    /**
+     * Same as generateAllQueries(sentenceId, nBestList), but with the given pruning parameters instead of the ones set
+     * on the pipeline. Safe to call concurrently.
+     */
+    public ImmutableList<ScoredQuery<QAStructureSurfaceForm>> generateAllQueries(
+            int sentenceId, NBestList nBestList, QueryPruningParameters queryPruningParameters) {
+        final QAPairCache cache = new QAPairCache();
         final ImmutableList<QuestionAnswerPair> allQAPairs = IntStream.range(0, nBestList.getN()).boxed()
-            .flatMap(parseId -> this.generateQAPairs(sentenceId, parseId, nBestList.getParse(parseId)).stream())
+            .flatMap(parseId -> this.generateQAPairs(sentenceId, parseId, nBestList.getParse(parseId), cache).stream())
             .collect(toImmutableList());
 
         ImmutableList<ScoredQuery<QAStructureSurfaceForm>> queries =
@@ -82,7 +107,7 @@ public abstract class QuestionGenerationPipeline {
             query.computeScores(nBestList);
         }
         if(getQueryFilter().isPresent()) {
-            return getQueryFilter().get().filter(queries, nBestList, getQueryPruningParameters());
+            return getQueryFilter().get().filter(queries, nBestList, queryPruningParameters);
         } else {
             return queries;
         }
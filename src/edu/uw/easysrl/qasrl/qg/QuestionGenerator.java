@@ -18,67 +18,63 @@ import java.util.stream.Stream;
  * Created by luheng on 12/8/15.
  */
 public class QuestionGenerator {
-    private static boolean indefinitesOnly = true; // if true: only ask questions with indefinite noun args
-    public static void setIndefinitesOnly(boolean flag) {
-        indefinitesOnly = flag;
-    }
-
-    private static boolean askAllStandardQuestions = false; // all (false: just one) standard questions
-    public static void setAskAllStandardQuestions(boolean flag) {
-        askAllStandardQuestions = flag;
-    }
-
-    private static boolean includeSupersenseQuestions = false; // if true: include supersense questions
-    public static void setIncludeSupersenseQuestions(boolean flag) {
-        includeSupersenseQuestions = flag;
-    }
-
-    // if this is true, the previous three don't matter
-    private static boolean askPPAttachmentQuestions = false; // if true: include PP attachment questions
-    public static void setAskPPAttachmentQuestions(boolean flag) {
-        askPPAttachmentQuestions = flag;
-    }
-
     /**
      * Generate all queryPrompt answer pairs for a sentence, given the n-best list.
+     * Pairs are generated once per distinct predicate signature and shared across parses (see QAPairCache).
      * @param sentenceId: unique identifier of the sentence.
      * @param words: words in the sentence.
      * @param nBestList: the nbest list.
+     * @param options: question generation settings.
      * @return
      */
     public static ImmutableList<QuestionAnswerPair> generateAllQAPairs(int sentenceId,
                                                                        ImmutableList<String> words,
-                                                                       NBestList nBestList) {
+                                                                       NBestList nBestList,
+                                                                       QuestionGenerationOptions options) {
+        final QAPairCache cache = new QAPairCache();
         return IntStream.range(0, nBestList.getN()).boxed()
-                .flatMap(parseId -> generateQAPairsForParse(sentenceId, parseId, words, nBestList.getParse(parseId)).stream())
+                .flatMap(parseId -> generateQAPairsForParse(sentenceId, parseId, words, nBestList.getParse(parseId),
+                        options, cache).stream())
                 .collect(toImmutableList());
     }
 
+    public static ImmutableList<QuestionAnswerPair> generateAllQAPairs(int sentenceId,
+                                                                       ImmutableList<String> words,
+                                                                       NBestList nBestList) {
+        return generateAllQAPairs(sentenceId, words, nBestList, QuestionGenerationOptions.defaults);
+    }
+
+    public static ImmutableList<QuestionAnswerPair> generateQAPairsForParse(int sentenceId,
+                                                                            int parseId,
+                                                                            ImmutableList<String> words,
+                                                                            Parse parse,
+                                                                            QuestionGenerationOptions options) {
+        return generateQAPairsForParse(sentenceId, parseId, words, parse, options, new QAPairCache());
+    }
+
     public static ImmutableList<QuestionAnswerPair> generateQAPairsForParse(int sentenceId,
                                                                             int parseId,
                                                                             ImmutableList<String> words,
-                                                                            Parse parse) {
+                                                                            Parse parse,
+                                                                            QuestionGenerationOptions options,
+                                                                            QAPairCache cache) {
+        // Generated pairs depend on the options, so they are part of the cache key.
+        final List<Object> generatorKey = Arrays.asList("template", options);
         return IntStream.range(0, words.size())
                 .mapToObj(Integer::new)
-                .flatMap(predIndex -> generateQAPairsForPredicate(sentenceId, parseId, predIndex, words, parse).stream())
+                .flatMap(predIndex -> cache.get(generatorKey, parseId, parse, predIndex,
+                        () -> generateQAPairsForPredicate(sentenceId, parseId, predIndex, words, parse, options))
+                        .stream())
                 .collect(toImmutableList());
     }
 
-    private static ImmutableList<QuestionAnswerPair> generateQAPairsForPredicate(int sentenceId,
-                                                                                 int parseId,
-                                                                                 int predicateIdx,
-                                                                                 List<String> words,
-                                                                                 Parse parse) {
-        final MultiQuestionTemplate template = new MultiQuestionTemplate(sentenceId, parseId, predicateIdx, words, parse);
-        return askPPAttachmentQuestions ?
-                template.getAllPPAttachmentQAPairs(indefinitesOnly)
-                        .stream()
-                        .collect(toImmutableList()) :
-                IntStream.range(1, parse.categories.get(predicateIdx).getNumberOfArguments() + 1)
-                        .boxed()
-                        .flatMap(argNum -> template.getAllQAPairsForArgument(argNum, indefinitesOnly,
-                                askAllStandardQuestions, includeSupersenseQuestions).stream())
-                        .collect(toImmutableList());
+    private static ImmutableList<BasicQuestionAnswerPair> generateQAPairsForPredicate(int sentenceId,
+                                                                                      int parseId,
+                                                                                      int predicateIdx,
+                                                                                      List<String> words,
+                                                                                      Parse parse,
+                                                                                      QuestionGenerationOptions options) {
+        return new MultiQuestionTemplate(sentenceId, parseId, predicateIdx, words, parse, options).getAllQAPairs();
     }
 
     private static Verb withTenseForQuestion(Verb verb) {
@@ -111,6 +107,11 @@ public class QuestionGenerator {
     }
 
     public static ImmutableList<QuestionAnswerPair> newCoreNPArgQuestions(int sentenceId, int parseId, Parse parse) {
+        return newCoreNPArgQuestions(sentenceId, parseId, parse, new QAPairCache());
+    }
+
+    public static ImmutableList<QuestionAnswerPair> newCoreNPArgQuestions(int sentenceId, int parseId, Parse parse,
+                                                                          QAPairCache cache) {
         final PredicateCache preds = new PredicateCache(parse);
         final ImmutableList<String> words = parse.syntaxTree.getLeaves().stream().map(l -> l.getWord()).collect(toImmutableList());
         final ImmutableList<QuestionAnswerPair> qaPairs = IntStream
@@ -120,15 +121,25 @@ public class QuestionGenerator {
                     // parse.categories.get(index).isFunctionInto(Category.valueOf("(S[dcl]|S[dcl])|NP")) &&
                     !parse.categories.get(index).isFunctionInto(Category.valueOf("(S\\NP)|(S\\NP)")) &&
                     !VerbHelper.isAuxiliaryVerb(words.get(index), parse.categories.get(index)))
-            .flatMap(predicateIndex -> {
-                    Verb v = null;
-                    try {
-                        v = Verb.getFromParse(predicateIndex, preds, parse);
-                    } catch(IllegalArgumentException e) {
-                        // System.err.println(e.getMessage());
-                        v = null;
-                    }
-                    return Stream.of(v)
+            .flatMap(predicateIndex -> cache.get("coreNPArg", parseId, parse, predicateIndex,
+                    () -> getCoreNPArgQAPairs(sentenceId, parseId, parse, preds, predicateIndex)).stream())
+            .collect(toImmutableList());
+        return qaPairs;
+    }
+
+    /**
+     * Core NP argument questions about one predicate.
+     */
+    private static ImmutableList<BasicQuestionAnswerPair> getCoreNPArgQAPairs(int sentenceId, int parseId, Parse parse,
+                                                                              PredicateCache preds, int predicateIndex) {
+        Verb v = null;
+        try {
+            v = Verb.getFromParse(predicateIndex, preds, parse);
+        } catch(IllegalArgumentException e) {
+            // System.err.println(e.getMessage());
+            v = null;
+        }
+        return Stream.of(v)
             .filter(verb -> isVerbValid(verb, false))
             .map(verb -> PredicationUtils.elideInnerPPs(verb))
             .flatMap(verb -> IntStream.range(1, verb.getPredicateCategory().getNumberOfArguments() + 1)
@@ -162,12 +173,16 @@ public class QuestionGenerator {
                                                        answerArg.getDependency().get(),
                                                        new TextWithDependencies(answerArg.getPredication().getPhrase(Category.NP),
                                                                                 answerArg.getPredication().getAllDependencies()));
-                }))));})
+                }))))
             .collect(toImmutableList());
-        return qaPairs;
     }
 
     public static ImmutableList<QuestionAnswerPair> newCopulaQuestions(int sentenceId, int parseId, Parse parse) {
+        return newCopulaQuestions(sentenceId, parseId, parse, new QAPairCache());
+    }
+
+    public static ImmutableList<QuestionAnswerPair> newCopulaQuestions(int sentenceId, int parseId, Parse parse,
+                                                                       QAPairCache cache) {
         final PredicateCache preds = new PredicateCache(parse);
         final ImmutableList<String> words = parse.syntaxTree.getLeaves().stream().map(l -> l.getWord()).collect(toImmutableList());
         final ImmutableList<QuestionAnswerPair> qaPairs = IntStream
@@ -176,15 +191,25 @@ public class QuestionGenerator {
             .filter(index -> parse.categories.get(index).isFunctionInto(Category.valueOf("S\\NP")) &&
                     !parse.categories.get(index).isFunctionInto(Category.valueOf("(S\\NP)|(S\\NP)")) &&
                     VerbHelper.isCopulaVerb(words.get(index)))
-            .flatMap(predicateIndex -> {
-                    Verb v = null;
-                    try {
-                        v = Verb.getFromParse(predicateIndex, preds, parse);
-                    } catch(IllegalArgumentException e) {
-                        // System.err.println(e.getMessage());
-                        v = null;
-                    }
-                    return Stream.of(v)
+            .flatMap(predicateIndex -> cache.get("copula", parseId, parse, predicateIndex,
+                    () -> getCopulaQAPairs(sentenceId, parseId, parse, preds, predicateIndex)).stream())
+            .collect(toImmutableList());
+        return qaPairs;
+    }
+
+    /**
+     * Copula questions about one predicate.
+     */
+    private static ImmutableList<BasicQuestionAnswerPair> getCopulaQAPairs(int sentenceId, int parseId, Parse parse,
+                                                                           PredicateCache preds, int predicateIndex) {
+        Verb v = null;
+        try {
+            v = Verb.getFromParse(predicateIndex, preds, parse);
+        } catch(IllegalArgumentException e) {
+            // System.err.println(e.getMessage());
+            v = null;
+        }
+        return Stream.of(v)
             .filter(verb -> isVerbValid(verb, true))
             .map(verb -> PredicationUtils.elideInnerPPs(verb))
             .flatMap(verb -> IntStream.range(1, verb.getPredicateCategory().getNumberOfArguments() + 1)
@@ -225,9 +250,7 @@ public class QuestionGenerator {
                                                        answerArg.getDependency().get(),
                                                        new TextWithDependencies(answerArg.getPredication().getPhrase(Category.NP),
                                                                                 answerArg.getPredication().getAllDependencies()));
-                }))));})
+                }))))
             .collect(toImmutableList());
-        return qaPairs;
     }
 }
-
@@ -3,6 +3,7 @@ package edu.uw.easysrl.qasrl.qg.surfaceform;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import edu.uw.easysrl.dependencies.ResolvedDependency;
+import edu.uw.easysrl.qasrl.PackedDependencies;
 import edu.uw.easysrl.qasrl.Parse;
 import edu.uw.easysrl.qasrl.qg.QuestionAnswerPair;
 import edu.uw.easysrl.qasrl.qg.syntax.AnswerStructure;
@@ -86,20 +87,14 @@ public class QAStructureSurfaceForm implements QAPairSurfaceForm {
     }
 
     public boolean canBeGeneratedBy(Parse parse) {
+        final PackedDependencies dependencies = parse.getPackedDependencies();
         return questionStructures.stream()
                 .filter(qStr -> parse.categories.get(qStr.predicateIndex) == qStr.category)
-                .map(qStr -> qStr.filter(parse.dependencies))
+                .map(qStr -> qStr.filter(dependencies))
                 .anyMatch(qdeps -> answerStructures.stream()
                         .anyMatch(aStr -> !aStr.filter(qdeps).isEmpty())) &&
               answerStructures.stream()
                       .anyMatch(aStr -> aStr.adjunctDependencies.stream()
-                              .allMatch(d -> coveredUndirected(d, parse.dependencies)));
-    }
-
-    private boolean coveredUndirected(final ResolvedDependency dep, final Collection<ResolvedDependency> depSet) {
-        return depSet.stream().anyMatch(d ->
-            (d.getHead() == dep.getHead() && d.getArgument() == dep.getArgument()) ||
-                    (d.getArgument() == dep.getHead() && d.getHead() == dep.getArgument())
-        );
+                              .allMatch(d -> dependencies.containsUndirected(d.getHead(), d.getArgument())));
     }
 }
@@ -5,6 +5,7 @@ import com.google.common.collect.ImmutableMap;
 
 import com.google.common.collect.ImmutableSet;
 import edu.uw.easysrl.dependencies.ResolvedDependency;
+import edu.uw.easysrl.qasrl.PackedDependencies;
 import edu.uw.easysrl.qasrl.Parse;
 import edu.uw.easysrl.qasrl.qg.QuestionAnswerPair;
 import edu.uw.easysrl.qasrl.qg.QAPairAggregatorUtils;
@@ -29,6 +30,7 @@ public class QuestionStructure {
     public final int targetPrepositionIndex;
     public final ImmutableMap<Integer, ImmutableList<Integer>> otherDependencies;
     private final String hashString;
+    private static final Category prepositionCategory = Category.valueOf("PP/NP");
 
     public QuestionStructure(int predId, Category category, int argNum, Collection<ResolvedDependency> otherDeps) {
         this.predicateIndex = predId;
@@ -121,6 +123,31 @@ public class QuestionStructure {
                 .collect(GuavaCollectors.toImmutableSet());
     }
 
+    /**
+     * Same as filter(Collection), using indexed lookups by head.
+     */
+    public ImmutableSet<ResolvedDependency> filter(final PackedDependencies dependencies) {
+        final ImmutableSet.Builder<ResolvedDependency> filtered = ImmutableSet.builder();
+        if (targetPrepositionIndex >= 0) {
+            final int prepositionCategoryId = PackedDependencies.getCategoryId(prepositionCategory);
+            for (int i = dependencies.headStart(targetPrepositionIndex);
+                 i < dependencies.headEnd(targetPrepositionIndex); i++) {
+                if (PackedDependencies.getCategoryId(dependencies.getKey(i)) == prepositionCategoryId) {
+                    filtered.add(dependencies.get(i));
+                }
+            }
+        }
+        final int categoryId = PackedDependencies.getCategoryId(category);
+        for (int i = dependencies.headStart(predicateIndex); i < dependencies.headEnd(predicateIndex); i++) {
+            final long key = dependencies.getKey(i);
+            if (PackedDependencies.getCategoryId(key) == categoryId
+                    && PackedDependencies.getArgNumber(key) == targetArgNum) {
+                filtered.add(dependencies.get(i));
+            }
+        }
+        return filtered.build();
+    }
+
     public String toString(final ImmutableList<String> words) {
         return String.format("%d:%s_%s.%d", predicateIndex, words.get(predicateIndex), category, targetArgNum)
                 + " ("
@@ -1,7 +1,5 @@
 package edu.uw.easysrl.qasrl.qg.util;
 
-import java.util.Set;
-import java.util.HashSet;
 import java.util.Optional;
 import java.util.function.BiFunction;
 
@@ -24,8 +22,6 @@ import com.google.common.collect.ImmutableSet;
 
 public final class Adverb extends Predication {
 
-    private static Set<Category> adverbCategories = new HashSet<>();
-
     public static Adverb getFromParse(Integer headIndex, PredicateCache preds, Parse parse) {
         final SyntaxTreeNode tree = parse.syntaxTree;
         final SyntaxTreeNodeLeaf headLeaf = tree.getLeaves().get(headIndex);
@@ -43,12 +39,6 @@ public final class Adverb extends Predication {
             .map(predType -> new Argument(Optional.of(argDep), preds.getPredication(argDep.getArgument(), predType))))
             .collect(toImmutableList())));
 
-        if(!adverbCategories.contains(predicateCategory)) {
-            // System.err.println(String.format("new adverb category: %s (e.g., %s)",
-            //                                  predicateCategory, predicate));
-            adverbCategories.add(predicateCategory);
-        }
-
         return new Adverb(predicate, predicateCategory, args);
     }
 
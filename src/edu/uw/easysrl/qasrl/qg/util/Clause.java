@@ -1,7 +1,5 @@
 package edu.uw.easysrl.qasrl.qg.util;
 
-import java.util.Set;
-import java.util.HashSet;
 import java.util.Optional;
 import java.util.function.BiFunction;
 
@@ -24,8 +22,6 @@ import com.google.common.collect.ImmutableSet;
 
 public final class Clause extends Predication {
 
-    private static Set<Category> clauseCategories = new HashSet<>();
-
     public static enum Type {
         UNSPECIFIED(Category.S),
         DECLARATIVE(Category.Sdcl),
@@ -63,13 +59,6 @@ public final class Clause extends Predication {
         assert Category.S.matches(clauseCategory)
             : "must get clause from an S-headed head word";
 
-        if(!clauseCategories.contains(predicateCategory)) {
-            // System.err.println(String.format("new clause category: %s (e.g., %s)",
-            //                                  predicateCategory, predicate));
-            // System.err.println(parse.syntaxTree.getLeaves().stream().map(l -> l.getWord()).collect(joining(" ")));
-            clauseCategories.add(predicateCategory);
-        }
-
         final Type clauseType;
         final ImmutableMap<Integer, ImmutableList<Argument>> args;
         // XXX: as a hacky thing, we're only getting the first arg/inner clause for non-dcl clause types. doing better would require some other BS, I think.
@@ -1,7 +1,5 @@
 package edu.uw.easysrl.qasrl.qg.util;
 
-import java.util.Set;
-import java.util.HashSet;
 import java.util.Optional;
 import java.util.function.BiFunction;
 
@@ -33,8 +31,6 @@ public final class Preposition extends Predication {
                         "to", "toward", "towards", "under", "underneath", "until", "unto", "up", "upon", "versus", "via", "with",
                         "within", "without");
 
-    private static Set<Category> prepositionCategories = new HashSet<>();
-
     public static Preposition makeSimplePP(String predicate, Noun object) {
         return new Preposition(predicate, Category.valueOf("PP/NP"), new ImmutableMap.Builder<Integer, ImmutableList<Argument>>()
                                .put(1, ImmutableList.of(Argument.withNoDependency(object)))
@@ -57,12 +53,6 @@ public final class Preposition extends Predication {
             .map(predType -> new Argument(Optional.of(argDep), preds.getPredication(argDep.getArgument(), predType))))
             .collect(toImmutableList())));
 
-        if(!prepositionCategories.contains(predicateCategory)) {
-            // System.err.println(String.format("new preposition category: %s (e.g., %s)",
-            //                                  predicateCategory, predicate));
-            prepositionCategories.add(predicateCategory);
-        }
-
         return new Preposition(predicate, predicateCategory, args);
     }
 
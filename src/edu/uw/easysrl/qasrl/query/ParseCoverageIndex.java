@@ -0,0 +1,185 @@
+package edu.uw.easysrl.qasrl.query;
+
+import edu.uw.easysrl.dependencies.ResolvedDependency;
+import edu.uw.easysrl.qasrl.NBestList;
+import edu.uw.easysrl.qasrl.PackedDependencies;
+import edu.uw.easysrl.qasrl.Parse;
+import edu.uw.easysrl.qasrl.qg.surfaceform.QAStructureSurfaceForm;
+import edu.uw.easysrl.qasrl.qg.syntax.AnswerStructure;
+import edu.uw.easysrl.qasrl.qg.syntax.QuestionStructure;
+import edu.uw.easysrl.syntax.grammar.Category;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import java.util.BitSet;
+
+import static edu.uw.easysrl.qasrl.PackedDependencies.kAny;
+import static edu.uw.easysrl.qasrl.PackedDependencies.pack;
+
+/**
+ * For every supertag and dependency structure in an n-best list, the set of parse ids that contain it.
+ * With this, QAStructureSurfaceForm.canBeGeneratedBy over all parses becomes a few bitset intersections, and option
+ * scores are weighted sums over set bits.
+ * Lookup keys are packed dependency keys (see PackedDependencies), with kAny in the fields that are not constrained.
+ */
+public class ParseCoverageIndex {
+    private static final Category prepositionCategory = Category.valueOf("PP/NP");
+    private static final BitSet empty = new BitSet();
+
+    private final NBestList nBestList;
+    private final int numParses;
+    private final double[] scores;
+    private final double totalScore;
+    // (word index, kAny, category id, kAny) -> parses with that supertag.
+    private final TLongObjectHashMap<BitSet> supertags = new TLongObjectHashMap<>();
+    // Full keys, and keys with the argument number and/or argument left out.
+    private final TLongObjectHashMap<BitSet> dependencies = new TLongObjectHashMap<>();
+
+    public ParseCoverageIndex(final NBestList nBestList) {
+        this.nBestList = nBestList;
+        numParses = nBestList.getN();
+        scores = new double[numParses];
+        double total = 0;
+        for (int k = 0; k < numParses; k++) {
+            final Parse parse = nBestList.getParse(k);
+            scores[k] = nBestList.getScore(k);
+            total += scores[k];
+            for (int i = 0; i < parse.categories.size(); i++) {
+                add(supertags, pack(i, kAny, PackedDependencies.getCategoryId(parse.categories.get(i)), kAny), k);
+            }
+            final PackedDependencies deps = parse.getPackedDependencies();
+            for (int i = 0; i < deps.size(); i++) {
+                final long key = deps.getKey(i);
+                final int head = PackedDependencies.getHead(key), argument = PackedDependencies.getArgument(key),
+                        categoryId = PackedDependencies.getCategoryId(key),
+                        argNumber = PackedDependencies.getArgNumber(key);
+                add(dependencies, key, k);
+                add(dependencies, pack(head, argument, categoryId, kAny), k);
+                add(dependencies, pack(head, kAny, categoryId, argNumber), k);
+                add(dependencies, pack(head, kAny, categoryId, kAny), k);
+                add(dependencies, pack(head, argument, kAny, kAny), k);
+            }
+        }
+        totalScore = total;
+    }
+
+    private static void add(final TLongObjectHashMap<BitSet> index, final long key, final int parseId) {
+        BitSet parseIds = index.get(key);
+        if (parseIds == null) {
+            parseIds = new BitSet();
+            index.put(key, parseIds);
+        }
+        parseIds.set(parseId);
+    }
+
+    /**
+     * The returned set must not be modified.
+     */
+    private BitSet lookup(final TLongObjectHashMap<BitSet> index, final long key) {
+        final BitSet parseIds = index.get(key);
+        return parseIds == null ? empty : parseIds;
+    }
+
+    public BitSet getAllParseIds() {
+        final BitSet parseIds = new BitSet(numParses);
+        parseIds.set(0, numParses);
+        return parseIds;
+    }
+
+    public double getTotalScore() {
+        return totalScore;
+    }
+
+    public double getScore(final BitSet parseIds) {
+        double score = 0;
+        for (int k = parseIds.nextSetBit(0); k >= 0; k = parseIds.nextSetBit(k + 1)) {
+            score += scores[k];
+        }
+        return score;
+    }
+
+    /**
+     * Parses with the supertag at the word. The returned set must not be modified.
+     */
+    public BitSet getParseIdsWithSupertag(final int wordIndex, final Category category) {
+        return lookup(supertags, pack(wordIndex, kAny, PackedDependencies.getCategoryId(category), kAny));
+    }
+
+    /**
+     * Parses with a dependency between the two words in either direction, same as testing
+     * PackedDependencies.containsUndirected on every parse.
+     */
+    public BitSet getParseIdsWithAttachment(final int index1, final int index2) {
+        final BitSet parseIds = (BitSet) lookup(dependencies, pack(index1, index2, kAny, kAny)).clone();
+        parseIds.or(lookup(dependencies, pack(index2, index1, kAny, kAny)));
+        return parseIds;
+    }
+
+    /**
+     * Same as testing qa.canBeGeneratedBy on every parse in the n-best list.
+     */
+    public BitSet getParseIds(final QAStructureSurfaceForm qa) {
+        // Answers that are not single-headed need the exact set of arguments of a head, which is checked per parse.
+        if (qa.getAnswerStructures().stream().anyMatch(astr -> !astr.singleHeaded)) {
+            final BitSet parseIds = new BitSet(numParses);
+            for (int k = 0; k < numParses; k++) {
+                if (qa.canBeGeneratedBy(nBestList.getParse(k))) {
+                    parseIds.set(k);
+                }
+            }
+            return parseIds;
+        }
+        final BitSet questionParseIds = new BitSet(numParses);
+        for (QuestionStructure qstr : qa.getQuestionStructures()) {
+            final BitSet answered = new BitSet(numParses);
+            qa.getAnswerStructures().forEach(astr -> answered.or(getParseIds(qstr, astr)));
+            answered.and(lookup(supertags,
+                    pack(qstr.predicateIndex, kAny, PackedDependencies.getCategoryId(qstr.category), kAny)));
+            questionParseIds.or(answered);
+        }
+        final BitSet adjunctParseIds = new BitSet(numParses);
+        for (AnswerStructure astr : qa.getAnswerStructures()) {
+            final BitSet covered = getAllParseIds();
+            for (ResolvedDependency dep : astr.adjunctDependencies) {
+                final BitSet undirected = (BitSet) lookup(dependencies,
+                        pack(dep.getHead(), dep.getArgument(), kAny, kAny)).clone();
+                undirected.or(lookup(dependencies, pack(dep.getArgument(), dep.getHead(), kAny, kAny)));
+                covered.and(undirected);
+            }
+            adjunctParseIds.or(covered);
+        }
+        questionParseIds.and(adjunctParseIds);
+        return questionParseIds;
+    }
+
+    /**
+     * Parses where astr.filter(qstr.filter(dependencies)) is non-empty, for a single-headed answer structure.
+     */
+    private BitSet getParseIds(final QuestionStructure qstr, final AnswerStructure astr) {
+        final BitSet parseIds = new BitSet(numParses);
+        if (astr.argumentIndices.isEmpty()) {
+            return parseIds;
+        }
+        final int answerIndex = astr.argumentIndices.get(0);
+        final int categoryId = PackedDependencies.getCategoryId(qstr.category);
+        final int prepositionCategoryId = PackedDependencies.getCategoryId(prepositionCategory);
+        final int predicate = qstr.predicateIndex, preposition = qstr.targetPrepositionIndex;
+        // Question dependencies have either the predicate as head with the target category and argument number, or
+        // the target preposition as head with PP/NP.
+        if (!astr.headIsVP) {
+            if (qstr.targetArgNum > 0) {
+                parseIds.or(lookup(dependencies, pack(predicate, answerIndex, categoryId, qstr.targetArgNum)));
+            }
+            if (preposition >= 0) {
+                parseIds.or(lookup(dependencies, pack(preposition, answerIndex, prepositionCategoryId, kAny)));
+            }
+        } else {
+            if (qstr.targetArgNum > 0 && answerIndex == predicate) {
+                parseIds.or(lookup(dependencies, pack(predicate, kAny, categoryId, qstr.targetArgNum)));
+            }
+            if (preposition >= 0 && answerIndex == preposition) {
+                parseIds.or(lookup(dependencies, pack(preposition, kAny, prepositionCategoryId, kAny)));
+            }
+        }
+        return parseIds;
+    }
+}
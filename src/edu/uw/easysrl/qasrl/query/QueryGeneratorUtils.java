@@ -24,8 +24,7 @@ public class QueryGeneratorUtils {
 
     static ImmutableSet<Integer> getParseIdsForQAPair(final QAStructureSurfaceForm qaPair,
                                                       final NBestList nBestList) {
-        return IntStream.range(0, nBestList.getN())
-                .filter(i -> qaPair.canBeGeneratedBy(nBestList.getParse(i)))
+        return nBestList.getCoverageIndex().getParseIds(qaPair).stream()
                 .boxed()
                 .collect(GuavaCollectors.toImmutableSet());
     }
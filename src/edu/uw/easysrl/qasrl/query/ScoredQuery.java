@@ -78,25 +78,35 @@ public class ScoredQuery<QA extends QAStructureSurfaceForm> implements Query<QA>
     }
 
     public void computeScores(NBestList nbestList) {
-        Set<Integer> allParseIds = IntStream.range(0, nbestList.getN()).boxed().collect(Collectors.toSet());
-        double totalScore = allParseIds.stream().mapToDouble(nbestList::getScore).sum();
+        final ParseCoverageIndex coverage = nbestList.getCoverageIndex();
+        final double totalScore = coverage.getTotalScore();
+        List<BitSet> optionBits = null;
         if (optionToParseIds == null) {
-            optionToParseIds = IntStream.range(0, options.size()).boxed()
-                    .map(i -> {
-                        ImmutableSet<Integer> pids = ImmutableSet.of();
-                        if (i < qaPairSurfaceForms.size()) {
-                            pids = QueryGeneratorUtils.getParseIdsForQAPair(qaPairSurfaceForms.get(i), nbestList);
-                            allParseIds.removeAll(pids);
-                        } else if (QueryGeneratorUtils.isNAOption(options.get(i))) {
-                            pids = ImmutableSet.copyOf(allParseIds);
-                        }
-                        return pids;
-                    }).collect(GuavaCollectors.toImmutableList());
+            // Parses not covered by any QA option go to the "bad question" option.
+            final BitSet remainingParseIds = coverage.getAllParseIds();
+            optionBits = new ArrayList<>(options.size());
+            for (int i = 0; i < options.size(); i++) {
+                BitSet pids = new BitSet();
+                if (i < qaPairSurfaceForms.size()) {
+                    pids = coverage.getParseIds(qaPairSurfaceForms.get(i));
+                    remainingParseIds.andNot(pids);
+                } else if (QueryGeneratorUtils.isNAOption(options.get(i))) {
+                    pids = (BitSet) remainingParseIds.clone();
+                }
+                optionBits.add(pids);
+            }
+            optionToParseIds = optionBits.stream()
+                    .map(pids -> pids.stream().boxed().collect(GuavaCollectors.toImmutableSet()))
+                    .collect(GuavaCollectors.toImmutableList());
         }
         if (optionScores == null) {
-            optionScores = optionToParseIds.stream()
-                    .map(pids -> pids.stream().mapToDouble(nbestList::getScore).sum() / totalScore)
-                    .collect(GuavaCollectors.toImmutableList());
+            optionScores = optionBits != null ?
+                    optionBits.stream()
+                            .map(pids -> coverage.getScore(pids) / totalScore)
+                            .collect(GuavaCollectors.toImmutableList()) :
+                    optionToParseIds.stream()
+                            .map(pids -> pids.stream().mapToDouble(nbestList::getScore).sum() / totalScore)
+                            .collect(GuavaCollectors.toImmutableList());
         }
 
         promptScore = 1.0 - optionScores.get(getBadQuestionOptionId().getAsInt());
@@ -1,9 +1,13 @@
 package edu.uw.easysrl.qasrl.reparsing;
 
+import edu.uw.easysrl.qasrl.PackedDependencies;
 import edu.uw.easysrl.qasrl.Parse;
 import edu.uw.easysrl.syntax.model.Constraint;
 import edu.uw.easysrl.syntax.model.Constraint.*;
 
+import java.util.*;
+import java.util.stream.Collectors;
+
 /**
  * Created by luheng on 9/1/16.
  */
@@ -15,17 +19,62 @@ public class ConstraintHelper {
         }
         if (AttachmentConstraint.class.isInstance(constraint)) {
             AttachmentConstraint c = (AttachmentConstraint) constraint;
-            return parse.dependencies.stream()
-                    .anyMatch(dep -> (dep.getHead() == c.getHeadId() && dep.getArgument() == c.getArgId())
-                            || (dep.getHead() == c.getArgId() && dep.getArgument() == c.getHeadId()));
+            return parse.getPackedDependencies().containsUndirected(c.getHeadId(), c.getArgId());
         }
         if (DisjunctiveAttachmentConstraint.class.isInstance(constraint)) {
             DisjunctiveAttachmentConstraint c = (DisjunctiveAttachmentConstraint) constraint;
-            return parse.dependencies.stream()
-                    .anyMatch(dep -> (dep.getHead() == c.getHeadId() && c.getArgIds().contains(dep.getArgument()))
-                            || (c.getArgIds().contains(dep.getHead()) && dep.getArgument() == c.getHeadId()));
+            final PackedDependencies dependencies = parse.getPackedDependencies();
+            for (int argId : c.getArgIds()) {
+                if (dependencies.containsUndirected(c.getHeadId(), argId)) {
+                    return true;
+                }
+            }
+            return false;
         }
         return false;
     }
 
+    /**
+     * True if the parse is not penalized for the constraint: it has the attachment or supertag of a positive
+     * constraint, or does not have that of a negative one. False for unknown constraint types.
+     */
+    public static boolean isRespectedBy(Constraint constraint, Parse parse) {
+        if (!SupertagConstraint.class.isInstance(constraint) && !AttachmentConstraint.class.isInstance(constraint)
+                && !DisjunctiveAttachmentConstraint.class.isInstance(constraint)) {
+            return false;
+        }
+        return constraint.isPositive() == isSatisfiedBy(constraint, parse);
+    }
+
+    /**
+     * A string that is equal for equal sets of constraints, regardless of iteration order or object identity.
+     */
+    public static String getCanonicalKey(final Collection<Constraint> constraints) {
+        return constraints.stream()
+                .map(ConstraintHelper::getCanonicalKey)
+                .sorted()
+                .collect(Collectors.joining(";"));
+    }
+
+    public static String getCanonicalKey(final Constraint constraint) {
+        final String sign = (constraint.isPositive() ? "+" : "-") + constraint.getStrength();
+        if (SupertagConstraint.class.isInstance(constraint)) {
+            SupertagConstraint c = (SupertagConstraint) constraint;
+            return "T" + sign + ":" + c.getPredId() + ":" + c.getCategory();
+        }
+        if (AttachmentConstraint.class.isInstance(constraint)) {
+            AttachmentConstraint c = (AttachmentConstraint) constraint;
+            return "A" + sign + ":" + c.getHeadId() + ":" + c.getArgId();
+        }
+        if (DisjunctiveAttachmentConstraint.class.isInstance(constraint)) {
+            DisjunctiveAttachmentConstraint c = (DisjunctiveAttachmentConstraint) constraint;
+            final List<Integer> argIds = new ArrayList<>();
+            for (int argId : c.getArgIds()) {
+                argIds.add(argId);
+            }
+            Collections.sort(argIds);
+            return "D" + sign + ":" + c.getHeadId() + ":" + argIds;
+        }
+        return constraint.getClass().getSimpleName() + sign + ":" + constraint.toString();
+    }
 }
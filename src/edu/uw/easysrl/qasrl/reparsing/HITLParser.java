@@ -1,12 +1,16 @@
 package edu.uw.easysrl.qasrl.reparsing;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Uninterruptibles;
 import edu.uw.easysrl.main.InputReader;
 import edu.uw.easysrl.qasrl.*;
 import edu.uw.easysrl.qasrl.annotation.AnnotatedQuery;
+import edu.uw.easysrl.qasrl.annotation.QueryAlignmentIndex;
 import edu.uw.easysrl.qasrl.corpora.ParseDataLoader;
 import edu.uw.easysrl.qasrl.qg.QAPairAggregators;
+import edu.uw.easysrl.qasrl.qg.QuestionGenerationOptions;
 import edu.uw.easysrl.qasrl.qg.QuestionGenerator;
 import edu.uw.easysrl.qasrl.query.QueryFilters;
 import edu.uw.easysrl.qasrl.query.QueryGenerators;
@@ -17,11 +21,18 @@ import edu.uw.easysrl.qasrl.query.QueryPruningParameters;
 import edu.uw.easysrl.qasrl.query.ScoredQuery;
 import edu.uw.easysrl.syntax.evaluation.Results;
 import edu.uw.easysrl.qasrl.util.GuavaCollectors;
+import edu.uw.easysrl.qasrl.util.SentenceScheduler;
 import edu.uw.easysrl.syntax.model.Constraint;
 
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * Contains data and convenient interface for HITL experiments.
@@ -34,6 +45,12 @@ public class HITLParser {
     private ImmutableList<ImmutableList<InputReader.InputWord>> inputSentences;
     private ImmutableList<Parse> goldParses;
     private Map<Integer, NBestList> nbestLists;
+    // Sentences added after loading, see registerSentence.
+    private final Map<Integer, ImmutableList<String>> ingestedSentences = new ConcurrentHashMap<>();
+    private final Map<Integer, ImmutableList<InputReader.InputWord>> ingestedInputSentences =
+            new ConcurrentHashMap<>();
+    private final Map<Integer, NBestList> ingestedNBestLists = new ConcurrentHashMap<>();
+    private AtomicInteger nextSentenceId;
 
     // Query pruning parameters.
     private QueryPruningParameters queryPruningParameters = new QueryPruningParameters();
@@ -45,9 +62,46 @@ public class HITLParser {
     public void setReparsingParameters(ReparsingParameters reparsingParameters) {
         this.reparsingParameters = reparsingParameters;
     }
+    public ReparsingParameters getReparsingParameters() {
+        return reparsingParameters;
+    }
+
+    // Number of threads used by the batch query generation methods.
+    private int numThreads = 1;
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    // Reparsers that are not in use, see getReparsed. All of them share the supertags, the reparse cache and the last
+    // reparses of each sentence.
+    private final BlockingQueue<BaseCcgParser.ConstrainedCcgParser> reparsers = new LinkedBlockingQueue<>();
+    private final List<BaseCcgParser.ConstrainedCcgParser> allReparsers = new ArrayList<>();
+    private ReparseCache reparseCache = null;
+    // Held while a sentence is reparsed, so its incremental state sees one reparse at a time.
+    private final Map<Integer, Object> sentenceLocks = new ConcurrentHashMap<>();
+
+    public synchronized void setReparseCache(ReparseCache reparseCache) {
+        this.reparseCache = reparseCache;
+        allReparsers.forEach(reparser -> reparser.setReparseCache(reparseCache));
+    }
+
+    /**
+     * Number of sentences that getReparsed can reparse at the same time. Each reparser loads its own model.
+     */
+    public synchronized void setNumReparsers(int numReparsers) {
+        while (allReparsers.size() < numReparsers) {
+            final BaseCcgParser.ConstrainedCcgParser reparser = new BaseCcgParser.ConstrainedCcgParser(
+                    BaseCcgParser.modelFolder, 1 /* nbest */);
+            reparser.cacheSupertags(allReparsers.get(0));
+            reparser.shareLastReparses(allReparsers.get(0));
+            reparser.setReparseCache(reparseCache);
+            allReparsers.add(reparser);
+            reparsers.add(reparser);
+        }
+    }
 
-    private BaseCcgParser.ConstrainedCcgParser reparser;
     private ResponseSimulatorGold goldSimulator;
+    private NBestReranker reranker;
 
 
     public HITLParser(int nBest) {
@@ -63,9 +117,15 @@ public class HITLParser {
         System.out.println(String.format("Load pre-parsed %d-best lists for %d sentences from %s.",
                 nBest, nbestLists.size(), preparsedFile));
 
-        reparser = new BaseCcgParser.ConstrainedCcgParser(BaseCcgParser.modelFolder, 1 /* nbest */);
+        final BaseCcgParser.ConstrainedCcgParser reparser = new BaseCcgParser.ConstrainedCcgParser(
+                BaseCcgParser.modelFolder, 1 /* nbest */);
         reparser.cacheSupertags(parseData);
+        allReparsers.add(reparser);
+        reparsers.add(reparser);
         goldSimulator = new ResponseSimulatorGold(parseData);
+        reranker = new NBestReranker(this::getNBestList);
+        nextSentenceId = new AtomicInteger(Math.max(sentences.size(),
+                nbestLists.keySet().stream().mapToInt(id -> id + 1).max().orElse(0)));
 
         // Cache results.
         nbestLists.entrySet().forEach(e -> e.getValue().cacheResults(goldParses.get(e.getKey())));
@@ -93,10 +153,23 @@ public class HITLParser {
         System.out.println(String.format("Read %d sentences from the dev set.", sentences.size()));
         System.out.println(String.format("Load pre-parsed %d-best lists for %d sentences.", nBest, nbestLists.size()));
 
-        reparser = new BaseCcgParser.ConstrainedCcgParser(BaseCcgParser.modelFolder, 1 /* nbest */);
+        final BaseCcgParser.ConstrainedCcgParser reparser = new BaseCcgParser.ConstrainedCcgParser(
+                BaseCcgParser.modelFolder, 1 /* nbest */);
         reparser.cacheSupertags(parseData);
+        allReparsers.add(reparser);
+        reparsers.add(reparser);
         goldSimulator = new ResponseSimulatorGold(parseData);
-
+        reranker = new NBestReranker(this::getNBestList);
+        nextSentenceId = new AtomicInteger(Math.max(sentences.size(),
+                nbestLists.keySet().stream().mapToInt(id -> id + 1).max().orElse(0)));
+
+        // Lazily decoded n-best lists are evaluated on first access, so skip the stats over the whole set.
+        if (nbestLists instanceof NBestStore) {
+            if (!goldParses.isEmpty()) {
+                ((NBestStore) nbestLists).cacheResults(goldParses);
+            }
+            return;
+        }
         // Cache results, if gold parses are given.
         System.out.println(String.format("Read nBest lists for %d sentences", nbestLists.size()));
         System.out.println(String.format("Average-N:\t%.3f", nbestLists.values().stream()
@@ -115,47 +188,70 @@ public class HITLParser {
     }
 
     public ImmutableList<Integer> getAllSentenceIds() {
-        return nbestLists.keySet().stream().sorted().collect(GuavaCollectors.toImmutableList());
+        return Stream.concat(nbestLists.keySet().stream(), ingestedNBestLists.keySet().stream())
+                .sorted()
+                .collect(GuavaCollectors.toImmutableList());
     }
 
     public ImmutableList<String> getSentence(int sentenceId) {
-        return sentences.get(sentenceId);
+        return sentenceId < sentences.size() ? sentences.get(sentenceId) : ingestedSentences.get(sentenceId);
     }
 
     public ImmutableList<InputReader.InputWord> getInputSentence(int sentenceId) {
-        return inputSentences.get(sentenceId);
+        return sentenceId < inputSentences.size() ? inputSentences.get(sentenceId) :
+                ingestedInputSentences.get(sentenceId);
     }
 
     public ParseData getParseData() { return parseData; }
 
     public NBestList getNBestList(int sentenceId) {
-        return nbestLists.get(sentenceId);
+        final NBestList nBestList = nbestLists.get(sentenceId);
+        return nBestList != null ? nBestList : ingestedNBestLists.get(sentenceId);
     }
 
+    /**
+     * Null for ingested sentences, which have no gold parse.
+     */
     public Parse getGoldParse(int sentenceId) {
-        return goldParses.get(sentenceId);
+        return sentenceId < goldParses.size() ? goldParses.get(sentenceId) : null;
     }
 
     public Parse getParse(int sentenceId, int parseId) {
-        return parseId < 0 ? getGoldParse(sentenceId) : nbestLists.get(sentenceId).getParse(parseId);
+        return parseId < 0 ? getGoldParse(sentenceId) : getNBestList(sentenceId).getParse(parseId);
+    }
+
+    /**
+     * Adds a sentence that is not in the corpus, i.e. parsed online by SentenceIngester. It gets a new id, after all
+     * corpus sentences, and can be used like any other sentence from then on.
+     * @return the new sentence id.
+     */
+    public int registerSentence(ImmutableList<InputReader.InputWord> inputSentence, NBestList nBestList) {
+        final int sentenceId = nextSentenceId.getAndIncrement();
+        ingestedInputSentences.put(sentenceId, inputSentence);
+        ingestedSentences.put(sentenceId, inputSentence.stream()
+                .map(w -> w.word)
+                .collect(GuavaCollectors.toImmutableList()));
+        // Added last: sentences with an n-best list are considered ready.
+        ingestedNBestLists.put(sentenceId, nBestList);
+        return sentenceId;
     }
 
     // For older dev questions.
     public ImmutableList<ScoredQuery<QAStructureSurfaceForm>> getPronounCoreArgQueriesForSentence(int sentenceId) {
         final QueryPruningParameters queryPruningParams = new QueryPruningParameters(queryPruningParameters);
         queryPruningParams.skipPPQuestions = true;
-        final ImmutableList<String> sentence = sentences.get(sentenceId);
-        if(nbestLists.get(sentenceId) == null) {
+        final ImmutableList<String> sentence = getSentence(sentenceId);
+        if(getNBestList(sentenceId) == null) {
             return ImmutableList.of();
         }
         ImmutableList<ScoredQuery<QAStructureSurfaceForm>> copulaQueries = generateAllQueries(
-                    sentenceId, sentence, nbestLists.get(sentenceId),  false /*usePronouns */, queryPruningParams)
+                    sentenceId, sentence, getNBestList(sentenceId),  false /*usePronouns */, queryPruningParams)
                 .stream().filter(query -> {
                     final int predicateId = query.getPredicateId().getAsInt();
                     return VerbHelper.isCopulaVerb(sentence.get(predicateId));
                 }).collect(GuavaCollectors.toImmutableList());
         List<ScoredQuery<QAStructureSurfaceForm>> queryList = generateAllQueries(
-                        sentenceId, sentence, nbestLists.get(sentenceId), true /*usePronouns */, queryPruningParams)
+                        sentenceId, sentence, getNBestList(sentenceId), true /*usePronouns */, queryPruningParams)
                 .stream().filter(query -> {
                     final int predicateId = query.getPredicateId().getAsInt();
                     return !VerbHelper.isCopulaVerb(sentence.get(predicateId));
@@ -169,53 +265,70 @@ public class HITLParser {
 
     public ImmutableList<ScoredQuery<QAStructureSurfaceForm>> getNewCoreArgQueriesForSentence(int sentenceId) {
         // Skip sentences with an empty n-best list.
-        if(nbestLists.get(sentenceId) == null) {
+        if(getNBestList(sentenceId) == null) {
             return ImmutableList.of();
         }
         List<ScoredQuery<QAStructureSurfaceForm>> queryList = QuestionGenerationPipeline.coreArgQGPipeline
-                .setQueryPruningParameters(queryPruningParameters)
-                .generateAllQueries(sentenceId, nbestLists.get(sentenceId));
+                .generateAllQueries(sentenceId, getNBestList(sentenceId), queryPruningParameters);
         // Assign query ids.
         IntStream.range(0, queryList.size()).forEach(i -> queryList.get(i).setQueryId(i));
         return ImmutableList.copyOf(queryList);
     }
 
+    /**
+     * Same as getPronounCoreArgQueriesForSentence on each sentence, run on numThreads threads.
+     * @return queries aligned with sentenceIds.
+     */
+    public ImmutableList<ImmutableList<ScoredQuery<QAStructureSurfaceForm>>> getPronounCoreArgQueriesForSentences(
+            final List<Integer> sentenceIds) {
+        return generateQueriesForSentences(sentenceIds, this::getPronounCoreArgQueriesForSentence);
+    }
+
+    /**
+     * Same as getNewCoreArgQueriesForSentence on each sentence, run on numThreads threads.
+     * @return queries aligned with sentenceIds.
+     */
+    public ImmutableList<ImmutableList<ScoredQuery<QAStructureSurfaceForm>>> getNewCoreArgQueriesForSentences(
+            final List<Integer> sentenceIds) {
+        return generateQueriesForSentences(sentenceIds, this::getNewCoreArgQueriesForSentence);
+    }
+
+    private ImmutableList<ImmutableList<ScoredQuery<QAStructureSurfaceForm>>> generateQueriesForSentences(
+            final List<Integer> sentenceIds,
+            final IntFunction<ImmutableList<ScoredQuery<QAStructureSurfaceForm>>> generator) {
+        // Query generation is stateless, so all threads share this parser.
+        return ImmutableList.copyOf(SentenceScheduler.run(sentenceIds,
+                sentenceId -> getSentence(sentenceId).size(),
+                Collections.nCopies(Math.max(1, numThreads), this),
+                (hitlParser, sentenceId) -> generator.apply(sentenceId)));
+    }
+
     private static ImmutableList<ScoredQuery<QAStructureSurfaceForm>> generateAllQueries(
             final int sentenceId,
             final ImmutableList<String> sentence,
             final NBestList nBestList,
             final boolean usePronouns,
             final QueryPruningParameters queryPruningParameters) {
-        QuestionGenerator.setAskPPAttachmentQuestions(false);
-        QuestionGenerator.setIndefinitesOnly(usePronouns);
+        final QuestionGenerationOptions options = QuestionGenerationOptions.defaults
+                .withAskPPAttachmentQuestions(false)
+                .withIndefinitesOnly(usePronouns);
         try {
             return QueryFilters.scoredQueryFilter().filter(
                     QueryGenerators.checkboxQueryGenerator().generate(
                             QAPairAggregators.aggregateForMultipleChoiceQA().aggregate(
-                                    QuestionGenerator.generateAllQAPairs(sentenceId, sentence, nBestList))),
+                                    QuestionGenerator.generateAllQAPairs(sentenceId, sentence, nBestList, options))),
                     nBestList, queryPruningParameters);
         } catch (NoSuchElementException e) {
             return ImmutableList.of();
         }
     }
 
+    /**
+     * To align many annotations of the same sentence, build one QueryAlignmentIndex instead.
+     */
     public static Optional<ScoredQuery<QAStructureSurfaceForm>> getBestAlignedQuery(
             AnnotatedQuery annotation, List<ScoredQuery<QAStructureSurfaceForm>> queries) {
-        ScoredQuery<QAStructureSurfaceForm> bestAligned = null;
-        int maxNumOverlappingOptions = 2;
-        for (ScoredQuery<QAStructureSurfaceForm> query : queries) {
-            if (query.getPredicateId().getAsInt() == annotation.predicateId
-                    && query.getPrompt().equals(annotation.questionString)) {
-                int numOverlappingOptions = (int) annotation.optionStrings.stream()
-                        .filter(op -> query.getOptions().contains(op))
-                        .count();
-                if (numOverlappingOptions > maxNumOverlappingOptions) {
-                    bestAligned = query;
-                    maxNumOverlappingOptions = numOverlappingOptions;
-                }
-            }
-        }
-        return bestAligned != null ? Optional.of(bestAligned) : Optional.empty();
+        return new QueryAlignmentIndex(queries).align(annotation);
     }
 
     public ImmutableSet<Constraint> getConstraints(final ScoredQuery<QAStructureSurfaceForm> query,
@@ -224,37 +337,42 @@ public class HITLParser {
     }
 
 
+    /**
+     * Different sentences are reparsed in parallel, on up to numReparsers parsers. Calls for the same sentence wait for
+     * each other.
+     */
     public Parse getReparsed(int sentenceId, Set<Constraint> constraintSet) {
         if (constraintSet == null || constraintSet.isEmpty()) {
-            return nbestLists.get(sentenceId).getParse(0);
+            return getNBestList(sentenceId).getParse(0);
+        }
+        final Parse reparsed;
+        synchronized (sentenceLocks.computeIfAbsent(sentenceId, id -> new Object())) {
+            final BaseCcgParser.ConstrainedCcgParser reparser = Uninterruptibles.takeUninterruptibly(reparsers);
+            try {
+                reparsed = reparser.reparseIncrementally(sentenceId, getInputSentence(sentenceId), constraintSet);
+            } finally {
+                reparsers.add(reparser);
+            }
         }
-        final Parse reparsed = reparser.parseWithConstraint(sentenceId, inputSentences.get(sentenceId), constraintSet);
         if (reparsed == null) {
             System.err.println(String.format("Unable to parse sentence %d with constraints: %s", sentenceId,
                     constraintSet.stream()
                             .map(c -> c.toString(getSentence(sentenceId)))
                             .collect(Collectors.joining("\n"))));
-            return nbestLists.get(sentenceId).getParse(0);
+            return getNBestList(sentenceId).getParse(0);
         }
         return reparsed;
     }
 
+    /**
+     * Incremental: only the constraints added or removed since the last call for the sentence are applied.
+     */
     public int getRerankedParseId(int sentenceId, Set<Constraint> constraintSet) {
-        int rerankedId = 0;
-        double bestScore = Double.MIN_VALUE;
-        final NBestList nBestList = nbestLists.get(sentenceId);
-        for (int i = 0; i < nBestList.getN(); i++) {
-            final Parse parse = nBestList.getParse(i);
-            final double rerankScore = parse.score + constraintSet.stream()
-                    .filter(ev -> ConstraintHelper.isSatisfiedBy(ev, parse))
-                    .mapToDouble(ev -> ev.isPositive() ? ev.getStrength() : -ev.getStrength())
-                    .sum();
-            if (rerankScore > bestScore + 1e-6) {
-                rerankedId = i;
-                bestScore = rerankScore;
-            }
-        }
-        return rerankedId;
+        return reranker.getRerankedParseId(sentenceId, constraintSet);
+    }
+
+    public ImmutableMap<Integer, Integer> getRerankedParseIds(Map<Integer, ? extends Set<Constraint>> constraintSets) {
+        return reranker.getRerankedParseIds(constraintSets);
     }
 
     public ImmutableList<Integer> getGoldOptions(final ScoredQuery<QAStructureSurfaceForm> query) {
@@ -269,7 +387,7 @@ public class HITLParser {
     }
 
     public ImmutableList<Integer> getOracleOptions(final ScoredQuery<QAStructureSurfaceForm> query) {
-        final int oracleParseId = nbestLists.get(query.getSentenceId()).getOracleId();
+        final int oracleParseId = getNBestList(query.getSentenceId()).getOracleId();
         return IntStream.range(0, query.getOptions().size())
                 .filter(i -> query.getOptionToParseIds().get(i).contains(oracleParseId))
                 .boxed()
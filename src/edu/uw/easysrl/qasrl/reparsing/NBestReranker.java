@@ -0,0 +1,186 @@
+package edu.uw.easysrl.qasrl.reparsing;
+
+import com.google.common.collect.ImmutableMap;
+import edu.uw.easysrl.qasrl.NBestList;
+import edu.uw.easysrl.qasrl.query.ParseCoverageIndex;
+import edu.uw.easysrl.syntax.model.Constraint;
+import edu.uw.easysrl.syntax.model.Constraint.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+/**
+ * Reranks n-best lists with constraints from answered queries. For each sentence it keeps the parses satisfying each
+ * constraint (one column of the parse x constraint matrix, as a bitset) together with the reranked scores, so adding or
+ * removing a constraint costs O(n) instead of checking every constraint against every parse again.
+ * The satisfying parses are looked up in the coverage index of the n-best list.
+ *
+ * Sentences are independent: different sentences can be updated from different threads.
+ */
+public class NBestReranker {
+    private final IntFunction<NBestList> nbestLists;
+    private final Map<Integer, SentenceState> states = new ConcurrentHashMap<>();
+
+    private static class SentenceState {
+        final double[] scores;
+        // Canonical constraint key -> parses satisfying the constraint, the score it adds to each of them, and the
+        // number of constraints with the key.
+        final Map<String, BitSet> satisfyingParses = new HashMap<>();
+        final Map<String, Double> constraintScores = new HashMap<>();
+        final Map<String, Integer> constraintCounts = new HashMap<>();
+
+        SentenceState(final NBestList nBestList) {
+            scores = new double[nBestList.getN()];
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = nBestList.getParse(i).score;
+            }
+        }
+
+        void add(final String key, final BitSet parseIds, final double score) {
+            satisfyingParses.put(key, parseIds);
+            constraintScores.put(key, score);
+            constraintCounts.put(key, 0);
+        }
+
+        /**
+         * Sets the number of constraints with the key, adding or subtracting the difference to the satisfying parses.
+         */
+        void setCount(final String key, final int count) {
+            final BitSet parseIds = satisfyingParses.get(key);
+            final double delta = (count - constraintCounts.get(key)) * constraintScores.get(key);
+            for (int i = parseIds.nextSetBit(0); i >= 0; i = parseIds.nextSetBit(i + 1)) {
+                scores[i] += delta;
+            }
+            if (count == 0) {
+                satisfyingParses.remove(key);
+                constraintScores.remove(key);
+                constraintCounts.remove(key);
+            } else {
+                constraintCounts.put(key, count);
+            }
+        }
+    }
+
+    /**
+     * @param nbestLists: sentence id -> n-best list.
+     */
+    public NBestReranker(final IntFunction<NBestList> nbestLists) {
+        this.nbestLists = nbestLists;
+    }
+
+    private SentenceState getState(final int sentenceId) {
+        return states.computeIfAbsent(sentenceId, id -> new SentenceState(nbestLists.apply(id)));
+    }
+
+    /**
+     * Adds a constraint to the sentence. Constraints are not deduplicated: equal constraints (same canonical key, see
+     * ConstraintHelper) each add their strength, as when scoring every element of a constraint set.
+     */
+    public void addConstraint(final int sentenceId, final Constraint constraint) {
+        final SentenceState state = getState(sentenceId);
+        final String key = ConstraintHelper.getCanonicalKey(constraint);
+        synchronized (state) {
+            addKey(sentenceId, state, key, constraint);
+            state.setCount(key, state.constraintCounts.get(key) + 1);
+        }
+    }
+
+    private void addKey(final int sentenceId, final SentenceState state, final String key,
+                        final Constraint constraint) {
+        if (!state.satisfyingParses.containsKey(key)) {
+            state.add(key, getSatisfyingParses(nbestLists.apply(sentenceId), constraint),
+                    constraint.isPositive() ? constraint.getStrength() : -constraint.getStrength());
+        }
+    }
+
+    /**
+     * Makes the constraints of the sentence equal to the given collection. Only the difference to the previous
+     * constraints is applied, so the cost is O(n) per added or removed canonical key, or changed count of one.
+     */
+    public void setConstraints(final int sentenceId, final Collection<Constraint> constraintSet) {
+        final SentenceState state = getState(sentenceId);
+        final Map<String, Constraint> constraints = new HashMap<>();
+        final Map<String, Integer> counts = new HashMap<>();
+        constraintSet.forEach(c -> {
+            final String key = ConstraintHelper.getCanonicalKey(c);
+            constraints.put(key, c);
+            counts.merge(key, 1, Integer::sum);
+        });
+        synchronized (state) {
+            new ArrayList<>(state.satisfyingParses.keySet()).stream()
+                    .filter(key -> !constraints.containsKey(key))
+                    .forEach(key -> state.setCount(key, 0));
+            constraints.forEach((key, constraint) -> {
+                addKey(sentenceId, state, key, constraint);
+                if (state.constraintCounts.get(key) != counts.get(key).intValue()) {
+                    state.setCount(key, counts.get(key));
+                }
+            });
+        }
+    }
+
+    /**
+     * The parse with the highest score: the parser score plus (minus) the strength of each positive (negative)
+     * constraint the parse satisfies.
+     */
+    public int getRerankedParseId(final int sentenceId) {
+        final SentenceState state = getState(sentenceId);
+        synchronized (state) {
+            int rerankedId = 0;
+            double bestScore = Double.MIN_VALUE;
+            for (int i = 0; i < state.scores.length; i++) {
+                if (state.scores[i] > bestScore + 1e-6) {
+                    rerankedId = i;
+                    bestScore = state.scores[i];
+                }
+            }
+            return rerankedId;
+        }
+    }
+
+    public int getRerankedParseId(final int sentenceId, final Collection<Constraint> constraintSet) {
+        final SentenceState state = getState(sentenceId);
+        synchronized (state) {
+            setConstraints(sentenceId, constraintSet);
+            return getRerankedParseId(sentenceId);
+        }
+    }
+
+    /**
+     * Reranks many sentences at once, in parallel.
+     * @param constraintSets: sentence id -> all constraints of the sentence.
+     * @return sentence id -> reranked parse id.
+     */
+    public ImmutableMap<Integer, Integer> getRerankedParseIds(
+            final Map<Integer, ? extends Collection<Constraint>> constraintSets) {
+        final Map<Integer, Integer> rerankedIds = new ConcurrentHashMap<>();
+        constraintSets.entrySet().parallelStream()
+                .forEach(e -> rerankedIds.put(e.getKey(), getRerankedParseId(e.getKey(), e.getValue())));
+        return ImmutableMap.copyOf(new TreeMap<>(rerankedIds));
+    }
+
+    /**
+     * Same as testing ConstraintHelper.isSatisfiedBy on every parse.
+     */
+    private static BitSet getSatisfyingParses(final NBestList nBestList, final Constraint constraint) {
+        final ParseCoverageIndex index = nBestList.getCoverageIndex();
+        if (SupertagConstraint.class.isInstance(constraint)) {
+            SupertagConstraint c = (SupertagConstraint) constraint;
+            return (BitSet) index.getParseIdsWithSupertag(c.getPredId(), c.getCategory()).clone();
+        }
+        if (AttachmentConstraint.class.isInstance(constraint)) {
+            AttachmentConstraint c = (AttachmentConstraint) constraint;
+            return index.getParseIdsWithAttachment(c.getHeadId(), c.getArgId());
+        }
+        if (DisjunctiveAttachmentConstraint.class.isInstance(constraint)) {
+            DisjunctiveAttachmentConstraint c = (DisjunctiveAttachmentConstraint) constraint;
+            final BitSet parseIds = new BitSet();
+            for (int argId : c.getArgIds()) {
+                parseIds.or(index.getParseIdsWithAttachment(c.getHeadId(), argId));
+            }
+            return parseIds;
+        }
+        return new BitSet();
+    }
+}
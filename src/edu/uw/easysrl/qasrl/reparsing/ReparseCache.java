@@ -0,0 +1,143 @@
+package edu.uw.easysrl.qasrl.reparsing;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import edu.uw.easysrl.main.InputReader;
+import edu.uw.easysrl.qasrl.Parse;
+import edu.uw.easysrl.qasrl.util.CacheFiles;
+import edu.uw.easysrl.syntax.model.Constraint;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Results of constrained reparsing, keyed on (parser config, sentence, canonicalized constraint set).
+ * Entries are kept in a bounded in-memory tier (least recently used entries are evicted first) and, if a directory is
+ * given, also written to disk with one file per entry, so repeated experiment runs don't reparse at all.
+ * Failed reparses (null) are cached as well. Safe to share between threads.
+ * Sentence ids are only unique within a corpus, so a cache (and its directory) is tied to a corpus name.
+ */
+public class ReparseCache {
+    private final String corpusName;
+    private final Cache<String, Optional<Parse>> memoryCache;
+    private final File diskDirectory;
+    private final AtomicInteger numMemoryHits = new AtomicInteger(0),
+                                numDiskHits = new AtomicInteger(0),
+                                numMisses = new AtomicInteger(0);
+
+    /**
+     * @param corpusName: i.e. "ccg-dev", becomes part of all keys.
+     * @param maxMemoryEntries: size of the in-memory tier.
+     * @param diskDirectory: directory of the on-disk tier, or null/empty for memory only.
+     */
+    public ReparseCache(final String corpusName, final int maxMemoryEntries, final String diskDirectory) {
+        this.corpusName = corpusName;
+        memoryCache = CacheBuilder.newBuilder()
+                .maximumSize(maxMemoryEntries)
+                .build();
+        if (diskDirectory == null || diskDirectory.isEmpty()) {
+            this.diskDirectory = null;
+        } else {
+            this.diskDirectory = new File(diskDirectory);
+            if (!this.diskDirectory.isDirectory() && !this.diskDirectory.mkdirs()) {
+                throw new IllegalArgumentException("Unable to create reparse cache directory: " + diskDirectory);
+            }
+        }
+    }
+
+    /**
+     * The key includes a hash of the words, since ids of sentences added online are only unique within one run.
+     */
+    public String getKey(final String parserConfig, final int sentenceId, final List<InputReader.InputWord> sentence,
+                         final Collection<Constraint> constraints) {
+        final Hasher words = Hashing.murmur3_128().newHasher();
+        sentence.forEach(w -> words.putString(w.word, StandardCharsets.UTF_8).putByte((byte) 0));
+        return corpusName + "|" + parserConfig + "|" + sentenceId + ":" + words.hash() + "|"
+                + ConstraintHelper.getCanonicalKey(constraints);
+    }
+
+    /**
+     * Returns the cached parse for the key, or runs the parser and caches its result.
+     */
+    public Parse get(final String key, final Supplier<Parse> parser) {
+        final Optional<Parse> cached = memoryCache.getIfPresent(key);
+        if (cached != null) {
+            numMemoryHits.incrementAndGet();
+            return cached.orElse(null);
+        }
+        try {
+            // Concurrent requests for the same key wait for a single load.
+            return memoryCache.get(key, () -> {
+                final Optional<Parse> stored = readFromDisk(key);
+                if (stored != null) {
+                    numDiskHits.incrementAndGet();
+                    return stored;
+                }
+                numMisses.incrementAndGet();
+                final Optional<Parse> parsed = Optional.ofNullable(parser.get());
+                writeToDisk(key, parsed);
+                return parsed;
+            }).orElse(null);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    public int getNumHits() {
+        return numMemoryHits.get() + numDiskHits.get();
+    }
+
+    public int getNumMisses() {
+        return numMisses.get();
+    }
+
+    private File getFile(final String key) {
+        return new File(diskDirectory, Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString() + ".parse");
+    }
+
+    /**
+     * @return null if the key is not on disk.
+     */
+    private Optional<Parse> readFromDisk(final String key) {
+        if (diskDirectory == null) {
+            return null;
+        }
+        return CacheFiles.read(getFile(key), "reparse cache file", inputStream -> {
+            final ObjectInputStream in = new ObjectInputStream(inputStream);
+            // Guards against hash collisions.
+            if (!key.equals(in.readUTF())) {
+                return null;
+            }
+            return in.readBoolean() ? Optional.of((Parse) in.readObject()) : Optional.empty();
+        });
+    }
+
+    private void writeToDisk(final String key, final Optional<Parse> parse) {
+        if (diskDirectory == null) {
+            return;
+        }
+        CacheFiles.write(getFile(key), "reparse cache file", outputStream -> {
+            final ObjectOutputStream out = new ObjectOutputStream(outputStream);
+            out.writeUTF(key);
+            out.writeBoolean(parse.isPresent());
+            if (parse.isPresent()) {
+                out.writeObject(parse.get());
+            }
+            out.flush();
+        });
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Reparse cache: %d memory hits, %d disk hits, %d misses.", numMemoryHits.get(),
+                numDiskHits.get(), numMisses.get());
+    }
+}
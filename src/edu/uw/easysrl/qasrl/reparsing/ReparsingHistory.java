@@ -83,8 +83,8 @@ public class ReparsingHistory {
         final Parse reparsed = hitlParser.getReparsed(sentenceId, allConstraints);
         final Parse oracleReparsed = hitlParser.getReparsed(sentenceId, allOracleConstraints);
         final int reranked = hitlParser.getRerankedParseId(sentenceId, allConstraints);
-        final Results reparsingResult = CcgEvaluation.evaluate(reparsed.dependencies, hitlParser.getGoldParse(sentenceId).dependencies);
-        final Results oracleResult = CcgEvaluation.evaluate(oracleReparsed.dependencies, hitlParser.getGoldParse(sentenceId).dependencies);
+        final Results reparsingResult = CcgEvaluation.evaluate(reparsed, hitlParser.getGoldParse(sentenceId));
+        final Results oracleResult = CcgEvaluation.evaluate(oracleReparsed, hitlParser.getGoldParse(sentenceId));
         reparses.get(sentenceId).add(reparsed);
         oracleReparses.get(sentenceId).add(oracleReparsed);
         rerankedParseIds.get(sentenceId).add(reranked);
@@ -238,8 +238,8 @@ public class ReparsingHistory {
 
     public ImmutableList<Integer> getModifiedSentences(final Map<Integer, List<Parse>> parsesMap) {
         return sentenceIds.stream()
-                .filter(sid -> CcgEvaluation.evaluate(getLast(parsesMap.get(sid)).dependencies,
-                        parsesMap.get(sid).get(0).dependencies).getF1() < 1.0 - 1e-6)
+                .filter(sid -> CcgEvaluation.evaluate(getLast(parsesMap.get(sid)),
+                        parsesMap.get(sid).get(0)).getF1() < 1.0 - 1e-6)
                 .collect(GuavaCollectors.toImmutableList());
     }
 
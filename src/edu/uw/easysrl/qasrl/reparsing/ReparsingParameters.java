@@ -33,15 +33,49 @@ public class ReparsingParameters {
     public ReparsingParameters() {
     }
 
+    /**
+     * Fails on unknown options. To mix these with other options, add this to their CmdLineParser with ClassParser.
+     */
     public ReparsingParameters(final String[] args) {
         CmdLineParser parser = new CmdLineParser(this);
         try {
             parser.parseArgument(args);
         } catch (CmdLineException e) {
-            // Simply skip invalid options.
+            throw new IllegalArgumentException("Invalid reparsing options: " + String.join(" ", args), e);
         }
     }
 
+    public ReparsingParameters(final ReparsingParameters other) {
+        this.fixPronouns = other.fixPronouns;
+        this.fixSubspans = other.fixSubspans;
+        this.positiveConstraintMinAgreement = other.positiveConstraintMinAgreement;
+        this.negativeConstraintMaxAgreement = other.negativeConstraintMaxAgreement;
+        this.positiveConstraintPenalty = other.positiveConstraintPenalty;
+        this.negativeConstraintPenalty = other.negativeConstraintPenalty;
+        this.supertagPenalty = other.supertagPenalty;
+    }
+
+    /**
+     * A copy of these parameters with the given command line options applied, i.e. {"-pos_threshold", "2"}.
+     */
+    public ReparsingParameters withOptions(final String... options) {
+        final ReparsingParameters parameters = new ReparsingParameters(this);
+        try {
+            new CmdLineParser(parameters).parseArgument(options);
+        } catch (CmdLineException e) {
+            throw new IllegalArgumentException("Invalid reparsing options: " + String.join(" ", options), e);
+        }
+        return parameters;
+    }
+
+    public int getPositiveConstraintMinAgreement() {
+        return positiveConstraintMinAgreement;
+    }
+
+    public int getNegativeConstraintMaxAgreement() {
+        return negativeConstraintMaxAgreement;
+    }
+
     public String toString() {
         return new StringBuilder()
                 .append("\nFix pronouns=\t").append(fixPronouns)
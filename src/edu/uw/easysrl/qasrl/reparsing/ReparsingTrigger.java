@@ -0,0 +1,219 @@
+package edu.uw.easysrl.qasrl.reparsing;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Table;
+import edu.uw.easysrl.qasrl.Parse;
+import edu.uw.easysrl.qasrl.annotation.AlignedAnnotation;
+import edu.uw.easysrl.qasrl.annotation.AnnotationAggregator;
+import edu.uw.easysrl.qasrl.annotation.AnnotationAggregator.Agreement;
+import edu.uw.easysrl.qasrl.annotation.AnnotationAggregator.QueryKey;
+import edu.uw.easysrl.qasrl.qg.surfaceform.QAStructureSurfaceForm;
+import edu.uw.easysrl.qasrl.query.ScoredQuery;
+import edu.uw.easysrl.syntax.model.Constraint;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reparses a sentence as soon as one of its queries has enough responses, instead of waiting for all responses of
+ * all queries. A query is stable once no further responses, up to numResponsesPerQuery in total, can change the
+ * constraints ReparsingHelper extracts from it. Its constraints are then added to those of its sentence, and the
+ * sentence is reparsed in the background; later responses to that query are ignored, so the remaining judgments can
+ * be cancelled.
+ *
+ * Responses are counted by an AnnotationAggregator, and stability is decided from its agreement on each option, so
+ * the thresholds live in one place. The trigger listens to the aggregator: records added to it directly, i.e. from a
+ * live crowdsourcing job, also trigger reparses, once their query is registered with addQuery.
+ *
+ * Reparses of the same sentence are coalesced: a reparse that has not started yet picks up all constraints so far.
+ */
+public class ReparsingTrigger implements AnnotationAggregator.AgreementListener {
+    public interface Listener {
+        /**
+         * Called on the thread that added the last response, with the aggregator locked.
+         */
+        default void onQueryStable(int sentenceId, ScoredQuery<QAStructureSurfaceForm> query,
+                                   ImmutableSet<Constraint> constraints) {
+        }
+
+        /**
+         * Called on the reparsing thread.
+         */
+        default void onReparsed(int sentenceId, Parse parse, ImmutableSet<Constraint> constraints) {
+        }
+    }
+
+    private final HITLParser parser;
+    private final AnnotationAggregator aggregator;
+    private final int numResponsesPerQuery;
+    private final ExecutorService reparseExecutor = Executors.newSingleThreadExecutor();
+    private final List<Listener> listeners = new ArrayList<>();
+    // Queries that can trigger a reparse.
+    private final Map<QueryKey, ScoredQuery<QAStructureSurfaceForm>> queries = new HashMap<>();
+    private final Set<QueryKey> stableQueries = new HashSet<>();
+    // Sentence id -> query id -> constraints of the stable queries.
+    private final Map<Integer, Map<Integer, ImmutableSet<Constraint>>> stableConstraints = new HashMap<>();
+    private final Set<Integer> pendingReparses = new HashSet<>();
+    // Number of responses added through addResponse, for naming their annotators.
+    private int numResponses = 0;
+
+    public ReparsingTrigger(final HITLParser parser, final int numResponsesPerQuery) {
+        this(parser, new AnnotationAggregator(parser.getReparsingParameters()), numResponsesPerQuery);
+    }
+
+    /**
+     * @param aggregator: must use the reparsing parameters of the parser.
+     */
+    public ReparsingTrigger(final HITLParser parser, final AnnotationAggregator aggregator,
+                            final int numResponsesPerQuery) {
+        this.parser = parser;
+        this.aggregator = aggregator;
+        this.numResponsesPerQuery = numResponsesPerQuery;
+        aggregator.addListener(this);
+    }
+
+    public synchronized void addListener(final Listener listener) {
+        listeners.add(listener);
+    }
+
+    public AnnotationAggregator getAggregator() {
+        return aggregator;
+    }
+
+    /**
+     * Lets the responses to the query trigger a reparse.
+     */
+    public synchronized void addQuery(final ScoredQuery<QAStructureSurfaceForm> query) {
+        queries.putIfAbsent(new QueryKey(query), query);
+    }
+
+    /**
+     * Adds the response of an anonymous annotator.
+     * @return true if the query is stable, i.e. no more responses are needed for it.
+     */
+    public boolean addResponse(final ScoredQuery<QAStructureSurfaceForm> query, final ImmutableList<Integer> response) {
+        final String annotatorId;
+        synchronized (this) {
+            annotatorId = "response-" + numResponses++;
+        }
+        return addResponse(query, annotatorId, response);
+    }
+
+    /**
+     * @return true if the query is stable, i.e. no more responses are needed for it.
+     */
+    public boolean addResponse(final ScoredQuery<QAStructureSurfaceForm> query, final String annotatorId,
+                               final ImmutableList<Integer> response) {
+        final QueryKey key = new QueryKey(query);
+        synchronized (this) {
+            queries.putIfAbsent(key, query);
+            if (stableQueries.contains(key)) {
+                return true;
+            }
+        }
+        // Stability is updated by onAnnotationAdded.
+        aggregator.add(query, annotatorId, response);
+        return isStable(key);
+    }
+
+    @Override
+    public void onAnnotationAdded(final QueryKey key, final AlignedAnnotation annotation) {
+        final ScoredQuery<QAStructureSurfaceForm> query;
+        synchronized (this) {
+            query = queries.get(key);
+            if (query == null || stableQueries.contains(key)) {
+                return;
+            }
+        }
+        final int numRemaining = numResponsesPerQuery - aggregator.getNumAnnotators(key);
+        if (!isStable(query, key, aggregator, numRemaining, parser.getReparsingParameters())) {
+            return;
+        }
+        final int sentenceId = key.sentenceId;
+        final ImmutableSet<Constraint> constraints = parser.getConstraints(query,
+                ImmutableList.copyOf(annotation.annotatorToAnswerIds.values()));
+        final List<Listener> currentListeners;
+        synchronized (this) {
+            stableQueries.add(key);
+            stableConstraints.computeIfAbsent(sentenceId, id -> new HashMap<>()).put(key.queryId, constraints);
+            if (!constraints.isEmpty() && pendingReparses.add(sentenceId)) {
+                reparseExecutor.execute(() -> reparse(sentenceId));
+            }
+            currentListeners = new ArrayList<>(listeners);
+        }
+        currentListeners.forEach(listener -> listener.onQueryStable(sentenceId, query, constraints));
+    }
+
+    private synchronized boolean isStable(final QueryKey key) {
+        return stableQueries.contains(key);
+    }
+
+    public synchronized boolean isStable(final int sentenceId, final int queryId) {
+        return stableConstraints.getOrDefault(sentenceId, Collections.emptyMap()).containsKey(queryId);
+    }
+
+    /**
+     * @return constraints of all stable queries of the sentence.
+     */
+    public synchronized ImmutableSet<Constraint> getConstraints(final int sentenceId) {
+        final ImmutableSet.Builder<Constraint> constraints = ImmutableSet.builder();
+        stableConstraints.getOrDefault(sentenceId, Collections.emptyMap()).values().forEach(constraints::addAll);
+        return constraints.build();
+    }
+
+    private void reparse(final int sentenceId) {
+        final ImmutableSet<Constraint> constraints;
+        final List<Listener> currentListeners;
+        synchronized (this) {
+            // Queries that become stable from now on schedule another reparse.
+            pendingReparses.remove(sentenceId);
+            constraints = getConstraints(sentenceId);
+            currentListeners = new ArrayList<>(listeners);
+        }
+        final Parse parse = parser.getReparsed(sentenceId, constraints);
+        currentListeners.forEach(listener -> listener.onReparsed(sentenceId, parse, constraints));
+    }
+
+    /**
+     * Whether the constraints of the query are decided, with numRemaining responses still to come. This is the case
+     * when annotators already agree that it is a bad question, or when no numRemaining more votes can change the
+     * agreement on any option (see AnnotationAggregator.getAgreement). With heuristics that merge related options
+     * (pronouns, subspans), the constraints depend on the exact votes, so such queries wait for all responses.
+     */
+    public static boolean isStable(final ScoredQuery<QAStructureSurfaceForm> query, final QueryKey key,
+                                   final AnnotationAggregator aggregator, final int numRemaining,
+                                   final ReparsingParameters config) {
+        if (numRemaining <= 0) {
+            return true;
+        }
+        if (query.getBadQuestionOptionId().isPresent()) {
+            final int badQuestionOptionId = query.getBadQuestionOptionId().getAsInt();
+            if (aggregator.getAgreement(key, badQuestionOptionId) == Agreement.POSITIVE) {
+                return true;
+            }
+            if (aggregator.getAgreement(key, badQuestionOptionId, numRemaining) == Agreement.POSITIVE) {
+                return false;
+            }
+        }
+        if (config.fixPronouns || config.fixSubspans) {
+            final Table<Integer, Integer, String> relations = HeuristicHelper.getOptionRelations(query);
+            if (relations.values().stream().anyMatch(rel -> (config.fixPronouns && rel.startsWith("pronoun"))
+                    || (config.fixSubspans && rel.equals("subspan")))) {
+                return false;
+            }
+        }
+        final int numQAs = query.getQAPairSurfaceForms().size();
+        for (int i = 0; i < numQAs; i++) {
+            if (aggregator.getAgreement(key, i) != aggregator.getAgreement(key, i, numRemaining)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void shutdown() {
+        reparseExecutor.shutdownNow();
+    }
+}
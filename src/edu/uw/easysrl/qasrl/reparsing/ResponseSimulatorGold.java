@@ -3,9 +3,11 @@ package edu.uw.easysrl.qasrl.reparsing;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import edu.uw.easysrl.dependencies.ResolvedDependency;
+import edu.uw.easysrl.qasrl.PackedDependencies;
 import edu.uw.easysrl.qasrl.Parse;
 import edu.uw.easysrl.qasrl.ParseData;
 import edu.uw.easysrl.qasrl.qg.surfaceform.QAStructureSurfaceForm;
+import edu.uw.easysrl.qasrl.qg.syntax.QuestionStructure;
 import edu.uw.easysrl.qasrl.query.QueryType;
 import edu.uw.easysrl.qasrl.query.ScoredQuery;
 import edu.uw.easysrl.qasrl.util.GuavaCollectors;
@@ -41,14 +43,7 @@ public class ResponseSimulatorGold implements ResponseSimulator {
              qaOptions.stream().flatMap(qa -> qa.getQuestionStructures().stream())
                      .forEach(qstr -> {
                          // FIXME: this doesn't work for the radiobutton version.
-                         final ImmutableSet<Integer> goldArgIds = goldParse.dependencies.stream()
-                                 .filter(dep -> (dep.getHead() == qstr.predicateIndex
-                                                    && dep.getCategory() == qstr.category
-                                                    && dep.getArgNumber() == qstr.targetArgNum)
-                                         || dep.getHead() == qstr.targetPrepositionIndex)
-                                 .map(ResolvedDependency::getArgument)
-                                 .distinct()
-                                 .collect(GuavaCollectors.toImmutableSet());
+                         final ImmutableSet<Integer> goldArgIds = getGoldArgIds(goldParse, qstr);
                          if (goldArgIds.size() > 0) {
                              nonEmptyGoldArgs.getAndSet(true);
                          }
@@ -86,4 +81,28 @@ public class ResponseSimulatorGold implements ResponseSimulator {
          }
          return chosenOptions.stream().sorted().collect(GuavaCollectors.toImmutableList());
      }
+
+    /**
+     * Arguments of gold dependencies matching the question structure, or attached to its preposition.
+     */
+    private static ImmutableSet<Integer> getGoldArgIds(final Parse goldParse, final QuestionStructure qstr) {
+        final PackedDependencies goldDependencies = goldParse.getPackedDependencies();
+        final ImmutableSet.Builder<Integer> goldArgIds = ImmutableSet.builder();
+        final int categoryId = PackedDependencies.getCategoryId(qstr.category);
+        for (int i = goldDependencies.headStart(qstr.predicateIndex);
+             i < goldDependencies.headEnd(qstr.predicateIndex); i++) {
+            final long key = goldDependencies.getKey(i);
+            if (PackedDependencies.getCategoryId(key) == categoryId
+                    && PackedDependencies.getArgNumber(key) == qstr.targetArgNum) {
+                goldArgIds.add(PackedDependencies.getArgument(key));
+            }
+        }
+        if (qstr.targetPrepositionIndex >= 0) {
+            for (int i = goldDependencies.headStart(qstr.targetPrepositionIndex);
+                 i < goldDependencies.headEnd(qstr.targetPrepositionIndex); i++) {
+                goldArgIds.add(PackedDependencies.getArgument(goldDependencies.getKey(i)));
+            }
+        }
+        return goldArgIds.build();
+    }
 }
@@ -0,0 +1,108 @@
+package edu.uw.easysrl.qasrl.reparsing;
+
+import com.google.common.collect.ImmutableList;
+import edu.uw.easysrl.main.InputReader;
+import edu.uw.easysrl.qasrl.BaseCcgParser;
+import edu.uw.easysrl.qasrl.NBestList;
+import edu.uw.easysrl.qasrl.Parse;
+import edu.uw.easysrl.syntax.tagger.POSTagger;
+import edu.uw.easysrl.util.Util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+/**
+ * Adds raw tokenized sentences to a HITLParser, without a precomputed n-best file: each sentence is POS-tagged,
+ * supertagged and n-best parsed on demand, then registered under a new id, so its queries can be generated right away.
+ *
+ * Parsing runs on a fixed number of parsers, each confined to one thread at a time. At most maxQueuedSentences
+ * sentences wait for a parser: submit() blocks when the queue is full, trySubmit() gives up instead.
+ */
+public class SentenceIngester {
+    private final HITLParser hitlParser;
+    private final POSTagger posTagger;
+    private final BlockingQueue<BaseCcgParser.AStarParser> parsers;
+    private final ExecutorService executor;
+    // Permits for sentences that are queued or being parsed.
+    private final Semaphore capacity;
+
+    public SentenceIngester(final HITLParser hitlParser, final int nBest, final int numParsers,
+                            final int maxQueuedSentences) {
+        this.hitlParser = hitlParser;
+        posTagger = POSTagger.getStanfordTagger(Util.getFile(BaseCcgParser.modelFolder + "/posTagger"));
+        parsers = new ArrayBlockingQueue<>(numParsers);
+        for (int i = 0; i < numParsers; i++) {
+            parsers.add(new BaseCcgParser.AStarParser(BaseCcgParser.modelFolder, nBest, 1e-6, 1e-6, 250000, 70));
+        }
+        executor = Executors.newFixedThreadPool(numParsers);
+        capacity = new Semaphore(numParsers + maxQueuedSentences);
+    }
+
+    /**
+     * Waits while the parse queue is full.
+     * @return the id of the new sentence, once it is parsed. Fails with NoSuchElementException if it can't be parsed.
+     */
+    public CompletableFuture<Integer> submit(final List<String> tokens) throws InterruptedException {
+        capacity.acquire();
+        return schedule(tokens);
+    }
+
+    /**
+     * @return empty if the parse queue is full.
+     */
+    public Optional<CompletableFuture<Integer>> trySubmit(final List<String> tokens) {
+        return capacity.tryAcquire() ? Optional.of(schedule(tokens)) : Optional.empty();
+    }
+
+    public int getNumAvailablePermits() {
+        return capacity.availablePermits();
+    }
+
+    private CompletableFuture<Integer> schedule(final List<String> tokens) {
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(ingest(tokens));
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                } finally {
+                    capacity.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            capacity.release();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private int ingest(final List<String> tokens) throws InterruptedException {
+        if (tokens.isEmpty()) {
+            throw new IllegalArgumentException("Empty sentence.");
+        }
+        final List<InputReader.InputWord> inputs = tokens.stream()
+                .map(token -> new InputReader.InputWord(token, "", ""))
+                .collect(Collectors.toList());
+        final ImmutableList<InputReader.InputWord> taggedInputs;
+        synchronized (posTagger) {
+            taggedInputs = ImmutableList.copyOf(posTagger.tag(inputs));
+        }
+        final BaseCcgParser.AStarParser parser = parsers.take();
+        final List<Parse> parses;
+        try {
+            parses = parser.parseNBest(taggedInputs);
+        } finally {
+            parsers.put(parser);
+        }
+        if (parses == null || parses.isEmpty()) {
+            throw new NoSuchElementException("Unable to parse: " + String.join(" ", tokens));
+        }
+        return hitlParser.registerSentence(taggedInputs, new NBestList(ImmutableList.copyOf(parses)));
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,534 @@
+package edu.uw.easysrl.qasrl.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import edu.uw.easysrl.dependencies.ResolvedDependency;
+import edu.uw.easysrl.qasrl.NBestList;
+import edu.uw.easysrl.qasrl.Parse;
+import edu.uw.easysrl.qasrl.ParseData;
+import edu.uw.easysrl.qasrl.corpora.ParseDataLoader;
+import edu.uw.easysrl.qasrl.qg.surfaceform.QAStructureSurfaceForm;
+import edu.uw.easysrl.qasrl.query.ScoredQuery;
+import edu.uw.easysrl.qasrl.reparsing.ConstraintHelper;
+import edu.uw.easysrl.qasrl.reparsing.HITLParser;
+import edu.uw.easysrl.qasrl.reparsing.ReparsingParameters;
+import edu.uw.easysrl.qasrl.reparsing.ReparsingTrigger;
+import edu.uw.easysrl.qasrl.reparsing.SentenceIngester;
+import edu.uw.easysrl.qasrl.util.JsonUtil;
+import edu.uw.easysrl.qasrl.util.PropertyUtil;
+import edu.uw.easysrl.syntax.model.Constraint;
+import org.kohsuke.args4j.ClassParser;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Resident HITL parsing service: loads the model, corpus and n-best lists once and serves annotation sessions over a
+ * local HTTP/JSON API. Requests are handled concurrently; reparsing is serialized inside HITLParser.
+ *
+ *   POST /sentences   {"sentenceId": 12}                                   starts a session, generates the queries
+ *   GET  /queries?sentence=12                                              queries of the session
+ *   POST /responses   {"sentenceId": 12, "queryId": 3, "options": [0, 2]} records one annotator's answer
+ *   GET  /reparse?sentence=12                                              reparse with all constraints so far
+ *   GET  /reparse?sentence=12&background=1                                 latest background reparse, see below
+ *   POST /ingest      {"tokens": ["A", "new", "sentence", "."]}            queues new text for parsing, returns a ticket
+ *   GET  /ingest?ticket=7                                                  status 202 while parsing, then the session
+ *
+ * If a ReparsingTrigger is set, the sentence is also reparsed in the background as soon as a query has enough
+ * responses, and the result of /responses tells whether the query still needs more ("stable": true if not). The
+ * latest background reparse of a session, with the constraints of its stable queries, is kept: /reparse returns it
+ * with background=1 (status 202 until there is one), and reuses it instead of reparsing if its constraints are the
+ * same as those of all responses.
+ *
+ * Ingestion is asynchronous, so parsing new text never holds a request handler thread: POST /ingest returns
+ * {"ticket": 7, "status": "pending"} with status 202, and polling GET /ingest returns the same until the sentence is
+ * parsed, then the result of POST /sentences for it. Tickets of finished ingestions are dropped once polled.
+ *
+ * Errors are returned as {"error": message} with status 400 (bad request or ingestion disabled), 404 (no such
+ * sentence, session or ticket) or 503 (parse queue of the ingester is full, retry later).
+ */
+public class HITLService {
+    private final HITLParser parser;
+    private SentenceIngester ingester = null;
+    private ReparsingTrigger reparsingTrigger = null;
+    private final Map<Integer, Session> sessions = new ConcurrentHashMap<>();
+    // Ticket -> session of the ingested sentence. Tickets that are never polled expire.
+    private final Cache<Integer, CompletableFuture<Map<String, Object>>> ingestions = CacheBuilder.newBuilder()
+            .expireAfterWrite(1, TimeUnit.HOURS)
+            .build();
+    private final AtomicInteger nextTicket = new AtomicInteger(0);
+    private HttpServer server = null;
+    private ExecutorService executor = null;
+
+    private static class Session {
+        final int sentenceId;
+        final ImmutableList<ScoredQuery<QAStructureSurfaceForm>> queries;
+        // Query id -> options chosen by each annotator, in the order they were posted.
+        final Map<Integer, List<ImmutableList<Integer>>> responses = new HashMap<>();
+        // Latest background reparse and its constraints, see ReparsingTrigger.
+        Parse backgroundParse = null;
+        ImmutableSet<Constraint> backgroundConstraints = null;
+
+        Session(int sentenceId, ImmutableList<ScoredQuery<QAStructureSurfaceForm>> queries) {
+            this.sentenceId = sentenceId;
+            this.queries = queries;
+        }
+    }
+
+    private static class ServiceConfig {
+        @Option(name="-port",usage="Port of the local HTTP server.")
+        int port = 8642;
+
+        @Option(name="-threads",usage="Number of request handler threads.")
+        int numThreads = 4;
+
+        @Option(name="-reparsers",usage="Number of sentences that can be reparsed at the same time.")
+        int numReparsers = 2;
+
+        @Option(name="-ccg-test",usage="Serve the CCG test set instead of dev.")
+        boolean runCcgTest = false;
+
+        @Option(name="-ingest-parsers",usage="Number of parsers for new sentences, 0 to disable ingestion.")
+        int numIngestParsers = 1;
+
+        @Option(name="-ingest-queue",usage="Number of new sentences that can wait for a parser.")
+        int ingestQueueSize = 16;
+
+        @Option(name="-quorum",usage="Number of responses per query, 0 to only reparse on request.")
+        int numResponsesPerQuery = 5;
+
+        /**
+         * Also sets the reparsing options in args, so both can be given in any order. Fails on unknown options.
+         */
+        ServiceConfig(final String[] args, final ReparsingParameters reparsingParameters) {
+            final CmdLineParser parser = new CmdLineParser(this);
+            new ClassParser().parse(reparsingParameters, parser);
+            try {
+                parser.parseArgument(args);
+            } catch (CmdLineException e) {
+                parser.printUsage(System.err);
+                throw new IllegalArgumentException("Invalid options: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    public HITLService(final HITLParser parser) {
+        this.parser = parser;
+    }
+
+    /**
+     * Enables /ingest.
+     */
+    public void setIngester(final SentenceIngester ingester) {
+        this.ingester = ingester;
+    }
+
+    /**
+     * Enables reparsing as soon as a query is stable.
+     */
+    public void setReparsingTrigger(final ReparsingTrigger reparsingTrigger) {
+        this.reparsingTrigger = reparsingTrigger;
+        reparsingTrigger.addListener(new ReparsingTrigger.Listener() {
+            @Override
+            public void onReparsed(final int sentenceId, final Parse parse,
+                                   final ImmutableSet<Constraint> constraints) {
+                final Session session = sessions.get(sentenceId);
+                if (session != null) {
+                    synchronized (session) {
+                        session.backgroundParse = parse;
+                        session.backgroundConstraints = constraints;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Queues a new sentence for parsing; a session is started for it once it is parsed.
+     * @return the ticket for polling with getIngested.
+     * @throws RejectedExecutionException if the parse queue is full.
+     */
+    public Map<String, Object> ingestSentence(final List<String> tokens) {
+        if (ingester == null) {
+            throw new UnsupportedOperationException("Ingestion is disabled.");
+        }
+        final CompletableFuture<Integer> sentenceId = ingester.trySubmit(tokens)
+                .orElseThrow(() -> new RejectedExecutionException("Parse queue is full."));
+        final int ticket = nextTicket.getAndIncrement();
+        // Queries are generated on the parsing thread as well.
+        ingestions.put(ticket, sentenceId.thenApply(this::submitSentence));
+        return getPending(ticket);
+    }
+
+    /**
+     * @return the pending status of the ticket, or the session of the ingested sentence.
+     */
+    public Map<String, Object> getIngested(final int ticket) {
+        final CompletableFuture<Map<String, Object>> session = ingestions.getIfPresent(ticket);
+        if (session == null) {
+            throw new NoSuchElementException("No ingestion with ticket " + ticket);
+        }
+        if (!session.isDone()) {
+            return getPending(ticket);
+        }
+        ingestions.invalidate(ticket);
+        try {
+            return session.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() :
+                    new RuntimeException(e.getCause());
+        }
+    }
+
+    private static Map<String, Object> getPending(final int ticket) {
+        final Map<String, Object> result = new LinkedHashMap<>();
+        result.put("ticket", ticket);
+        result.put("status", "pending");
+        return result;
+    }
+
+    private static boolean isPending(final Object result) {
+        return result instanceof Map && "pending".equals(((Map<?, ?>) result).get("status"));
+    }
+
+    /**
+     * Starts a session for the sentence and generates its queries. Submitting a sentence again keeps its session.
+     */
+    public Map<String, Object> submitSentence(final int sentenceId) {
+        if (parser.getNBestList(sentenceId) == null) {
+            throw new NoSuchElementException("No n-best list for sentence " + sentenceId);
+        }
+        Session session = sessions.get(sentenceId);
+        if (session == null) {
+            // Generated outside of the map, so other sessions are not blocked meanwhile.
+            final Session newSession = new Session(sentenceId, parser.getNewCoreArgQueriesForSentence(sentenceId));
+            session = sessions.putIfAbsent(sentenceId, newSession);
+            if (session == null) {
+                session = newSession;
+            }
+        }
+        final Map<String, Object> result = new LinkedHashMap<>();
+        result.put("sentenceId", sentenceId);
+        result.put("words", parser.getSentence(sentenceId));
+        result.put("numQueries", session.queries.size());
+        return result;
+    }
+
+    public List<Map<String, Object>> getQueries(final int sentenceId) {
+        return getSession(sentenceId).queries.stream()
+                .map(HITLService::toJsonObject)
+                .collect(Collectors.toList());
+    }
+
+    public Map<String, Object> postResponse(final int sentenceId, final int queryId, final List<Integer> options) {
+        final Session session = getSession(sentenceId);
+        if (queryId < 0 || queryId >= session.queries.size()) {
+            throw new IllegalArgumentException("No query " + queryId + " for sentence " + sentenceId);
+        }
+        final int numOptions = session.queries.get(queryId).getOptions().size();
+        if (options.isEmpty() || options.stream().anyMatch(i -> i < 0 || i >= numOptions)) {
+            throw new IllegalArgumentException("Invalid options " + options + " for query " + queryId);
+        }
+        final ImmutableList<Integer> response = ImmutableList.copyOf(options);
+        final int numResponses;
+        synchronized (session) {
+            final List<ImmutableList<Integer>> responses = session.responses.computeIfAbsent(queryId,
+                    id -> new ArrayList<>());
+            responses.add(response);
+            numResponses = responses.size();
+        }
+        final Map<String, Object> result = new LinkedHashMap<>();
+        result.put("sentenceId", sentenceId);
+        result.put("queryId", queryId);
+        result.put("numResponses", numResponses);
+        if (reparsingTrigger != null) {
+            result.put("stable", reparsingTrigger.addResponse(session.queries.get(queryId), response));
+        }
+        return result;
+    }
+
+    /**
+     * Reparses the sentence with the constraints extracted from all responses of the session. The latest background
+     * reparse is reused if it had the same constraints.
+     */
+    public Map<String, Object> getReparsed(final int sentenceId) {
+        final Session session = getSession(sentenceId);
+        final Set<Constraint> constraints = new HashSet<>();
+        Parse reparsed = null;
+        synchronized (session) {
+            session.responses.forEach((queryId, responses) -> constraints.addAll(
+                    parser.getConstraints(session.queries.get(queryId), ImmutableList.copyOf(responses))));
+            if (session.backgroundConstraints != null && ConstraintHelper.getCanonicalKey(constraints)
+                    .equals(ConstraintHelper.getCanonicalKey(session.backgroundConstraints))) {
+                reparsed = session.backgroundParse;
+            }
+        }
+        final boolean isBackgroundParse = reparsed != null;
+        if (!isBackgroundParse) {
+            reparsed = parser.getReparsed(sentenceId, constraints);
+        }
+        final Map<String, Object> result = getReparsedResult(sentenceId, constraints, reparsed);
+        result.put("background", isBackgroundParse);
+        return result;
+    }
+
+    /**
+     * @return the latest background reparse of the session, or the pending status if there is none yet.
+     */
+    public Map<String, Object> getBackgroundReparsed(final int sentenceId) {
+        final Session session = getSession(sentenceId);
+        if (reparsingTrigger == null) {
+            throw new UnsupportedOperationException("Background reparsing is disabled.");
+        }
+        final Parse reparsed;
+        final ImmutableSet<Constraint> constraints;
+        synchronized (session) {
+            reparsed = session.backgroundParse;
+            constraints = session.backgroundConstraints;
+        }
+        if (constraints == null) {
+            final Map<String, Object> result = new LinkedHashMap<>();
+            result.put("sentenceId", sentenceId);
+            result.put("status", "pending");
+            return result;
+        }
+        final Map<String, Object> result = getReparsedResult(sentenceId, constraints, reparsed);
+        result.put("background", true);
+        return result;
+    }
+
+    private Map<String, Object> getReparsedResult(final int sentenceId, final Set<Constraint> constraints,
+                                                  final Parse reparsed) {
+        final Map<String, Object> result = new LinkedHashMap<>();
+        result.put("sentenceId", sentenceId);
+        result.put("numConstraints", constraints.size());
+        result.put("rerankedParseId", parser.getRerankedParseId(sentenceId, constraints));
+        result.put("parse", toJsonObject(reparsed));
+        return result;
+    }
+
+    private Session getSession(final int sentenceId) {
+        final Session session = sessions.get(sentenceId);
+        if (session == null) {
+            throw new NoSuchElementException("No session for sentence " + sentenceId + ", submit it first.");
+        }
+        return session;
+    }
+
+    private static Map<String, Object> toJsonObject(final ScoredQuery<QAStructureSurfaceForm> query) {
+        final Map<String, Object> json = new LinkedHashMap<>();
+        json.put("queryId", query.getQueryId());
+        json.put("queryKey", query.getQueryKey());
+        json.put("prompt", query.getPrompt());
+        json.put("options", query.getOptions());
+        json.put("optionScores", query.getOptionScores());
+        json.put("promptScore", query.getPromptScore());
+        json.put("multipleChoices", query.allowMultipleChoices());
+        return json;
+    }
+
+    private static Map<String, Object> toJsonObject(final Parse parse) {
+        final Map<String, Object> json = new LinkedHashMap<>();
+        json.put("score", parse.score);
+        json.put("categories", parse.categories.stream().map(Object::toString).collect(Collectors.toList()));
+        final List<Map<String, Object>> dependencies = new ArrayList<>();
+        for (ResolvedDependency dependency : parse.dependencies) {
+            final Map<String, Object> dep = new LinkedHashMap<>();
+            dep.put("head", dependency.getHead());
+            dep.put("argument", dependency.getArgument());
+            dep.put("category", dependency.getCategory().toString());
+            dep.put("argNumber", dependency.getArgNumber());
+            dependencies.add(dep);
+        }
+        dependencies.sort(Comparator.comparing((Map<String, Object> d) -> (Integer) d.get("head"))
+                .thenComparing(d -> (Integer) d.get("argument")));
+        json.put("dependencies", dependencies);
+        return json;
+    }
+
+    public synchronized void start(final int port, final int numThreads) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0 /* default backlog */);
+        server.createContext("/sentences", exchange -> handle(exchange, "POST", () -> {
+            final Map<String, Object> request = readJsonObject(exchange);
+            return submitSentence(getInt(request, "sentenceId"));
+        }));
+        server.createContext("/queries", exchange -> handle(exchange, "GET",
+                () -> getQueries(getIntParameter(exchange, "sentence"))));
+        server.createContext("/responses", exchange -> handle(exchange, "POST", () -> {
+            final Map<String, Object> request = readJsonObject(exchange);
+            final Object options = request.get("options");
+            if (!(options instanceof List)) {
+                throw new IllegalArgumentException("Missing list of options.");
+            }
+            return postResponse(getInt(request, "sentenceId"), getInt(request, "queryId"),
+                    ((List<?>) options).stream()
+                            .map(option -> ((Number) option).intValue())
+                            .collect(Collectors.toList()));
+        }));
+        server.createContext("/reparse", exchange -> handle(exchange, "GET", () -> {
+            final int sentenceId = getIntParameter(exchange, "sentence");
+            return getParameter(exchange, "background").filter(value -> !value.equals("0")).isPresent() ?
+                    getBackgroundReparsed(sentenceId) : getReparsed(sentenceId);
+        }));
+        server.createContext("/ingest", exchange -> handle(exchange, "GET", "POST", () -> {
+            if (exchange.getRequestMethod().equals("GET")) {
+                return getIngested(getIntParameter(exchange, "ticket"));
+            }
+            final Object tokens = readJsonObject(exchange).get("tokens");
+            if (!(tokens instanceof List)) {
+                throw new IllegalArgumentException("Missing list of tokens.");
+            }
+            return ingestSentence(((List<?>) tokens).stream()
+                    .map(String::valueOf)
+                    .collect(Collectors.toList()));
+        }));
+        executor = Executors.newFixedThreadPool(Math.max(1, numThreads));
+        server.setExecutor(executor);
+        server.start();
+        System.err.println("HITL service listening on http://localhost:" + port);
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0 /* seconds */);
+            executor.shutdownNow();
+            server = null;
+        }
+        if (ingester != null) {
+            ingester.shutdown();
+        }
+        if (reparsingTrigger != null) {
+            reparsingTrigger.shutdown();
+        }
+    }
+
+    private interface Handler {
+        Object run() throws IOException;
+    }
+
+    private static void handle(final HttpExchange exchange, final String method, final Handler handler)
+            throws IOException {
+        handle(exchange, method, method, handler);
+    }
+
+    private static void handle(final HttpExchange exchange, final String method, final String otherMethod,
+                               final Handler handler) throws IOException {
+        int status = 200;
+        Object result;
+        try {
+            final String requestMethod = exchange.getRequestMethod();
+            if (!requestMethod.equals(method) && !requestMethod.equals(otherMethod)) {
+                status = 405;
+                result = Collections.singletonMap("error", "Use " + (method.equals(otherMethod) ? method :
+                        method + " or " + otherMethod) + ".");
+            } else {
+                result = handler.run();
+                if (isPending(result)) {
+                    status = 202;
+                }
+            }
+        } catch (NoSuchElementException e) {
+            status = 404;
+            result = Collections.singletonMap("error", e.getMessage());
+        } catch (RejectedExecutionException e) {
+            status = 503;
+            result = Collections.singletonMap("error", e.getMessage());
+        } catch (IllegalArgumentException | ClassCastException | UnsupportedOperationException e) {
+            status = 400;
+            result = Collections.singletonMap("error", String.valueOf(e.getMessage()));
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            status = 500;
+            result = Collections.singletonMap("error", String.valueOf(e));
+        }
+        final byte[] body = JsonUtil.toJson(result).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> readJsonObject(final HttpExchange exchange) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            final byte[] buffer = new byte[4096];
+            for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                body.write(buffer, 0, n);
+            }
+        }
+        final Object json = JsonUtil.parse(new String(body.toByteArray(), StandardCharsets.UTF_8));
+        if (!(json instanceof Map)) {
+            throw new IllegalArgumentException("Expected a JSON object.");
+        }
+        return (Map<String, Object>) json;
+    }
+
+    private static int getInt(final Map<String, Object> request, final String key) {
+        final Object value = request.get(key);
+        if (!(value instanceof Number)) {
+            throw new IllegalArgumentException("Missing number: " + key);
+        }
+        return ((Number) value).intValue();
+    }
+
+    private static Optional<String> getParameter(final HttpExchange exchange, final String name)
+            throws UnsupportedEncodingException {
+        final String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                final String[] keyValue = parameter.split("=", 2);
+                if (keyValue.length == 2 && keyValue[0].equals(name)) {
+                    return Optional.of(URLDecoder.decode(keyValue[1], "UTF-8"));
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static int getIntParameter(final HttpExchange exchange, final String name)
+            throws UnsupportedEncodingException {
+        return Integer.parseInt(getParameter(exchange, name)
+                .orElseThrow(() -> new IllegalArgumentException("Missing parameter: " + name)));
+    }
+
+    public static void main(String[] args) throws IOException {
+        final ReparsingParameters reparsingParameters = new ReparsingParameters();
+        final ServiceConfig config = new ServiceConfig(args, reparsingParameters);
+        final ParseData corpus = config.runCcgTest ?
+                ParseDataLoader.loadFromTestPool(true).get() :
+                ParseDataLoader.loadFromDevPool().get();
+        final Map<Integer, NBestList> nbestLists = NBestList.openNBestLists(PropertyUtil.resourcesProperties
+                .getProperty(config.runCcgTest ? "ccg_test_nbest" : "ccg_dev_nbest"), 100).get();
+        final HITLParser parser = new HITLParser(corpus, nbestLists);
+        parser.setReparsingParameters(reparsingParameters);
+        parser.setNumReparsers(config.numReparsers);
+        final HITLService service = new HITLService(parser);
+        if (config.numIngestParsers > 0) {
+            service.setIngester(new SentenceIngester(parser, 100 /* nbest */, config.numIngestParsers,
+                    config.ingestQueueSize));
+        }
+        if (config.numResponsesPerQuery > 0) {
+            service.setReparsingTrigger(new ReparsingTrigger(parser, config.numResponsesPerQuery));
+        }
+        service.start(config.port, config.numThreads);
+        Runtime.getRuntime().addShutdownHook(new Thread(service::stop));
+    }
+}
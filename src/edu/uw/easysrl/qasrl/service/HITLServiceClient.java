@@ -0,0 +1,136 @@
+package edu.uw.easysrl.qasrl.service;
+
+import edu.uw.easysrl.qasrl.util.JsonUtil;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Client of HITLService. Its main() is a stand-in annotator for testing a running service: it submits sentences and
+ * answers every query with the option the parser is most confident about.
+ *
+ * Usage: HITLServiceClient [base url] sentence id ...
+ */
+public class HITLServiceClient {
+    private static final long kPollIntervalMillis = 200;
+    private final String baseUrl;
+
+    public HITLServiceClient(final String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> submitSentence(final int sentenceId) throws IOException {
+        return (Map<String, Object>) request("POST", "/sentences",
+                Collections.singletonMap("sentenceId", sentenceId));
+    }
+
+    /**
+     * Parses a new tokenized sentence and starts a session for it, polling the service until the sentence is parsed.
+     * The result includes the new sentence id.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> ingestSentence(final List<String> tokens) throws IOException {
+        Map<String, Object> result = (Map<String, Object>) request("POST", "/ingest",
+                Collections.singletonMap("tokens", tokens));
+        while ("pending".equals(result.get("status"))) {
+            try {
+                Thread.sleep(kPollIntervalMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for ingestion.");
+            }
+            final int ticket = ((Number) result.get("ticket")).intValue();
+            result = (Map<String, Object>) request("GET", "/ingest?ticket=" + ticket, null);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<Map<String, Object>> getQueries(final int sentenceId) throws IOException {
+        return (List<Map<String, Object>>) request("GET", "/queries?sentence=" + sentenceId, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> postResponse(final int sentenceId, final int queryId, final List<Integer> options)
+            throws IOException {
+        final Map<String, Object> response = new LinkedHashMap<>();
+        response.put("sentenceId", sentenceId);
+        response.put("queryId", queryId);
+        response.put("options", options);
+        return (Map<String, Object>) request("POST", "/responses", response);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getReparsed(final int sentenceId) throws IOException {
+        return (Map<String, Object>) request("GET", "/reparse?sentence=" + sentenceId, null);
+    }
+
+    /**
+     * @return the latest background reparse of the sentence, or {"status": "pending"} if there is none yet.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getBackgroundReparsed(final int sentenceId) throws IOException {
+        return (Map<String, Object>) request("GET", "/reparse?sentence=" + sentenceId + "&background=1", null);
+    }
+
+    /**
+     * @throws IOException with the error message of the service if the request failed.
+     */
+    private Object request(final String method, final String path, final Object body) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(JsonUtil.toJson(body).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        final int status = connection.getResponseCode();
+        final InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        final String response;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            response = reader.lines().collect(Collectors.joining("\n"));
+        } finally {
+            connection.disconnect();
+        }
+        final Object json = JsonUtil.parse(response);
+        if (status >= 400) {
+            throw new IOException(String.format("%s %s failed with status %d: %s", method, path, status,
+                    json instanceof Map ? ((Map<?, ?>) json).get("error") : response));
+        }
+        return json;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static void main(String[] args) throws IOException {
+        final boolean hasUrl = args.length > 0 && args[0].startsWith("http");
+        final HITLServiceClient client = new HITLServiceClient(hasUrl ? args[0] : "http://localhost:8642");
+        for (int i = hasUrl ? 1 : 0; i < args.length; i++) {
+            final int sentenceId = Integer.parseInt(args[i]);
+            final Map<String, Object> sentence = client.submitSentence(sentenceId);
+            System.out.println(String.format("Sentence %d:\t%s", sentenceId,
+                    String.join(" ", (List<String>) sentence.get("words"))));
+            for (Map<String, Object> query : client.getQueries(sentenceId)) {
+                final List<?> scores = (List<?>) query.get("optionScores");
+                final int bestOption = IntStream.range(0, scores.size())
+                        .boxed()
+                        .max(Comparator.comparing(k -> scores.get(k) == null ? 0.0 : (Double) scores.get(k)))
+                        .orElse(0);
+                final int queryId = ((Number) query.get("queryId")).intValue();
+                client.postResponse(sentenceId, queryId, Collections.singletonList(bestOption));
+                System.out.println(String.format("%s\t%s", query.get("prompt"),
+                        ((List<?>) query.get("options")).get(bestOption)));
+            }
+            final Map<String, Object> reparsed = client.getReparsed(sentenceId);
+            System.out.println(String.format("Reparsed with %s constraints:\t%s\n", reparsed.get("numConstraints"),
+                    ((Map<?, ?>) reparsed.get("parse")).get("categories")));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package edu.uw.easysrl.qasrl.util;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Files that keep data derived from input files across runs, i.e. caches keyed on a FileFingerprint. Such files are
+ * written to a temporary file next to them, which is then moved in place, so concurrent runs see either the old file or
+ * the whole new one. A run that can't read a file computes the data again.
+ */
+public class CacheFiles {
+    private static final int kBufferSize = 1 << 16;
+
+    public interface StreamWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    public interface StreamReader<T> {
+        /**
+         * @return null if the file is stale.
+         */
+        T read(InputStream in) throws IOException, ClassNotFoundException;
+    }
+
+    private CacheFiles() {
+    }
+
+    /**
+     * @param description: what the file holds, for log messages.
+     * @return null if the file is missing, unreadable or stale.
+     */
+    public static <T> T read(final File file, final String description, final StreamReader<T> reader) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), kBufferSize)) {
+            final T result = reader.read(in);
+            if (result == null) {
+                System.err.println("Ignoring stale " + description + ": " + file);
+            }
+            return result;
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            // A corrupt file can also fail with i.e. an out of range index.
+            System.err.println("Ignoring unreadable " + description + ": " + file + " (" + e + ")");
+            return null;
+        }
+    }
+
+    /**
+     * Same as writeAtomically, but only logs errors.
+     */
+    public static void write(final File file, final String description, final StreamWriter writer) {
+        try {
+            writeAtomically(file, writer);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Unable to write " + description + ": " + file + " (" + e + ")");
+        }
+    }
+
+    /**
+     * Creates the directory of the file if needed. The stream given to the writer is buffered and closed afterwards;
+     * streams wrapped around it, i.e. an ObjectOutputStream, must be flushed or closed by the writer.
+     */
+    public static void writeAtomically(final File file, final StreamWriter writer) throws IOException {
+        final File directory = file.getAbsoluteFile().getParentFile();
+        Files.createDirectories(directory.toPath());
+        final File tempFile = File.createTempFile(file.getName(), ".tmp", directory);
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile), kBufferSize)) {
+                writer.write(out);
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // Only still there if writing or moving failed.
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    /**
+     * Magic number, format version and the fingerprint of the inputs.
+     */
+    public static void writeHeader(final DataOutput out, final int magic, final int version,
+                                   final String fingerprint) throws IOException {
+        out.writeInt(magic);
+        out.writeInt(version);
+        out.writeUTF(fingerprint);
+    }
+
+    /**
+     * @return false if the file has another format, version or fingerprint.
+     */
+    public static boolean readHeader(final DataInput in, final int magic, final int version,
+                                     final String fingerprint) throws IOException {
+        return in.readInt() == magic && in.readInt() == version && fingerprint.equals(in.readUTF());
+    }
+}
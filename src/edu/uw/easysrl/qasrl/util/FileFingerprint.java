@@ -0,0 +1,46 @@
+package edu.uw.easysrl.qasrl.util;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Fingerprints of input files, for validating cached artifacts derived from them. Only the file metadata (path, size,
+ * modification time) is hashed, so fingerprinting a whole corpus takes milliseconds.
+ */
+public class FileFingerprint {
+
+    /**
+     * @param files: files or directories, which are walked recursively.
+     * @param settings: anything else the artifact depends on, hashed by toString().
+     */
+    public static String getFingerprint(final Collection<File> files, final Object... settings) {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        for (File file : files) {
+            putFile(hasher, file.getAbsoluteFile());
+        }
+        for (Object setting : settings) {
+            hasher.putString(String.valueOf(setting), StandardCharsets.UTF_8).putByte((byte) 0);
+        }
+        return hasher.hash().toString();
+    }
+
+    private static void putFile(final Hasher hasher, final File file) {
+        hasher.putString(file.getPath(), StandardCharsets.UTF_8).putByte((byte) 0);
+        if (file.isDirectory()) {
+            final File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    putFile(hasher, child);
+                }
+            }
+        } else {
+            hasher.putLong(file.exists() ? file.length() : -1).putLong(file.lastModified());
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package edu.uw.easysrl.qasrl.util;
+
+import java.util.*;
+
+/**
+ * Minimal JSON encoding and decoding, for the HITL service. Objects are Maps with String keys, arrays are Lists,
+ * numbers are decoded as Doubles.
+ */
+public class JsonUtil {
+
+    public static String toJson(final Object value) {
+        final StringBuilder json = new StringBuilder();
+        write(value, json);
+        return json.toString();
+    }
+
+    private static void write(final Object value, final StringBuilder json) {
+        if (value == null) {
+            json.append("null");
+        } else if (value instanceof String) {
+            quote((String) value, json);
+        } else if (value instanceof Double && !Double.isFinite((Double) value)) {
+            json.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            json.append(value);
+        } else if (value instanceof Map) {
+            json.append('{');
+            String separator = "";
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                json.append(separator);
+                quote(String.valueOf(entry.getKey()), json);
+                json.append(':');
+                write(entry.getValue(), json);
+                separator = ",";
+            }
+            json.append('}');
+        } else if (value instanceof Collection) {
+            json.append('[');
+            String separator = "";
+            for (Object element : (Collection<?>) value) {
+                json.append(separator);
+                write(element, json);
+                separator = ",";
+            }
+            json.append(']');
+        } else {
+            quote(value.toString(), json);
+        }
+    }
+
+    private static void quote(final String string, final StringBuilder json) {
+        json.append('"');
+        for (int i = 0; i < string.length(); i++) {
+            final char c = string.charAt(i);
+            switch (c) {
+                case '"': json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\r': json.append("\\r"); break;
+                case '\t': json.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * @throws IllegalArgumentException if the input is not valid JSON.
+     */
+    public static Object parse(final String json) {
+        final Parser parser = new Parser(json);
+        final Object value = parser.readValue();
+        parser.skipWhitespace();
+        if (parser.position != json.length()) {
+            throw parser.error("Trailing characters");
+        }
+        return value;
+    }
+
+    private static class Parser {
+        final String json;
+        int position = 0;
+
+        Parser(final String json) {
+            this.json = json;
+        }
+
+        IllegalArgumentException error(final String message) {
+            return new IllegalArgumentException(message + " at position " + position + " of JSON input.");
+        }
+
+        void skipWhitespace() {
+            while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+                position ++;
+            }
+        }
+
+        char peek() {
+            skipWhitespace();
+            if (position >= json.length()) {
+                throw error("Unexpected end");
+            }
+            return json.charAt(position);
+        }
+
+        void expect(final char c) {
+            if (peek() != c) {
+                throw error("Expected '" + c + "'");
+            }
+            position ++;
+        }
+
+        Object readValue() {
+            final char c = peek();
+            if (c == '{') {
+                final Map<String, Object> object = new LinkedHashMap<>();
+                position ++;
+                if (peek() == '}') {
+                    position ++;
+                    return object;
+                }
+                do {
+                    final String key = readString();
+                    expect(':');
+                    object.put(key, readValue());
+                } while (tryConsume(','));
+                expect('}');
+                return object;
+            }
+            if (c == '[') {
+                final List<Object> array = new ArrayList<>();
+                position ++;
+                if (peek() == ']') {
+                    position ++;
+                    return array;
+                }
+                do {
+                    array.add(readValue());
+                } while (tryConsume(','));
+                expect(']');
+                return array;
+            }
+            if (c == '"') {
+                return readString();
+            }
+            for (String literal : new String[] { "true", "false", "null" }) {
+                if (json.startsWith(literal, position)) {
+                    position += literal.length();
+                    return literal.equals("null") ? null : Boolean.valueOf(literal);
+                }
+            }
+            final int start = position;
+            while (position < json.length() && "+-0123456789.eE".indexOf(json.charAt(position)) >= 0) {
+                position ++;
+            }
+            try {
+                return Double.valueOf(json.substring(start, position));
+            } catch (NumberFormatException e) {
+                position = start;
+                throw error("Unexpected character");
+            }
+        }
+
+        boolean tryConsume(final char c) {
+            if (peek() == c) {
+                position ++;
+                return true;
+            }
+            return false;
+        }
+
+        String readString() {
+            expect('"');
+            final StringBuilder string = new StringBuilder();
+            while (position < json.length() && json.charAt(position) != '"') {
+                char c = json.charAt(position++);
+                if (c == '\\') {
+                    if (position >= json.length()) {
+                        throw error("Unexpected end");
+                    }
+                    c = json.charAt(position++);
+                    switch (c) {
+                        case 'n': string.append('\n'); break;
+                        case 'r': string.append('\r'); break;
+                        case 't': string.append('\t'); break;
+                        case 'b': string.append('\b'); break;
+                        case 'f': string.append('\f'); break;
+                        case 'u':
+                            if (position + 4 > json.length()) {
+                                throw error("Unexpected end");
+                            }
+                            string.append((char) Integer.parseInt(json.substring(position, position + 4), 16));
+                            position += 4;
+                            break;
+                        default: string.append(c);
+                    }
+                } else {
+                    string.append(c);
+                }
+            }
+            if (position >= json.length()) {
+                throw error("Unterminated string");
+            }
+            position ++;
+            return string.toString();
+        }
+    }
+}
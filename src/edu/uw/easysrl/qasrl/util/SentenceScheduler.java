@@ -0,0 +1,75 @@
+package edu.uw.easysrl.qasrl.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Runs a per-sentence task over a pool of workers. Each worker (i.e. a parser) is confined to one thread, so it does
+ * not need to be thread-safe. Idle workers pull the next sentence from a shared queue ordered by descending cost, so
+ * long sentences are started first and don't straggle at the end.
+ * Results are returned in the order of the input ids, regardless of which worker finished first.
+ */
+public class SentenceScheduler {
+
+    /**
+     * @param sentenceIds: sentences to process.
+     * @param cost: estimated cost of a sentence, i.e. its length.
+     * @param workers: one thread is started for each worker.
+     * @param task: the per-sentence work, may return null.
+     * @return results aligned with sentenceIds.
+     */
+    public static <W, R> List<R> run(final List<Integer> sentenceIds,
+                                     final ToIntFunction<Integer> cost,
+                                     final List<W> workers,
+                                     final BiFunction<W, Integer, R> task) {
+        final int[] costs = sentenceIds.stream().mapToInt(cost).toArray();
+        final Integer[] order = IntStream.range(0, sentenceIds.size()).boxed()
+                .sorted(Comparator.comparing((Integer i) -> -costs[i]).thenComparing(i -> i))
+                .toArray(Integer[]::new);
+        final Object[] results = new Object[sentenceIds.size()];
+        final AtomicInteger next = new AtomicInteger(0);
+
+        if (workers.size() == 1) {
+            Arrays.stream(order).forEach(i -> results[i] = task.apply(workers.get(0), sentenceIds.get(i)));
+            return toList(results);
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(workers.size());
+        final List<Future<?>> futures = new ArrayList<>();
+        for (W worker : workers) {
+            futures.add(executor.submit(() -> {
+                for (int k = next.getAndIncrement(); k < order.length; k = next.getAndIncrement()) {
+                    results[order[k]] = task.apply(worker, sentenceIds.get(order[k]));
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return toList(results);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> List<R> toList(final Object[] results) {
+        final List<R> list = new ArrayList<>(results.length);
+        for (Object result : results) {
+            list.add((R) result);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,139 @@
+package edu.uw.easysrl.qasrl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import edu.uw.easysrl.dependencies.ResolvedDependency;
+import edu.uw.easysrl.dependencies.SRLFrame;
+import edu.uw.easysrl.syntax.grammar.Category;
+import edu.uw.easysrl.syntax.grammar.Preposition;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class BinaryNBestFileTest {
+    private static final Category kTransitive = Category.valueOf("(S[dcl]\\NP)/NP");
+    private static final Category kPPModifier = Category.valueOf("((S\\NP)\\(S\\NP))/NP");
+
+    static File createTempFile() throws IOException {
+        final File file = File.createTempFile("nbest", ".bin");
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Two sentences with three and one parses, differing in supertags, dependencies, labels and scores.
+     */
+    static Map<Integer, List<Parse>> makeParses() {
+        final List<String> words = ImmutableList.of("John", "saw", "Mary", "in", "Paris");
+        final List<Category> tags = ImmutableList.of(Category.NP, kTransitive, Category.NP, kPPModifier, Category.NP);
+        final List<Category> otherTags = ImmutableList.of(Category.NP, kTransitive, Category.N, kPPModifier,
+                Category.NP);
+        final ResolvedDependency subject = new ResolvedDependency(1, kTransitive, 1, 0, SRLFrame.NONE,
+                Preposition.NONE);
+        final ResolvedDependency object = new ResolvedDependency(1, kTransitive, 2, 2, SRLFrame.NONE,
+                Preposition.NONE);
+        final ResolvedDependency location = new ResolvedDependency(3, kPPModifier, 1, 4, SRLFrame.NONE,
+                Preposition.IN);
+        final ResolvedDependency attachment = new ResolvedDependency(3, kPPModifier, 2, 1, SRLFrame.NONE,
+                Preposition.NONE);
+
+        final Map<Integer, List<Parse>> allParses = new HashMap<>();
+        allParses.put(7, ImmutableList.of(
+                new Parse(words, tags, ImmutableSet.of(subject, object, location, attachment), -1.5),
+                new Parse(words, otherTags, ImmutableSet.of(subject, location), -2.25),
+                new Parse(words, tags, ImmutableSet.of(), -10.0)));
+        allParses.put(2, ImmutableList.of(
+                new Parse(ImmutableList.of("John"), ImmutableList.of(Category.NP), ImmutableSet.of(), 0.0)));
+        return allParses;
+    }
+
+    private static String toString(final ResolvedDependency dependency) {
+        return String.format("%d:%s.%d:%d:%s:%s", dependency.getHead(), dependency.getCategory(),
+                dependency.getArgNumber(), dependency.getArgument(), dependency.getSemanticRole(),
+                dependency.getPreposition());
+    }
+
+    static void assertParseEquals(final Parse expected, final Parse actual) {
+        assertEquals(expected.getWords(), actual.getWords());
+        assertEquals(expected.categories, actual.categories);
+        assertEquals(expected.score, actual.score, 0.0);
+        assertEquals(expected.dependencies.stream().map(BinaryNBestFileTest::toString).collect(Collectors.toSet()),
+                actual.dependencies.stream().map(BinaryNBestFileTest::toString).collect(Collectors.toSet()));
+    }
+
+    static void assertParsesEqual(final List<Parse> expected, final List<Parse> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertParseEquals(expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final Map<Integer, List<Parse>> allParses = makeParses();
+        final File file = createTempFile();
+        BinaryNBestFile.write(allParses, file.getPath(), false /* includeTrees */);
+
+        assertTrue(BinaryNBestFile.isBinaryNBestFile(file.getPath()));
+        final Map<Integer, List<Parse>> readParses = BinaryNBestFile.read(file.getPath(), 100, false);
+        assertEquals(allParses.keySet(), readParses.keySet());
+        for (int sentenceId : allParses.keySet()) {
+            assertParsesEqual(allParses.get(sentenceId), readParses.get(sentenceId));
+        }
+    }
+
+    @Test
+    public void testReadKeepsFirstNParses() throws IOException {
+        final Map<Integer, List<Parse>> allParses = makeParses();
+        final File file = createTempFile();
+        BinaryNBestFile.write(allParses, file.getPath(), false /* includeTrees */);
+
+        final Map<Integer, List<Parse>> readParses = BinaryNBestFile.read(file.getPath(), 2, false);
+        assertParsesEqual(allParses.get(7).subList(0, 2), readParses.get(7));
+        assertParsesEqual(allParses.get(2), readParses.get(2));
+    }
+
+    @Test
+    public void testWriterAppendsSentences() throws IOException {
+        final Map<Integer, List<Parse>> allParses = makeParses();
+        final File file = createTempFile();
+        try (BinaryNBestFile.Writer writer = new BinaryNBestFile.Writer(file.getPath(), false /* includeTrees */)) {
+            writer.write(2, allParses.get(2));
+            writer.write(7, allParses.get(7));
+        }
+        final Map<Integer, List<Parse>> readParses = BinaryNBestFile.read(file.getPath(), 100, false);
+        assertEquals(allParses.keySet(), readParses.keySet());
+        for (int sentenceId : allParses.keySet()) {
+            assertParsesEqual(allParses.get(sentenceId), readParses.get(sentenceId));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWriterRejectsUnorderedSentences() throws IOException {
+        final Map<Integer, List<Parse>> allParses = makeParses();
+        try (BinaryNBestFile.Writer writer = new BinaryNBestFile.Writer(createTempFile().getPath(), false)) {
+            writer.write(7, allParses.get(7));
+            writer.write(2, allParses.get(2));
+        }
+    }
+
+    @Test
+    public void testPackDependency() {
+        final long packed = BinaryNBestFile.packDependency(0xFFFF, 0xFFFF, 0xFFFF, 0xFF, 0xFF);
+        assertEquals(-1L, packed);
+        assertEquals((1L << 48) | (2L << 32) | (3L << 16) | (4 << 8) | 5,
+                BinaryNBestFile.packDependency(1, 2, 3, 4, 5));
+    }
+
+    @Test
+    public void testNotABinaryNBestFile() throws IOException {
+        final File file = createTempFile();
+        assertFalse(BinaryNBestFile.isBinaryNBestFile(file.getPath()));
+        assertFalse(BinaryNBestFile.isBinaryNBestFile(file.getPath() + ".missing"));
+    }
+}
@@ -0,0 +1,129 @@
+package edu.uw.easysrl.qasrl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import edu.uw.easysrl.dependencies.ResolvedDependency;
+import edu.uw.easysrl.dependencies.SRLFrame;
+import edu.uw.easysrl.qasrl.reparsing.ConstraintHelper;
+import edu.uw.easysrl.syntax.grammar.Category;
+import edu.uw.easysrl.syntax.grammar.Preposition;
+import edu.uw.easysrl.syntax.model.Constraint;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Comparator;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks IncrementalReparses against an exact parser over a fixed set of parses of "John saw Mary", which scores each
+ * parse minus the strength of the constraints it violates, like ConstrainedParserAStar does.
+ */
+public class IncrementalReparsesTest {
+    private static final Category kTransitive = Category.valueOf("(S[dcl]\\NP)/NP");
+    private static final ImmutableList<String> kWords = ImmutableList.of("John", "saw", "Mary");
+
+    // John <- saw -> Mary
+    private static final Parse kBest = makeParse(0.0, 1, 0, 1, 2);
+    // saw -> John -> Mary
+    private static final Parse kSecond = makeParse(-0.5, 1, 0, 0, 2);
+    // saw -> Mary -> John
+    private static final Parse kThird = makeParse(-1.0, 1, 2, 2, 0);
+    private static final ImmutableList<Parse> kParses = ImmutableList.of(kBest, kSecond, kThird);
+
+    private static final Constraint kSubject = new Constraint.AttachmentConstraint(1, 0, true, 1.0);
+    private static final Constraint kObject = new Constraint.AttachmentConstraint(1, 2, true, 1.0);
+    private static final Constraint kNotJohnMary = new Constraint.AttachmentConstraint(0, 2, false, 1.0);
+    private static final Constraint kNotObject = new Constraint.AttachmentConstraint(1, 2, false, 2.0);
+
+    private int numParserCalls;
+
+    private static Parse makeParse(final double score, final int... headArgumentPairs) {
+        final ImmutableSet.Builder<ResolvedDependency> dependencies = ImmutableSet.builder();
+        for (int i = 0; i < headArgumentPairs.length; i += 2) {
+            dependencies.add(new ResolvedDependency(headArgumentPairs[i], kTransitive, i / 2 + 1,
+                    headArgumentPairs[i + 1], SRLFrame.NONE, Preposition.NONE));
+        }
+        return new Parse(kWords, ImmutableList.of(Category.NP, kTransitive, Category.NP), dependencies.build(),
+                score);
+    }
+
+    private static Parse parseWithConstraint(final Set<Constraint> constraints) {
+        final Function<Parse, Double> score = parse -> parse.score - constraints.stream()
+                .filter(c -> !ConstraintHelper.isRespectedBy(c, parse))
+                .mapToDouble(Constraint::getStrength)
+                .sum();
+        return kParses.stream().max(Comparator.comparing(score)).get();
+    }
+
+    private Parse countedParseWithConstraint(final Set<Constraint> constraints) {
+        numParserCalls++;
+        return parseWithConstraint(constraints);
+    }
+
+    private Parse reparse(final IncrementalReparses reparses, final Constraint... constraints) {
+        final Set<Constraint> constraintSet = ImmutableSet.copyOf(constraints);
+        final Parse parse = reparses.reparse(0, constraintSet, this::countedParseWithConstraint);
+        assertSame(parseWithConstraint(constraintSet), parse);
+        return parse;
+    }
+
+    @Before
+    public void setUp() {
+        numParserCalls = 0;
+    }
+
+    @Test
+    public void testAlternatingConstraintSets() {
+        final IncrementalReparses reparses = new IncrementalReparses(10, 4);
+        // User and oracle constraints, each growing.
+        assertSame(kBest, reparse(reparses, kSubject));
+        assertSame(kBest, reparse(reparses, kObject));
+        assertEquals(2, numParserCalls);
+        assertSame(kBest, reparse(reparses, kSubject, kNotJohnMary));
+        assertSame(kBest, reparse(reparses, kObject, kSubject));
+        assertEquals(2, numParserCalls);
+        // The earlier parse violates the new constraint.
+        assertSame(kSecond, reparse(reparses, kSubject, kNotJohnMary, kNotObject));
+        assertEquals(3, numParserCalls);
+    }
+
+    @Test
+    public void testOneEntryPerSentence() {
+        final IncrementalReparses reparses = new IncrementalReparses(10, 1);
+        reparse(reparses, kSubject);
+        reparse(reparses, kObject);
+        reparse(reparses, kSubject, kNotJohnMary);
+        reparse(reparses, kObject, kSubject);
+        assertEquals(4, numParserCalls);
+    }
+
+    @Test
+    public void testRemovedConstraint() {
+        final IncrementalReparses reparses = new IncrementalReparses(10, 4);
+        assertSame(kSecond, reparse(reparses, kSubject, kNotObject));
+        assertSame(kBest, reparse(reparses, kSubject));
+        assertEquals(2, numParserCalls);
+        // Any entry with a subset of the constraints will do.
+        assertSame(kSecond, reparse(reparses, kSubject, kNotObject));
+        assertEquals(2, numParserCalls);
+    }
+
+    @Test
+    public void testSentencesAreSeparate() {
+        final IncrementalReparses reparses = new IncrementalReparses(10, 4);
+        reparse(reparses, kSubject);
+        reparses.reparse(1, ImmutableSet.of(kSubject, kObject), this::countedParseWithConstraint);
+        assertEquals(2, numParserCalls);
+    }
+
+    @Test
+    public void testFailedParseIsNotReused() {
+        final IncrementalReparses reparses = new IncrementalReparses(10, 4);
+        assertNull(reparses.reparse(0, ImmutableSet.of(kSubject), constraints -> null));
+        assertSame(kBest, reparse(reparses, kSubject, kObject));
+        assertEquals(1, numParserCalls);
+    }
+}
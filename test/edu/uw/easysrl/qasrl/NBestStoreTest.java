@@ -0,0 +1,50 @@
+package edu.uw.easysrl.qasrl;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class NBestStoreTest {
+    @Test
+    public void testRoundTrip() throws IOException {
+        final Map<Integer, List<Parse>> allParses = BinaryNBestFileTest.makeParses();
+        final File file = BinaryNBestFileTest.createTempFile();
+        BinaryNBestFile.write(allParses, file.getPath(), false /* includeTrees */);
+
+        final NBestStore store = NBestStore.open(file.getPath(), 100, false);
+        assertEquals(ImmutableSet.of(2, 7), store.keySet());
+        assertEquals(2, store.size());
+        for (int sentenceId : allParses.keySet()) {
+            final NBestList nBestList = store.get(sentenceId);
+            assertEquals(allParses.get(sentenceId).size(), nBestList.getN());
+            BinaryNBestFileTest.assertParsesEqual(allParses.get(sentenceId), nBestList.getParses());
+        }
+        // Sentences can be decoded in any order, and again after the first access.
+        BinaryNBestFileTest.assertParsesEqual(allParses.get(7), store.getNBestList(7).getParses());
+    }
+
+    @Test
+    public void testKeepsFirstNParses() throws IOException {
+        final Map<Integer, List<Parse>> allParses = BinaryNBestFileTest.makeParses();
+        final File file = BinaryNBestFileTest.createTempFile();
+        BinaryNBestFile.write(allParses, file.getPath(), false /* includeTrees */);
+
+        final NBestStore store = NBestStore.open(file.getPath(), 1, false);
+        BinaryNBestFileTest.assertParsesEqual(allParses.get(7).subList(0, 1), store.get(7).getParses());
+    }
+
+    @Test
+    public void testMissingSentence() throws IOException {
+        final File file = BinaryNBestFileTest.createTempFile();
+        BinaryNBestFile.write(BinaryNBestFileTest.makeParses(), file.getPath(), false /* includeTrees */);
+
+        final NBestStore store = NBestStore.open(file.getPath(), 100, false);
+        assertFalse(store.containsKey(3));
+        assertNull(store.get(3));
+    }
+}
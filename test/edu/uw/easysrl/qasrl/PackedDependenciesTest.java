@@ -0,0 +1,113 @@
+package edu.uw.easysrl.qasrl;
+
+import com.google.common.collect.ImmutableList;
+import edu.uw.easysrl.dependencies.ResolvedDependency;
+import edu.uw.easysrl.dependencies.SRLFrame;
+import edu.uw.easysrl.syntax.grammar.Category;
+import edu.uw.easysrl.syntax.grammar.Preposition;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PackedDependenciesTest {
+    private static final Category kTransitive = Category.valueOf("(S[dcl]\\NP)/NP");
+    private static final Category kAdjective = Category.valueOf("NP/N");
+
+    private static ResolvedDependency makeDependency(int head, Category category, int argNumber, int argument) {
+        return new ResolvedDependency(head, category, argNumber, argument, SRLFrame.NONE, Preposition.NONE);
+    }
+
+    @Test
+    public void testFieldsRoundTrip() {
+        final long key = PackedDependencies.pack(0xFFFE, 12345, 0x7FFF, 3);
+        assertEquals(0xFFFE, PackedDependencies.getHead(key));
+        assertEquals(12345, PackedDependencies.getArgument(key));
+        assertEquals(0x7FFF, PackedDependencies.getCategoryId(key));
+        assertEquals(3, PackedDependencies.getArgNumber(key));
+    }
+
+    @Test
+    public void testBitLayout() {
+        assertEquals(1L << 48, PackedDependencies.pack(1, 0, 0, 0));
+        assertEquals(1L << 32, PackedDependencies.pack(0, 1, 0, 0));
+        assertEquals(1L << 16, PackedDependencies.pack(0, 0, 1, 0));
+        assertEquals(1L, PackedDependencies.pack(0, 0, 0, 1));
+        // Fields never overlap, even at the wildcard value.
+        final int kAny = PackedDependencies.kAny;
+        assertEquals(-1L, PackedDependencies.pack(kAny, kAny, kAny, kAny));
+        assertEquals(kAny, PackedDependencies.getHead(-1L));
+    }
+
+    @Test
+    public void testKeysOrderByHeadThenArgument() {
+        assertTrue(PackedDependencies.pack(1, 0xFFFF, 0xFFFF, 0xFFFF) < PackedDependencies.pack(2, 0, 0, 0));
+        assertTrue(PackedDependencies.pack(1, 1, 0xFFFF, 0xFFFF) < PackedDependencies.pack(1, 2, 0, 0));
+        assertTrue(PackedDependencies.pack(1, 1, 1, 0xFFFF) < PackedDependencies.pack(1, 1, 2, 0));
+    }
+
+    @Test
+    public void testUnlabeled() {
+        final long key = PackedDependencies.pack(4, 7, 9, 2);
+        assertEquals(PackedDependencies.pack(4, 7, 0, 0), PackedDependencies.unlabeled(key));
+        assertEquals(PackedDependencies.unlabeled(key),
+                PackedDependencies.unlabeled(PackedDependencies.pack(4, 7, 1, 1)));
+    }
+
+    @Test
+    public void testCategoryIdsAreStable() {
+        final int id = PackedDependencies.getCategoryId(kTransitive);
+        assertEquals(id, PackedDependencies.getCategoryId(Category.valueOf("(S[dcl]\\NP)/NP")));
+        assertEquals(kTransitive, PackedDependencies.getCategory(id));
+        assertNotEquals(id, PackedDependencies.getCategoryId(kAdjective));
+    }
+
+    @Test
+    public void testSortedLookups() {
+        final ResolvedDependency subject = makeDependency(3, kTransitive, 1, 1);
+        final ResolvedDependency object = makeDependency(3, kTransitive, 2, 5);
+        final ResolvedDependency modifier = makeDependency(4, kAdjective, 1, 5);
+        final ResolvedDependency first = makeDependency(0, kAdjective, 1, 1);
+        final PackedDependencies dependencies = new PackedDependencies(
+                ImmutableList.of(modifier, object, first, subject));
+
+        assertEquals(4, dependencies.size());
+        for (int i = 1; i < dependencies.size(); i++) {
+            assertTrue(dependencies.getKey(i - 1) < dependencies.getKey(i));
+        }
+        // Dependencies stay aligned with their keys.
+        for (int i = 0; i < dependencies.size(); i++) {
+            assertEquals(PackedDependencies.pack(dependencies.get(i)), dependencies.getKey(i));
+        }
+        assertSame(first, dependencies.get(0));
+        assertSame(subject, dependencies.get(1));
+        assertSame(object, dependencies.get(2));
+        assertSame(modifier, dependencies.get(3));
+
+        assertEquals(1, dependencies.headStart(3));
+        assertEquals(3, dependencies.headEnd(3));
+        assertEquals(dependencies.headStart(2), dependencies.headEnd(2));
+        assertEquals(4, dependencies.headStart(5));
+        assertEquals(2, dependencies.headArgumentStart(3, 5));
+        assertEquals(3, dependencies.headArgumentEnd(3, 5));
+        assertEquals(0, dependencies.lowerBound(0));
+        assertEquals(4, dependencies.lowerBound(-1L >>> 1));
+
+        assertTrue(dependencies.containsHead(3));
+        assertFalse(dependencies.containsHead(1));
+        assertTrue(dependencies.contains(3, 5));
+        assertFalse(dependencies.contains(5, 3));
+        assertTrue(dependencies.containsUndirected(5, 3));
+        assertTrue(dependencies.contains(3, 5, kTransitive, 2));
+        assertFalse(dependencies.contains(3, 5, kTransitive, 1));
+        assertFalse(dependencies.contains(3, 5, kAdjective, 2));
+    }
+
+    @Test
+    public void testEmpty() {
+        final PackedDependencies dependencies = new PackedDependencies(null);
+        assertEquals(0, dependencies.size());
+        assertEquals(0, dependencies.headStart(0));
+        assertFalse(dependencies.containsHead(0));
+        assertFalse(dependencies.contains(0, 1));
+    }
+}
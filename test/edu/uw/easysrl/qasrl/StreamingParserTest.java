@@ -0,0 +1,105 @@
+package edu.uw.easysrl.qasrl;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class StreamingParserTest {
+    private static final List<String> kWorkers = ImmutableList.of("worker0", "worker1");
+
+    private static List<Integer> getSentences(final int numSentences) {
+        return IntStream.range(0, numSentences).boxed().collect(Collectors.toList());
+    }
+
+    private static List<Integer> tag(final List<Integer> batch) {
+        return batch.stream().map(sentence -> sentence * 10).collect(Collectors.toList());
+    }
+
+    private static boolean isTaggingThreadAlive() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .anyMatch(thread -> thread.getName().startsWith("streaming-tagger") && thread.isAlive());
+    }
+
+    private static void waitForTaggingThread() throws InterruptedException {
+        for (int i = 0; i < 100 && isTaggingThreadAlive(); i++) {
+            Thread.sleep(50);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testResultsInInputOrder() {
+        final List<Integer> sentenceIds = new ArrayList<>();
+        final List<Integer> results = new ArrayList<>();
+        StreamingParser.run(getSentences(10).iterator(), 3, 1, StreamingParserTest::tag, sentence -> sentence,
+                kWorkers, (worker, sentence, supertag) -> sentence + supertag, (sentenceId, result) -> {
+                    sentenceIds.add(sentenceId);
+                    results.add(result);
+                });
+        assertEquals(getSentences(10), sentenceIds);
+        assertEquals(getSentences(10).stream().map(sentence -> sentence * 11).collect(Collectors.toList()), results);
+    }
+
+    @Test(timeout = 10000)
+    public void testReturnsWhenConsumerFails() throws InterruptedException {
+        final AtomicInteger numTagged = new AtomicInteger(0);
+        try {
+            StreamingParser.run(getSentences(1000).iterator(), 1, 1, batch -> {
+                numTagged.addAndGet(batch.size());
+                return tag(batch);
+            }, sentence -> sentence, kWorkers, (worker, sentence, supertag) -> supertag, (sentenceId, result) -> {
+                throw new IllegalStateException("consumer failed");
+            });
+            fail("Expected the consumer exception.");
+        } catch (IllegalStateException e) {
+            assertEquals("consumer failed", e.getMessage());
+        }
+        waitForTaggingThread();
+        assertFalse(isTaggingThreadAlive());
+        // Tagging stopped instead of running through the whole input.
+        assertTrue(numTagged.get() < 1000);
+    }
+
+    @Test(timeout = 10000)
+    public void testReturnsWhenParsingFails() throws InterruptedException {
+        try {
+            StreamingParser.run(getSentences(100).iterator(), 2, 1, StreamingParserTest::tag, sentence -> sentence,
+                    kWorkers, (worker, sentence, supertag) -> {
+                        if (sentence == 5) {
+                            throw new IllegalStateException("parsing failed");
+                        }
+                        return supertag;
+                    }, (sentenceId, result) -> { });
+            fail("Expected the parsing exception.");
+        } catch (RuntimeException e) {
+            // Rethrown by SentenceScheduler with the original exception as the cause.
+            assertNotNull(e);
+        }
+        waitForTaggingThread();
+        assertFalse(isTaggingThreadAlive());
+    }
+
+    @Test(timeout = 10000)
+    public void testReturnsWhenTaggingFails() {
+        final List<Integer> sentenceIds = new ArrayList<>();
+        try {
+            StreamingParser.run(getSentences(10).iterator(), 2, 1, batch -> {
+                if (batch.contains(4)) {
+                    throw new IllegalStateException("tagging failed");
+                }
+                return tag(batch);
+            }, sentence -> sentence, kWorkers, (worker, sentence, supertag) -> supertag,
+                    (sentenceId, result) -> sentenceIds.add(sentenceId));
+            fail("Expected the tagging exception.");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause().getCause() instanceof IllegalStateException);
+        }
+        // Batches tagged before the failure are still parsed.
+        assertEquals(getSentences(4), sentenceIds);
+    }
+}
@@ -0,0 +1,107 @@
+package edu.uw.easysrl.qasrl;
+
+import com.google.common.collect.ImmutableList;
+import edu.uw.easysrl.main.InputReader;
+import edu.uw.easysrl.syntax.grammar.Category;
+import edu.uw.easysrl.syntax.tagger.Tagger;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SupertagCacheTest {
+    private static final Category kTransitive = Category.valueOf("(S[dcl]\\NP)/NP");
+
+    private static List<List<InputReader.InputWord>> makeSentences(final String... sentences) {
+        final ImmutableList.Builder<List<InputReader.InputWord>> builder = ImmutableList.builder();
+        for (String sentence : sentences) {
+            final ImmutableList.Builder<InputReader.InputWord> words = ImmutableList.builder();
+            for (String word : sentence.split(" ")) {
+                words.add(new InputReader.InputWord(word, null, null));
+            }
+            builder.add(words.build());
+        }
+        return builder.build();
+    }
+
+    private static ImmutableList<List<List<Tagger.ScoredCategory>>> makeSupertags() {
+        return ImmutableList.of(
+                ImmutableList.of(
+                        ImmutableList.of(new Tagger.ScoredCategory(Category.NP, -0.125),
+                                new Tagger.ScoredCategory(Category.N, -3.0)),
+                        ImmutableList.of(new Tagger.ScoredCategory(kTransitive, Math.log(0.9))),
+                        ImmutableList.of(new Tagger.ScoredCategory(Category.NP, 0.0))),
+                ImmutableList.of());
+    }
+
+    private static File createTempFile() throws IOException {
+        final File file = File.createTempFile("supertags", ".bin");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static void assertSupertagsEqual(final List<List<List<Tagger.ScoredCategory>>> expected,
+                                             final List<List<List<Tagger.ScoredCategory>>> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).size(), actual.get(i).size());
+            for (int j = 0; j < expected.get(i).size(); j++) {
+                final List<Tagger.ScoredCategory> expectedTags = expected.get(i).get(j);
+                final List<Tagger.ScoredCategory> actualTags = actual.get(i).get(j);
+                assertEquals(expectedTags.size(), actualTags.size());
+                for (int k = 0; k < expectedTags.size(); k++) {
+                    assertEquals(expectedTags.get(k).getCategory(), actualTags.get(k).getCategory());
+                    // Scores must be exact, so parsing from the cache gives the same results.
+                    assertEquals(expectedTags.get(k).getScore(), actualTags.get(k).getScore(), 0.0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final ImmutableList<List<List<Tagger.ScoredCategory>>> supertags = makeSupertags();
+        final File file = createTempFile();
+        SupertagCache.write(file, "fingerprint", supertags);
+        assertSupertagsEqual(supertags, SupertagCache.read(file, "fingerprint", supertags.size()));
+    }
+
+    @Test
+    public void testStaleFile() throws IOException {
+        final ImmutableList<List<List<Tagger.ScoredCategory>>> supertags = makeSupertags();
+        final File file = createTempFile();
+        SupertagCache.write(file, "fingerprint", supertags);
+        assertNull(SupertagCache.read(file, "other fingerprint", supertags.size()));
+        assertNull(SupertagCache.read(file, "fingerprint", supertags.size() + 1));
+        assertNull(SupertagCache.read(new File(file.getPath() + ".missing"), "fingerprint", supertags.size()));
+    }
+
+    @Test
+    public void testUnreadableFile() throws IOException {
+        final File file = createTempFile();
+        Files.write(file.toPath(), new byte[] { 1, 2, 3 });
+        assertNull(SupertagCache.read(file, "fingerprint", 2));
+    }
+
+    @Test
+    public void testFingerprint() throws IOException {
+        final File modelFolder = Files.createTempDirectory("model").toFile();
+        modelFolder.deleteOnExit();
+        final String modelFolderPath = modelFolder.getPath();
+        final List<List<InputReader.InputWord>> sentences = makeSentences("John saw Mary", "He left");
+        final String fingerprint = SupertagCache.getFingerprint(modelFolderPath, 1e-4, sentences);
+
+        assertEquals(fingerprint, SupertagCache.getFingerprint(modelFolderPath, 1e-4,
+                makeSentences("John saw Mary", "He left")));
+        assertNotEquals(fingerprint, SupertagCache.getFingerprint(modelFolderPath, 1e-3, sentences));
+        assertNotEquals(fingerprint, SupertagCache.getFingerprint(modelFolderPath, 1e-4,
+                makeSentences("John saw Mary", "She left")));
+        // Word boundaries are part of the fingerprint.
+        assertNotEquals(fingerprint, SupertagCache.getFingerprint(modelFolderPath, 1e-4,
+                makeSentences("John saw Mary He", "left")));
+    }
+}
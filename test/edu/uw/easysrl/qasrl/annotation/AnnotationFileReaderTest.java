@@ -0,0 +1,134 @@
+package edu.uw.easysrl.qasrl.annotation;
+
+import com.google.common.collect.ImmutableList;
+import edu.uw.easysrl.qasrl.util.GuavaCollectors;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.junit.Assert.*;
+
+public class AnnotationFileReaderTest {
+    // Windows line endings, empty fields (including empty response letters) and a non-ASCII option.
+    private static final String kAnnotations = String.join("\r\n",
+            "SID=0\tJohn saw Mary",
+            "0\t\t\tWho saw someone?\t1:(S[dcl]\\NP)/NP.1",
+            "0\tAB\t\tJohn",
+            "1\tC\t\tMary",
+            "2\t\t\tBad Question.",
+            "",
+            "SID=3\tZo\u00eb saw Mary",
+            "0\t\t\tWho saw Mary?\t1:(S[dcl]\\NP)/NP.1",
+            "0\tABC\t\tZo\u00eb",
+            "1\t\tx\tBad Question.",
+            "",
+            "SID=0\tJohn saw Mary",
+            "0\t\t\tWho did John see?\t1:(S[dcl]\\NP)/NP.2",
+            "0\tA\t\tMary",
+            "1\tBC\t\tJohn",
+            "");
+
+    private static File writeAnnotations() throws IOException {
+        final File file = File.createTempFile("annotation", ".tsv");
+        file.deleteOnExit();
+        Files.write(file.toPath(), kAnnotations.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * The line-by-line loader that AnnotationFileLoader used before AnnotationFileReader, in file order.
+     */
+    private static List<AnnotatedQuery> loadBaseline(final File file) throws IOException {
+        final List<AnnotatedQuery> annotations = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] info = line.trim().split("\\t");
+                if (info.length > 0 && info[0].startsWith("SID=")) {
+                    final AnnotatedQuery curr = new AnnotatedQuery();
+                    curr.sentenceId = Integer.parseInt(info[0].split("=")[1]);
+                    info = reader.readLine().trim().split("\\t");
+                    curr.questionString = info[3];
+                    curr.predicateId = Integer.parseInt(info[4].split(":")[0]);
+                    final Map<Character, Set<Integer>> responses = new HashMap<>();
+                    final List<String> optionStrings = new ArrayList<>();
+                    while ((line = reader.readLine()) != null) {
+                        line = line.trim();
+                        if (line.isEmpty()) {
+                            break;
+                        }
+                        info = line.split("\\t");
+                        for (char c : info[1].trim().toCharArray()) {
+                            responses.computeIfAbsent(c, k -> new HashSet<>()).add(optionStrings.size());
+                        }
+                        optionStrings.add(info[3]);
+                    }
+                    curr.optionStrings = ImmutableList.copyOf(optionStrings);
+                    curr.responses = responses.values().stream()
+                            .map(r -> r.stream().sorted().collect(GuavaCollectors.toImmutableList()))
+                            .collect(GuavaCollectors.toImmutableList());
+                    annotations.add(curr);
+                }
+            }
+        }
+        return annotations;
+    }
+
+    private static List<String> toStrings(final List<AnnotatedQuery> queries) {
+        return queries.stream()
+                .map(query -> String.format("%d|%d|%s|%s|%s", query.sentenceId, query.predicateId,
+                        query.questionString, query.optionStrings, query.responses))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testSequentialStream() throws IOException {
+        final File file = writeAnnotations();
+        final List<AnnotatedQuery> expected = loadBaseline(file);
+        assertEquals(3, expected.size());
+        assertEquals(ImmutableList.of("Zo\u00eb", "Bad Question."), expected.get(1).optionStrings);
+        assertEquals(toStrings(expected), toStrings(AnnotationFileReader.stream(file.getPath())
+                .collect(Collectors.toList())));
+    }
+
+    @Test
+    public void testParallelStream() throws IOException {
+        final File file = writeAnnotations();
+        final List<String> expected = toStrings(loadBaseline(file));
+        assertEquals(expected, toStrings(AnnotationFileReader.stream(file.getPath()).parallel()
+                .collect(Collectors.toList())));
+        // Split down to single lines, so most splits fall inside records.
+        assertEquals(expected, toStrings(StreamSupport.stream(AnnotationFileReader.spliterator(file.getPath(), 1),
+                true /* parallel */).collect(Collectors.toList())));
+    }
+
+    @Test
+    public void testSplitInsideRecord() throws IOException {
+        final File file = writeAnnotations();
+        // Same split point as trySplit: the start of the line after the middle byte.
+        final byte[] bytes = kAnnotations.getBytes(StandardCharsets.UTF_8);
+        int middle = bytes.length / 2;
+        while (bytes[middle] != '\n') {
+            middle ++;
+        }
+        final String lineAfterSplit = new String(bytes, middle + 1, bytes.length - middle - 1, StandardCharsets.UTF_8)
+                .split("\r\n")[0];
+        assertFalse(lineAfterSplit.isEmpty() || lineAfterSplit.startsWith("SID="));
+
+        final Spliterator<AnnotatedQuery> suffix = AnnotationFileReader.spliterator(file.getPath(), 1);
+        final Spliterator<AnnotatedQuery> prefix = suffix.trySplit();
+        assertNotNull(prefix);
+        final List<AnnotatedQuery> records = new ArrayList<>();
+        prefix.forEachRemaining(records::add);
+        final int numPrefixRecords = records.size();
+        suffix.forEachRemaining(records::add);
+        assertTrue(numPrefixRecords > 0 && numPrefixRecords < records.size());
+        assertEquals(toStrings(loadBaseline(file)), toStrings(records));
+    }
+}
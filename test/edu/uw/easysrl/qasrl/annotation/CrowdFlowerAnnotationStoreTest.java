@@ -0,0 +1,106 @@
+package edu.uw.easysrl.qasrl.annotation;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CrowdFlowerAnnotationStoreTest {
+    private static final String kCsv = String.join("\n",
+            "_golden,_worker_id,_trust,sent_id,sentence,pred_id,pred_head,question_key,query_id,question,answers,"
+                    + "choice,comment",
+            "false,w1,0.9,0,John saw Mary in Paris,1,saw,1.(S[dcl]\\NP)/NP.2,5,What did John see?,"
+                    + "\"Mary\nParis\nBad Question.\",Mary,\"great, thanks\"",
+            "false,w2,0.85,0,John saw Mary in Paris,1,saw,1.(S[dcl]\\NP)/NP.2,5,What did John see?,"
+                    + "\"Mary\nParis\nBad Question.\",\"Mary\nParis\",",
+            "true,w3,1.0,0,John saw Mary in Paris,1,saw,1.(S[dcl]\\NP)/NP.2,5,What did John see?,"
+                    + "\"Mary\nParis\nBad Question.\",Paris,gold",
+            "false,w1,0.9,3,Zo\u00eb saw Mary,1,saw,1.(S[dcl]\\NP)/NP.1,6,Who saw Mary?,"
+                    + "\"Zo\u00eb\nBad Question.\",Bad Question.,\"\"\"quoted\"\"\"",
+            "");
+
+    private static File writeCsv() throws IOException {
+        final File directory = Files.createTempDirectory("crowdflower").toFile();
+        directory.deleteOnExit();
+        final File csvFile = new File(directory, "annotation.csv");
+        csvFile.deleteOnExit();
+        new File(CrowdFlowerAnnotationStore.getStorePath(csvFile.getPath())).deleteOnExit();
+        Files.write(csvFile.toPath(), kCsv.getBytes(StandardCharsets.UTF_8));
+        return csvFile;
+    }
+
+    private static void assertRecordEquals(final RecordedAnnotation expected, final RecordedAnnotation actual) {
+        assertEquals(expected.sentenceId, actual.sentenceId);
+        assertEquals(expected.sentenceString, actual.sentenceString);
+        assertEquals(expected.predicateId, actual.predicateId);
+        assertEquals(expected.predicateString, actual.predicateString);
+        assertEquals(expected.predicateCategory, actual.predicateCategory);
+        assertEquals(expected.argumentNumber, actual.argumentNumber);
+        assertEquals(expected.queryId, actual.queryId);
+        assertEquals(expected.queryPrompt, actual.queryPrompt);
+        assertEquals(expected.optionStrings, actual.optionStrings);
+        assertEquals(expected.userOptionIds, actual.userOptionIds);
+        assertEquals(expected.userOptions, actual.userOptions);
+        assertEquals(expected.annotatorId, actual.annotatorId);
+        assertEquals(expected.comment, actual.comment);
+        // Trust is stored as a float.
+        assertEquals(expected.trust, actual.trust, 1e-6);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final File csvFile = writeCsv();
+        final List<RecordedAnnotation> records = CrowdFlowerAnnotationStore.importCsv(csvFile.getPath());
+        assertEquals(3, records.size());
+
+        final File storeFile = new File(CrowdFlowerAnnotationStore.getStorePath(csvFile.getPath()));
+        assertTrue(storeFile.exists());
+        final List<RecordedAnnotation> storedRecords = CrowdFlowerAnnotationStore.readRecords(storeFile,
+                CrowdFlowerAnnotationStore.getFingerprint(csvFile.getPath()));
+        assertNotNull(storedRecords);
+        assertEquals(records.size(), storedRecords.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertRecordEquals(records.get(i), storedRecords.get(i));
+        }
+    }
+
+    @Test
+    public void testReadAggregatedAnnotation() throws IOException {
+        final File csvFile = writeCsv();
+        final ImmutableList<AlignedAnnotation> expected = CrowdFlowerDataReader.aggregateAnnotations(
+                CrowdFlowerDataReader.readAnnotationRecordsFromFile(csvFile.getPath()));
+        // Imports the CSV file, then reads the store.
+        for (int run = 0; run < 2; run++) {
+            final ImmutableList<AlignedAnnotation> annotations =
+                    CrowdFlowerAnnotationStore.readAggregatedAnnotation(csvFile.getPath());
+            assertEquals(expected.size(), annotations.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertRecordEquals(expected.get(i), annotations.get(i));
+                assertEquals(expected.get(i).annotatorToAnswerIds, annotations.get(i).annotatorToAnswerIds);
+                assertArrayEquals(expected.get(i).answerDist, annotations.get(i).answerDist);
+            }
+        }
+    }
+
+    @Test
+    public void testStaleStore() throws IOException {
+        final File csvFile = writeCsv();
+        CrowdFlowerAnnotationStore.importCsv(csvFile.getPath());
+        final File storeFile = new File(CrowdFlowerAnnotationStore.getStorePath(csvFile.getPath()));
+        // Repeats the records, so the CSV file changes.
+        Files.write(csvFile.toPath(), (kCsv + kCsv.substring(kCsv.indexOf("\nfalse") + 1))
+                .getBytes(StandardCharsets.UTF_8));
+        final String fingerprint = CrowdFlowerAnnotationStore.getFingerprint(csvFile.getPath());
+        assertNull(CrowdFlowerAnnotationStore.readRecords(storeFile, fingerprint));
+
+        // The outdated store is replaced.
+        CrowdFlowerAnnotationStore.readAggregatedAnnotation(csvFile.getPath());
+        assertEquals(6, CrowdFlowerAnnotationStore.readRecords(storeFile, fingerprint).size());
+    }
+}
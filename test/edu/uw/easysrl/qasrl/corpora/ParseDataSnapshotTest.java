@@ -0,0 +1,104 @@
+package edu.uw.easysrl.qasrl.corpora;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import edu.uw.easysrl.dependencies.ResolvedDependency;
+import edu.uw.easysrl.dependencies.SRLFrame;
+import edu.uw.easysrl.main.InputReader;
+import edu.uw.easysrl.qasrl.Parse;
+import edu.uw.easysrl.qasrl.ParseData;
+import edu.uw.easysrl.syntax.grammar.Category;
+import edu.uw.easysrl.syntax.grammar.Preposition;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class ParseDataSnapshotTest {
+    private static final Category kTransitive = Category.valueOf("(S[dcl]\\NP)/NP");
+
+    private static ParseData makeParseData() {
+        final ImmutableList<InputReader.InputWord> sentence = ImmutableList.of(
+                new InputReader.InputWord("John", "NNP", "I-PER"),
+                new InputReader.InputWord("saw", "VBD", null),
+                new InputReader.InputWord("Zo\u00eb", null, null));
+        final ImmutableList<InputReader.InputWord> otherSentence = ImmutableList.of(
+                new InputReader.InputWord("Hi", "UH", "O"));
+        final Parse parse = new Parse(ImmutableList.of("John", "saw", "Zo\u00eb"),
+                ImmutableList.of(Category.NP, kTransitive, Category.NP),
+                ImmutableSet.of(new ResolvedDependency(1, kTransitive, 1, 0, SRLFrame.NONE, Preposition.NONE),
+                        new ResolvedDependency(1, kTransitive, 2, 2, SRLFrame.NONE, Preposition.NONE)),
+                1.0);
+        final Parse otherParse = new Parse(ImmutableList.of("Hi"), ImmutableList.of(Category.N),
+                ImmutableSet.of(), 1.0);
+        return new ParseData(ImmutableList.of(sentence, otherSentence), ImmutableList.of(parse, otherParse));
+    }
+
+    private static File createTempFile() throws IOException {
+        final File file = File.createTempFile("parsedata", ".bin");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static String toString(final InputReader.InputWord word) {
+        return word.word + "|" + word.pos + "|" + word.ner;
+    }
+
+    private static String toString(final ResolvedDependency dependency) {
+        return String.format("%d:%s.%d:%d", dependency.getHead(), dependency.getCategory(),
+                dependency.getArgNumber(), dependency.getArgument());
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final ParseData data = makeParseData();
+        final File file = createTempFile();
+        ParseDataSnapshot.write(file, "fingerprint", data);
+        final ParseData snapshot = ParseDataSnapshot.read(file, "fingerprint");
+
+        assertNotNull(snapshot);
+        assertEquals(data.getSentences(), snapshot.getSentences());
+        assertEquals(data.getSentenceInputWords().size(), snapshot.getSentenceInputWords().size());
+        for (int i = 0; i < data.getSentenceInputWords().size(); i++) {
+            assertEquals(
+                    data.getSentenceInputWords().get(i).stream()
+                            .map(ParseDataSnapshotTest::toString).collect(Collectors.toList()),
+                    snapshot.getSentenceInputWords().get(i).stream()
+                            .map(ParseDataSnapshotTest::toString).collect(Collectors.toList()));
+        }
+        assertEquals(data.getGoldParses().size(), snapshot.getGoldParses().size());
+        for (int i = 0; i < data.getGoldParses().size(); i++) {
+            final Parse expected = data.getGoldParses().get(i), actual = snapshot.getGoldParses().get(i);
+            assertEquals(expected.getWords(), actual.getWords());
+            assertEquals(expected.categories, actual.categories);
+            assertEquals(expected.dependencies.stream().map(ParseDataSnapshotTest::toString)
+                            .collect(Collectors.toSet()),
+                    actual.dependencies.stream().map(ParseDataSnapshotTest::toString).collect(Collectors.toSet()));
+        }
+    }
+
+    @Test
+    public void testParseWithoutDependencies() throws IOException {
+        final ImmutableList<InputReader.InputWord> sentence = ImmutableList.of(
+                new InputReader.InputWord("Hi", "UH", "O"));
+        final ParseData data = new ParseData(ImmutableList.of(sentence),
+                ImmutableList.of(new Parse(ImmutableList.of("Hi"), ImmutableList.of(Category.N))));
+        final File file = createTempFile();
+        ParseDataSnapshot.write(file, "fingerprint", data);
+        final Parse parse = ParseDataSnapshot.read(file, "fingerprint").getGoldParses().get(0);
+        assertEquals(ImmutableList.of("Hi"), parse.getWords());
+        assertEquals(ImmutableList.of(Category.N), parse.categories);
+        assertNull(parse.dependencies);
+    }
+
+    @Test
+    public void testStaleSnapshot() throws IOException {
+        final File file = createTempFile();
+        ParseDataSnapshot.write(file, "fingerprint", makeParseData());
+        assertNull(ParseDataSnapshot.read(file, "other fingerprint"));
+        assertNull(ParseDataSnapshot.read(new File(file.getPath() + ".missing"), "fingerprint"));
+    }
+}
@@ -0,0 +1,105 @@
+package edu.uw.easysrl.qasrl.qg;
+
+import com.google.common.collect.ImmutableList;
+import edu.uw.easysrl.dependencies.ResolvedDependency;
+import edu.uw.easysrl.qasrl.NBestList;
+import edu.uw.easysrl.qasrl.ParseData;
+import edu.uw.easysrl.qasrl.corpora.ParseDataLoader;
+import edu.uw.easysrl.qasrl.util.PropertyUtil;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks that sharing QA pairs across the parses of an n-best list gives exactly the pairs generated for each parse
+ * separately. Runs on the first sentences of the dev set, and is skipped if the resources are not downloaded.
+ */
+public class QAPairCacheTest {
+    private static final int kNumSentences = 30;
+
+    private static ParseData corpus;
+    private static Map<Integer, NBestList> nbestLists;
+
+    @BeforeClass
+    public static void loadNBestLists() {
+        final String nbestFilePath = PropertyUtil.resourcesProperties.getProperty("ccg_dev_nbest");
+        assumeTrue(nbestFilePath != null && new File(nbestFilePath).exists());
+        corpus = ParseDataLoader.loadFromDevPool().get();
+        nbestLists = NBestList.openNBestLists(nbestFilePath, 100).get();
+    }
+
+    private static List<Integer> getSentenceIds() {
+        return IntStream.range(0, corpus.getSentences().size())
+                .filter(nbestLists::containsKey)
+                .limit(kNumSentences)
+                .boxed()
+                .collect(Collectors.toList());
+    }
+
+    private static String toString(final ResolvedDependency dependency) {
+        return dependency == null ? "null" : String.format("%d:%s.%d:%d", dependency.getHead(),
+                dependency.getCategory(), dependency.getArgNumber(), dependency.getArgument());
+    }
+
+    private static String toString(final Collection<ResolvedDependency> dependencies) {
+        return dependencies.stream().map(QAPairCacheTest::toString).sorted().collect(Collectors.joining(","));
+    }
+
+    /**
+     * Everything a QA pair exposes, except the parse object, which is checked separately.
+     */
+    private static String toString(final QuestionAnswerPair qa) {
+        return String.join("\t", String.valueOf(qa.getSentenceId()), String.valueOf(qa.getParseId()),
+                String.valueOf(qa.getPredicateIndex()), String.valueOf(qa.getPredicateCategory()),
+                String.valueOf(qa.getArgumentNumber()), String.valueOf(qa.getArgumentIndex()), qa.getQuestion(),
+                qa.getAnswer(), toString(qa.getQuestionDependencies()), toString(qa.getTargetDependency()),
+                toString(qa.getAnswerDependencies()));
+    }
+
+    private static void assertSameQAPairs(final NBestList nBestList, final List<QuestionAnswerPair> expected,
+                                          final List<QuestionAnswerPair> actual) {
+        assertEquals(expected.stream().map(QAPairCacheTest::toString).collect(Collectors.toList()),
+                actual.stream().map(QAPairCacheTest::toString).collect(Collectors.toList()));
+        for (QuestionAnswerPair qa : actual) {
+            assertSame(nBestList.getParse(qa.getParseId()), qa.getParse());
+        }
+    }
+
+    @Test
+    public void testTemplateQAPairs() {
+        for (int sentenceId : getSentenceIds()) {
+            final ImmutableList<String> words = corpus.getSentences().get(sentenceId);
+            final NBestList nBestList = nbestLists.get(sentenceId);
+            final List<QuestionAnswerPair> uncached = new ArrayList<>();
+            for (int parseId = 0; parseId < nBestList.getN(); parseId++) {
+                // A new cache for each parse.
+                uncached.addAll(QuestionGenerator.generateQAPairsForParse(sentenceId, parseId, words,
+                        nBestList.getParse(parseId), QuestionGenerationOptions.defaults));
+            }
+            assertSameQAPairs(nBestList, uncached,
+                    QuestionGenerator.generateAllQAPairs(sentenceId, words, nBestList));
+        }
+    }
+
+    @Test
+    public void testCoreArgQAPairs() {
+        final QuestionGenerationPipeline pipeline = QuestionGenerationPipeline.coreArgQGPipeline;
+        for (int sentenceId : getSentenceIds()) {
+            final NBestList nBestList = nbestLists.get(sentenceId);
+            final QAPairCache cache = new QAPairCache();
+            final List<QuestionAnswerPair> uncached = new ArrayList<>(), cached = new ArrayList<>();
+            for (int parseId = 0; parseId < nBestList.getN(); parseId++) {
+                uncached.addAll(pipeline.generateQAPairs(sentenceId, parseId, nBestList.getParse(parseId)));
+                cached.addAll(pipeline.generateQAPairs(sentenceId, parseId, nBestList.getParse(parseId), cache));
+            }
+            assertSameQAPairs(nBestList, uncached, cached);
+        }
+    }
+}
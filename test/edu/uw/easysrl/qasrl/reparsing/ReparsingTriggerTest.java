@@ -0,0 +1,132 @@
+package edu.uw.easysrl.qasrl.reparsing;
+
+import com.google.common.collect.ImmutableList;
+import edu.uw.easysrl.qasrl.annotation.AnnotationAggregator;
+import edu.uw.easysrl.qasrl.annotation.AnnotationAggregator.QueryKey;
+import edu.uw.easysrl.qasrl.qg.surfaceform.QAStructureSurfaceForm;
+import edu.uw.easysrl.qasrl.qg.syntax.AnswerStructure;
+import edu.uw.easysrl.qasrl.qg.syntax.QuestionStructure;
+import edu.uw.easysrl.qasrl.query.QueryGeneratorUtils;
+import edu.uw.easysrl.qasrl.query.QueryType;
+import edu.uw.easysrl.qasrl.query.ScoredQuery;
+import edu.uw.easysrl.syntax.grammar.Category;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Decision table of ReparsingTrigger.isStable, with options "Mary" (0), "he" (1) and "Bad Question." (2), where "he"
+ * is a pronoun closer to the predicate than "Mary".
+ */
+public class ReparsingTriggerTest {
+    private static final Category kTransitive = Category.valueOf("(S[dcl]\\NP)/NP");
+    private static final int kMary = 0, kPronoun = 1, kBadQuestion = 2;
+
+    private ReparsingParameters config;
+    private AnnotationAggregator aggregator;
+    private ScoredQuery<QAStructureSurfaceForm> query;
+    private QueryKey key;
+    private int numAnnotators;
+
+    private static QAStructureSurfaceForm makeQA(final String answer, final int argumentId) {
+        return new QAStructureSurfaceForm(0, "Who said something?", answer, ImmutableList.of(),
+                ImmutableList.of(new QuestionStructure(3, kTransitive, 1, ImmutableList.of())),
+                ImmutableList.of(new AnswerStructure(ImmutableList.of(argumentId), true)));
+    }
+
+    @Before
+    public void setUp() {
+        // Positive with at least 2 votes, negative with at most 1.
+        config = new ReparsingParameters();
+        config.positiveConstraintMinAgreement = 2;
+        config.negativeConstraintMaxAgreement = 1;
+        config.fixPronouns = false;
+        config.fixSubspans = false;
+        aggregator = new AnnotationAggregator(config);
+        query = new ScoredQuery<>(0, "Who said something?",
+                ImmutableList.of("Mary", "he", QueryGeneratorUtils.kBadQuestionOptionString),
+                ImmutableList.of(makeQA("Mary", 0), makeQA("he", 2)),
+                QueryType.Forward, true /* allowMultipleChoices */);
+        key = new QueryKey(query);
+        numAnnotators = 0;
+    }
+
+    private void vote(final Integer... optionIds) {
+        aggregator.add(query, "annotator-" + numAnnotators++, ImmutableList.copyOf(optionIds));
+    }
+
+    private boolean isStable(final int numRemaining) {
+        return ReparsingTrigger.isStable(query, key, aggregator, numRemaining, config);
+    }
+
+    @Test
+    public void testNoResponsesRemaining() {
+        assertTrue(isStable(0));
+        vote(kMary);
+        assertTrue(isStable(0));
+        assertTrue(isStable(-1));
+    }
+
+    @Test
+    public void testNoResponses() {
+        // One vote can not make any option positive.
+        assertTrue(isStable(1));
+        assertFalse(isStable(2));
+    }
+
+    @Test
+    public void testAgreementCanNotChange() {
+        vote(kMary);
+        vote(kMary);
+        // Mary stays positive; one more vote leaves the other options negative.
+        assertTrue(isStable(1));
+        // Two more votes could make any other option positive.
+        assertFalse(isStable(2));
+    }
+
+    @Test
+    public void testUndecidedOption() {
+        vote(kMary);
+        vote(kMary, kPronoun);
+        // One more vote makes "he" positive.
+        assertFalse(isStable(1));
+        vote(kPronoun);
+        assertTrue(isStable(1));
+    }
+
+    @Test
+    public void testBadQuestion() {
+        vote(kBadQuestion);
+        // The bad question option can still become positive.
+        assertFalse(isStable(1));
+        vote(kBadQuestion);
+        // Agreed bad question, no matter how undecided the other options are.
+        assertTrue(isStable(3));
+    }
+
+    @Test
+    public void testBadQuestionNotReachable() {
+        vote(kMary);
+        vote(kMary);
+        vote(kMary);
+        assertTrue(isStable(1));
+        vote(kBadQuestion);
+        // Now one more vote makes it a bad question.
+        assertFalse(isStable(1));
+    }
+
+    @Test
+    public void testMergedOptionsWaitForAllResponses() {
+        vote(kMary);
+        vote(kMary);
+        assertTrue(isStable(1));
+        config.fixPronouns = true;
+        assertFalse(isStable(1));
+        assertTrue(isStable(0));
+        // "Mary" and "he" are not subspans of each other.
+        config.fixPronouns = false;
+        config.fixSubspans = true;
+        assertTrue(isStable(1));
+    }
+}